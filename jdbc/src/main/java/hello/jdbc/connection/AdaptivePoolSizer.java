@@ -0,0 +1,243 @@
+package hello.jdbc.connection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import hello.jdbc.connection.metrics.InstrumentedDataSource;
+import hello.jdbc.connection.metrics.PoolMetrics;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 커넥션 대기 시간, 쿼리 지연 시간(hold), 처리량을 보고 HikariCP 커넥션 풀 크기를 실행 중에 조절한다.
+ * 주기(intervalMillis)마다 InstrumentedDataSource 지표의 증가분으로 구간(Window)을 만들고 다음 규칙으로 크기를 정한다.
+ * 1. 평균 hold 시간이 기준값(관찰한 최솟값)의 latencyTolerance 배를 넘으면 DB가 포화된 것이므로 decreaseFactor를 곱해서 줄인다.
+ * 2. 바로 전에 늘렸는데 처리량이 minThroughputGain 만큼 늘지 않았다면 하나 줄이고, probeHoldWindows 동안은 늘리지 않는다.
+ * 3. 커넥션을 기다렸다면(평균 대기 시간 > acquireWaitThresholdMicros, 또는 대기 스레드가 있다면) 하나 늘린다.
+ * 크기는 항상 [minimumPoolSize, maximumPoolSize] 범위 안에 있다.
+ *
+ * 최소 유휴 커넥션 수는 최대 크기와 같게 둔다. (고정 크기 풀)
+ * HikariCP는 최대 크기를 줄여도 이미 만든 커넥션을 닫지 않고, 고정 크기 풀에는 idleTimeout도 적용하지 않으므로
+ * 주기마다 크기를 넘는 만큼의 유휴 커넥션만 닫는다. 사용 중인 커넥션은 반납된 뒤 다음 주기에 닫는다.
+ */
+@Slf4j
+public class AdaptivePoolSizer implements AutoCloseable {
+
+	private final HikariDataSource pool;
+	private final InstrumentedDataSource metrics;
+	private final AdaptivePoolSizerConfig config;
+	private ScheduledExecutorService scheduler;
+
+	private volatile int poolSize;
+	private final Deque<Integer> sizeHistory; // 최근 historySize 개 구간, 가득 차면 오래된 것부터 버린다.
+
+	// 아래 상태는 스케줄러 스레드에서만 사용한다.
+	private PoolMetrics lastMetrics;
+	private long lastTickNanos;
+	private double baselineHoldMicros = Double.NaN;
+	private double lastThroughput;
+	private boolean lastIncreased;
+	private int cooldown;
+	private int probeHold;
+
+	public AdaptivePoolSizer(HikariDataSource pool, InstrumentedDataSource metrics, AdaptivePoolSizerConfig config) {
+		if (config.getMinimumPoolSize() < 1 || config.getMinimumPoolSize() > config.getMaximumPoolSize()) {
+			throw new IllegalArgumentException("invalid pool size bounds, min=" + config.getMinimumPoolSize()
+				+ ", max=" + config.getMaximumPoolSize());
+		}
+		if (config.getHistorySize() < 1) {
+			throw new IllegalArgumentException("historySize must be greater than 0");
+		}
+		this.pool = pool;
+		this.metrics = metrics;
+		this.config = config;
+		this.sizeHistory = new ArrayDeque<>(config.getHistorySize());
+		this.poolSize = clamp(pool.getMaximumPoolSize());
+		apply(pool.getMaximumPoolSize(), poolSize);
+	}
+
+	public synchronized void start() {
+		if (scheduler != null) {
+			return;
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "AdaptivePoolSizer-" + pool.getPoolName());
+			thread.setDaemon(true);
+			return thread;
+		});
+		lastMetrics = metrics.snapshot();
+		lastTickNanos = System.nanoTime();
+		scheduler.scheduleWithFixedDelay(() -> {
+			try {
+				tick();
+			} catch (RuntimeException e) {
+				log.warn("failed to resize pool={}", pool.getPoolName(), e);
+			}
+		}, config.getIntervalMillis(), config.getIntervalMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 지난 tick 이후의 지표로 크기를 결정하고 커넥션 풀에 반영한다.
+	 */
+	void tick() {
+		PoolMetrics current = metrics.snapshot();
+		long now = System.nanoTime();
+		Window window = Window.between(lastMetrics, current, now - lastTickNanos);
+		lastMetrics = current;
+		lastTickNanos = now;
+
+		int previous = poolSize;
+		int next = decide(window);
+		if (next != previous) {
+			log.info("resize pool={}, {} -> {}, {}", pool.getPoolName(), previous, next, window);
+			apply(previous, next);
+		}
+		evictSurplus();
+	}
+
+	/**
+	 * 구간 하나를 보고 다음 크기를 정한다.
+	 */
+	int decide(Window window) {
+		int size = poolSize;
+		int next = size;
+
+		if (cooldown > 0) {
+			cooldown--;
+		} else if (window.getAcquireCount() > 0 || window.getPendingThreads() > 0) {
+			double hold = window.getHoldMicros();
+			if (hold > 0) {
+				// 기준값은 관찰한 최솟값이지만, 작업의 성격이 바뀔 수 있으므로 현재 값 쪽으로 조금씩 올라간다.
+				baselineHoldMicros = Double.isNaN(baselineHoldMicros) ? hold
+					: Math.min(hold, baselineHoldMicros + (hold - baselineHoldMicros) * 0.1);
+			}
+			boolean saturated = hold > 0 && hold > baselineHoldMicros * config.getLatencyTolerance();
+			boolean starving = window.getAcquireWaitMicros() > config.getAcquireWaitThresholdMicros()
+				|| window.getPendingThreads() > 0;
+
+			if (saturated) {
+				next = (int) (size * config.getDecreaseFactor());
+			} else if (lastIncreased && window.getThroughput() < lastThroughput * (1 + config.getMinThroughputGain())) {
+				next = size - 1;
+				probeHold = config.getProbeHoldWindows();
+			} else if (starving) {
+				if (probeHold > 0) {
+					probeHold--;
+				} else {
+					next = size + 1;
+				}
+			}
+			next = clamp(next);
+			// 크기를 바꾼 직후 구간(cooldown)은 건너뛰므로, 늘린 효과는 그 다음 구간의 처리량과 비교한다.
+			lastIncreased = next > size;
+			lastThroughput = window.getThroughput();
+		}
+
+		if (next != size) {
+			cooldown = config.getCooldownWindows();
+		}
+		poolSize = next;
+		synchronized (sizeHistory) {
+			if (sizeHistory.size() == config.getHistorySize()) {
+				sizeHistory.removeFirst();
+			}
+			sizeHistory.addLast(next);
+		}
+		return next;
+	}
+
+	private int clamp(int size) {
+		return Math.max(config.getMinimumPoolSize(), Math.min(config.getMaximumPoolSize(), size));
+	}
+
+	private void apply(int previous, int next) {
+		HikariConfigMXBean hikariConfig = pool.getHikariConfigMXBean();
+		if (next >= previous) {
+			hikariConfig.setMaximumPoolSize(next);
+			hikariConfig.setMinimumIdle(next);
+			return;
+		}
+
+		hikariConfig.setMinimumIdle(next);
+		hikariConfig.setMaximumPoolSize(next);
+	}
+
+	/**
+	 * 크기를 넘는 커넥션 수만큼 유휴 커넥션을 꺼내서 닫는다, 풀 전체를 닫는 softEvictConnections()는 사용하지 않는다.
+	 */
+	void evictSurplus() {
+		HikariPoolMXBean hikariPool = pool.getHikariPoolMXBean();
+		if (hikariPool == null) {
+			return;
+		}
+		int surplus = hikariPool.getTotalConnections() - poolSize;
+		for (int i = 0; i < surplus && hikariPool.getIdleConnections() > 0; i++) {
+			try (Connection connection = pool.getConnection()) {
+				pool.evictConnection(connection);
+			} catch (SQLException e) {
+				log.warn("failed to evict surplus connection, pool={}", pool.getPoolName(), e);
+				return;
+			}
+		}
+	}
+
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	/**
+	 * 최근 historySize 개 구간마다 결정한 크기 (오래된 순서)
+	 */
+	public List<Integer> getSizeHistory() {
+		synchronized (sizeHistory) {
+			return List.copyOf(sizeHistory);
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+
+	/**
+	 * 한 주기 동안의 지표 (시간 단위는 마이크로초)
+	 */
+	@Getter
+	@ToString
+	@RequiredArgsConstructor
+	static class Window {
+		private final long acquireCount;
+		private final double acquireWaitMicros; // 평균 커넥션 대기 시간
+		private final double holdMicros; // 평균 hold 시간 (쿼리 + 트랜잭션 안의 작업)
+		private final double throughput; // 초당 커넥션 획득 수
+		private final int pendingThreads;
+
+		static Window between(PoolMetrics before, PoolMetrics after, long elapsedNanos) {
+			long acquires = after.getAcquire().getCount() - before.getAcquire().getCount();
+			long acquireNanos = after.getAcquire().getTotalNanos() - before.getAcquire().getTotalNanos();
+			long holds = after.getHold().getCount() - before.getHold().getCount();
+			long holdNanos = after.getHold().getTotalNanos() - before.getHold().getTotalNanos();
+
+			return new Window(acquires,
+				acquires == 0 ? 0.0 : acquireNanos / 1000.0 / acquires,
+				holds == 0 ? 0.0 : holdNanos / 1000.0 / holds,
+				acquires * 1_000_000_000.0 / Math.max(1, elapsedNanos),
+				Math.max(0, after.getPendingThreads()));
+		}
+	}
+}
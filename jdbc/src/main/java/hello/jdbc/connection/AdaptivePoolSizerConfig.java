@@ -0,0 +1,21 @@
+package hello.jdbc.connection;
+
+import lombok.Data;
+
+/**
+ * AdaptivePoolSizer 설정
+ */
+@Data
+public class AdaptivePoolSizerConfig {
+	private int minimumPoolSize = 1; // 커넥션 풀 크기의 하한
+	private int maximumPoolSize = 20; // 커넥션 풀 크기의 상한
+	private long intervalMillis = 1_000; // 지표를 모아서 크기를 결정하는 주기
+
+	private long acquireWaitThresholdMicros = 1_000; // 평균 커넥션 대기 시간이 이보다 길면 커넥션이 부족한 것으로 본다.
+	private double latencyTolerance = 1.5; // 평균 hold 시간이 기준값의 이 배수를 넘으면 DB가 포화된 것으로 본다.
+	private double decreaseFactor = 0.75; // 포화되었을 때 곱할 값 (multiplicative decrease)
+	private double minThroughputGain = 0.05; // 늘린 뒤 처리량이 이 비율만큼 늘지 않았다면 되돌린다.
+	private int cooldownWindows = 1; // 크기를 바꾼 직후 건너뛸 구간 수 (커넥션 생성/정리가 섞여 있다)
+	private int probeHoldWindows = 5; // 늘렸다가 되돌린 뒤, 커넥션이 부족한 구간이 이만큼 지나야 다시 늘려본다.
+	private int historySize = 100; // getSizeHistory()로 조회할 수 있는 최근 구간 수
+}
@@ -0,0 +1,25 @@
+package hello.jdbc.connection;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+
+import lombok.Data;
+
+/**
+ * SimpleConnectionPool 설정
+ * 시간 단위는 모두 밀리초(ms)이다.
+ */
+@Data
+public class ConnectionPoolConfig {
+	private String url = URL;
+	private String username = USERNAME;
+	private String password = PASSWORD;
+
+	private int maximumPoolSize = 10; // 풀이 가질 수 있는 최대 물리 커넥션 수 (대여중 + 유휴)
+	private int minimumIdle = 0; // 유휴 커넥션 정리시 남겨둘 최소 커넥션 수
+
+	private long connectionTimeout = 30_000; // 커넥션을 대여하기 위해 기다리는 최대 시간
+	private long idleTimeout = 600_000; // 이 시간보다 오래 사용되지 않은 유휴 커넥션은 닫는다.
+	private long keepaliveTime = 120_000; // 유휴 커넥션을 이 주기로 검증한다. (대여할 때마다 검증하지 않는다)
+	private long housekeepingPeriod = 30_000; // 유휴 커넥션 정리, keepalive 검증을 수행하는 주기
+	private int validationTimeoutSeconds = 5; // Connection.isValid()에 넘기는 타임아웃(초)
+}
@@ -0,0 +1,100 @@
+package hello.jdbc.connection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.datasource.ConnectionHolder;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 트랜잭션 없이 여러 리포지토리 호출이 하나의 커넥션을 사용하도록 현재 스레드에 커넥션을 고정한다. (session scope)
+ * 트랜잭션 매니저와 같이 ConnectionHolder를 트랜잭션 동기화 매니저에 등록하므로,
+ * DataSourceUtils.getConnection()/releaseConnection()을 사용하는 리포지토리(V3, V4_x, V5)는 커넥션 풀 대신 고정된 커넥션을 사용한다.
+ *
+ * 커넥션은 자동 커밋 모드 그대로이므로 각 쿼리는 바로 커밋된다.
+ * 세션 안에서 트랜잭션을 시작하면 트랜잭션 매니저도 고정된 커넥션을 사용하고, 트랜잭션이 끝나면 자동 커밋 모드로 되돌린다.
+ * 이미 트랜잭션이나 세션이 커넥션을 가지고 있다면 그 커넥션을 그대로 사용한다.
+ */
+@Slf4j
+public class ConnectionSession {
+	private final DataSource dataSource;
+
+	private final LongAdder sessionCount = new LongAdder();
+	private final LongAdder requestCount = new LongAdder();
+
+	public ConnectionSession(DataSource dataSource) {
+		this.dataSource = dataSource;
+	}
+
+	public <T, E extends Exception> T execute(Work<T, E> work) throws E {
+		if (TransactionSynchronizationManager.hasResource(dataSource)) {
+			return work.execute();
+		}
+
+		Connection connection;
+		try {
+			connection = dataSource.getConnection();
+		} catch (SQLException e) {
+			throw new CannotGetJdbcConnectionException("Failed to obtain JDBC Connection for session", e);
+		}
+		SessionConnectionHolder holder = new SessionConnectionHolder(connection);
+		TransactionSynchronizationManager.bindResource(dataSource, holder);
+		sessionCount.increment();
+		try {
+			return work.execute();
+		} finally {
+			TransactionSynchronizationManager.unbindResource(dataSource);
+			requestCount.add(holder.requests);
+			log.debug("session closed, requests={}", holder.requests);
+			DataSourceUtils.releaseConnection(connection, dataSource);
+		}
+	}
+
+	public long getSessionCount() {
+		return sessionCount.sum();
+	}
+
+	/**
+	 * 세션 안에서 리포지토리가 요청한 커넥션 수
+	 */
+	public long getRequestCount() {
+		return requestCount.sum();
+	}
+
+	/**
+	 * 세션이 없었다면 커넥션 풀에서 가져갔을 커넥션 수(요청 수) - 세션이 가져간 커넥션 수
+	 * 쿼리 없이 끝난 세션이 많다면 음수가 될 수 있다.
+	 */
+	public long getSavedCheckoutCount() {
+		return getRequestCount() - getSessionCount();
+	}
+
+	@FunctionalInterface
+	public interface Work<T, E extends Exception> {
+		T execute() throws E;
+	}
+
+	/**
+	 * DataSourceUtils.getConnection()이 호출될 때마다 requested()가 호출된다.
+	 */
+	private static class SessionConnectionHolder extends ConnectionHolder {
+		private long requests;
+
+		SessionConnectionHolder(Connection connection) {
+			super(connection);
+		}
+
+		@Override
+		public void requested() {
+			super.requested();
+			requests++;
+		}
+	}
+}
@@ -10,9 +10,16 @@ import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public class DBConnectionUtil {
+
+	// 풀링 모드가 켜져있으면 DriverManager 대신 커넥션 풀에서 커넥션을 대여한다.
+	private static volatile SimpleConnectionPool pool;
+
 	public static Connection getConnection() {
 		try {
-			Connection connection = DriverManager.getConnection(URL, USERNAME, PASSWORD);
+			SimpleConnectionPool currentPool = pool;
+			Connection connection = currentPool != null
+				? currentPool.getConnection()
+				: DriverManager.getConnection(URL, USERNAME, PASSWORD);
 			log.info("get connection success\n connection={}\n class={}", connection, connection.getClass());
 
 			return connection;
@@ -21,4 +28,27 @@ public class DBConnectionUtil {
 			throw new RuntimeException(e);
 		}
 	}
+
+	/**
+	 * 풀링 모드를 켠다, 기본 설정(ConnectionConst)을 사용한다.
+	 */
+	public static void enablePooling() {
+		enablePooling(new ConnectionPoolConfig());
+	}
+
+	public static synchronized void enablePooling(ConnectionPoolConfig config) {
+		disablePooling();
+		pool = new SimpleConnectionPool(config);
+	}
+
+	/**
+	 * 풀링 모드를 끄고 풀의 유휴 커넥션을 모두 닫는다.
+	 */
+	public static synchronized void disablePooling() {
+		SimpleConnectionPool currentPool = pool;
+		pool = null;
+		if (currentPool != null) {
+			currentPool.close();
+		}
+	}
 }
@@ -0,0 +1,224 @@
+package hello.jdbc.connection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 첫 쿼리를 실행할 때 커넥션 풀에서 물리 커넥션을 얻는 DataSource (LazyConnectionDataSourceProxy와 같은 방식)
+ * 트랜잭션 매니저와 리포지토리에 이 DataSource를 넘기면, 트랜잭션이 시작될 때는 커넥션 프록시만 만들고
+ * setAutoCommit(), setReadOnly(), setTransactionIsolation()은 값만 기억해두었다가 물리 커넥션을 얻을 때 적용한다.
+ * 쿼리 없이 끝난 트랜잭션(검증 실패, 캐시 조회)은 커넥션 풀을 사용하지 않고, commit()/rollback()도 실행하지 않는다.
+ *
+ * 커넥션을 아낀 시간(트랜잭션 시작부터 물리 커넥션을 얻을 때까지, 얻지 않았다면 close()까지)과 물리 커넥션을 가지고 있던 시간을 측정한다.
+ */
+@Slf4j
+public class MeteredLazyConnectionDataSource extends DelegatingDataSource {
+
+	private final boolean defaultAutoCommit;
+	private final int defaultTransactionIsolation;
+
+	private final LongAdder logicalCount = new LongAdder();
+	private final LongAdder physicalCount = new LongAdder();
+	private final LongAdder savedNanos = new LongAdder();
+	private final LongAdder holdNanos = new LongAdder();
+
+	/**
+	 * 커넥션 풀의 기본 설정이 autoCommit = true, READ_COMMITTED 라고 가정한다. (H2, HikariCP 기본값)
+	 */
+	public MeteredLazyConnectionDataSource(DataSource targetDataSource) {
+		this(targetDataSource, true, Connection.TRANSACTION_READ_COMMITTED);
+	}
+
+	public MeteredLazyConnectionDataSource(DataSource targetDataSource, boolean defaultAutoCommit, int defaultTransactionIsolation) {
+		super(targetDataSource);
+		this.defaultAutoCommit = defaultAutoCommit;
+		this.defaultTransactionIsolation = defaultTransactionIsolation;
+	}
+
+	@Override
+	public Connection getConnection() {
+		return lazy(() -> obtainTargetDataSource().getConnection());
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) {
+		return lazy(() -> obtainTargetDataSource().getConnection(username, password));
+	}
+
+	private Connection lazy(ConnectionFactory factory) {
+		logicalCount.increment();
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+			new Class<?>[] {Connection.class}, new LazyConnectionHandler(factory));
+	}
+
+	public long getLogicalConnectionCount() {
+		return logicalCount.sum();
+	}
+
+	public long getPhysicalConnectionCount() {
+		return physicalCount.sum();
+	}
+
+	/**
+	 * 물리 커넥션을 얻지 않고 끝난 논리 커넥션 수
+	 */
+	public long getSkippedConnectionCount() {
+		return getLogicalConnectionCount() - getPhysicalConnectionCount();
+	}
+
+	public double getTotalSavedMillis() {
+		return savedNanos.sum() / 1_000_000.0;
+	}
+
+	/**
+	 * 논리 커넥션(트랜잭션)당 커넥션 풀에서 커넥션을 가져가지 않은 시간
+	 */
+	public double getAverageSavedMillis() {
+		long count = getLogicalConnectionCount();
+		return count == 0 ? 0.0 : getTotalSavedMillis() / count;
+	}
+
+	/**
+	 * 물리 커넥션을 얻은 뒤 반납할 때까지의 평균 시간
+	 */
+	public double getAverageHoldMillis() {
+		long count = getPhysicalConnectionCount();
+		return count == 0 ? 0.0 : holdNanos.sum() / 1_000_000.0 / count;
+	}
+
+	@FunctionalInterface
+	private interface ConnectionFactory {
+		Connection getConnection() throws SQLException;
+	}
+
+	/**
+	 * 물리 커넥션 없이 응답할 수 있는 메서드는 직접 처리하고, 나머지는 물리 커넥션을 얻어서 위임한다.
+	 * 커넥션은 한 스레드에서만 사용하므로 동기화하지 않는다.
+	 */
+	private class LazyConnectionHandler implements InvocationHandler {
+		private final ConnectionFactory factory;
+		private final long openedNanos = System.nanoTime();
+		private Connection target;
+		private long fetchedNanos;
+		private boolean closed;
+
+		private boolean autoCommit = defaultAutoCommit;
+		private boolean readOnly;
+		private Integer transactionIsolation; // null 이라면 변경하지 않았다.
+
+		LazyConnectionHandler(ConnectionFactory factory) {
+			this.factory = factory;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "toString":
+					return "MeteredLazyConnection[" + (target == null ? "not fetched" : target) + "]";
+				case "isClosed":
+					return closed;
+				case "close":
+					close();
+					return null;
+				default:
+					break;
+			}
+
+			if (target == null) {
+				switch (method.getName()) {
+					case "getAutoCommit":
+						return autoCommit;
+					case "setAutoCommit":
+						autoCommit = (Boolean) args[0];
+						return null;
+					case "isReadOnly":
+						return readOnly;
+					case "setReadOnly":
+						readOnly = (Boolean) args[0];
+						return null;
+					case "getTransactionIsolation":
+						return transactionIsolation == null ? defaultTransactionIsolation : transactionIsolation;
+					case "setTransactionIsolation":
+						transactionIsolation = (Integer) args[0];
+						return null;
+					case "commit":
+					case "rollback":
+						if (args == null) {
+							return null; // 실행한 쿼리가 없다.
+						}
+						break;
+					case "getWarnings":
+						return null;
+					case "clearWarnings":
+						return null;
+					default:
+						break;
+				}
+			}
+
+			if (closed) {
+				throw new SQLException("Connection is closed");
+			}
+			try {
+				return method.invoke(target(), args);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+		}
+
+		private Connection target() throws SQLException {
+			if (target == null) {
+				Connection connection = factory.getConnection();
+				fetchedNanos = System.nanoTime();
+				physicalCount.increment();
+
+				try {
+					// 기억해둔 설정을 물리 커넥션에 적용한다.
+					if (connection.getAutoCommit() != autoCommit) {
+						connection.setAutoCommit(autoCommit);
+					}
+					if (readOnly) {
+						connection.setReadOnly(true);
+					}
+					if (transactionIsolation != null) {
+						connection.setTransactionIsolation(transactionIsolation);
+					}
+				} catch (SQLException e) {
+					connection.close();
+					throw e;
+				}
+				target = connection;
+				log.debug("fetched physical connection after {}ms, conn={}", (fetchedNanos - openedNanos) / 1_000_000.0, connection);
+			}
+			return target;
+		}
+
+		private void close() throws SQLException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			long now = System.nanoTime();
+			savedNanos.add((target == null ? now : fetchedNanos) - openedNanos);
+			if (target != null) {
+				holdNanos.add(now - fetchedNanos);
+				target.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,228 @@
+package hello.jdbc.connection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * SimpleConnectionPool이 관리하는 물리 커넥션 하나
+ * 대여할 때마다 프록시 커넥션을 만들어서 돌려주고, 프록시의 close()가 호출되면 물리 커넥션을 닫지 않고 풀에 반납한다.
+ */
+@Slf4j
+class PooledConnection {
+	private final SimpleConnectionPool pool;
+	private final Connection physical;
+
+	// 커넥션 생성 시점의 상태, 반납할 때 이 값으로 되돌린다.
+	private final boolean defaultAutoCommit;
+	private final boolean defaultReadOnly;
+	private final int defaultIsolation;
+
+	// 물리 커넥션에 실제로 반영되어 있는 상태
+	// 값이 바뀌지 않았다면 반납시 DB에 다시 요청을 보내지 않는다. (e.g. MemberServiceV2.release()의 setAutoCommit(true))
+	// 한 시점에 하나의 스레드만 대여하므로 별도의 동기화 없이 사용한다. (대여/반납시 Semaphore와 Deque가 가시성을 보장한다)
+	private boolean autoCommit;
+	private boolean readOnly;
+	private int isolation;
+	private boolean transactionDirty; // 수동 커밋 모드에서 커밋/롤백되지 않은 작업이 있을 수 있는지
+
+	private volatile boolean broken; // 네트워크 오류(SQLState 08xxx)가 발생한 커넥션은 재사용하지 않는다.
+	private volatile long lastAccessed;
+	private volatile long lastValidated;
+
+	PooledConnection(SimpleConnectionPool pool, Connection physical) throws SQLException {
+		this.pool = pool;
+		this.physical = physical;
+		this.defaultAutoCommit = physical.getAutoCommit();
+		this.defaultReadOnly = physical.isReadOnly();
+		this.defaultIsolation = physical.getTransactionIsolation();
+		this.autoCommit = defaultAutoCommit;
+		this.readOnly = defaultReadOnly;
+		this.isolation = defaultIsolation;
+		this.lastAccessed = System.currentTimeMillis();
+		this.lastValidated = lastAccessed;
+	}
+
+	Connection borrow() {
+		return (Connection) Proxy.newProxyInstance(
+			Connection.class.getClassLoader(), new Class<?>[] {Connection.class}, new ConnectionHandler());
+	}
+
+	/**
+	 * 변경된 상태만 기본값으로 되돌린다.
+	 * @return 되돌리는데 실패하면 false (커넥션을 재사용하지 않는다)
+	 */
+	boolean resetState() {
+		try {
+			if (!autoCommit && transactionDirty) {
+				// 커밋되지 않은 작업이 남아있다면 다음 사용자에게 넘어가지 않도록 롤백한다.
+				physical.rollback();
+				transactionDirty = false;
+			}
+			if (autoCommit != defaultAutoCommit) {
+				physical.setAutoCommit(defaultAutoCommit);
+				autoCommit = defaultAutoCommit;
+			}
+			if (readOnly != defaultReadOnly) {
+				physical.setReadOnly(defaultReadOnly);
+				readOnly = defaultReadOnly;
+			}
+			if (isolation != defaultIsolation) {
+				physical.setTransactionIsolation(defaultIsolation);
+				isolation = defaultIsolation;
+			}
+			return true;
+		} catch (SQLException e) {
+			log.warn("reset connection state error, connection={}", physical, e);
+			return false;
+		}
+	}
+
+	boolean isValid(int timeoutSeconds) {
+		try {
+			return physical.isValid(timeoutSeconds);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	void closePhysical() {
+		try {
+			physical.close();
+		} catch (SQLException e) {
+			log.info("close physical connection error", e);
+		}
+	}
+
+	boolean isBroken() {
+		return broken;
+	}
+
+	long getLastAccessed() {
+		return lastAccessed;
+	}
+
+	long getLastValidated() {
+		return lastValidated;
+	}
+
+	void touch() {
+		lastAccessed = System.currentTimeMillis();
+	}
+
+	void markValidated() {
+		lastValidated = System.currentTimeMillis();
+	}
+
+	Connection getPhysical() {
+		return physical;
+	}
+
+	/**
+	 * 대여 1회에 해당하는 논리 커넥션
+	 * 상태 변경 메서드는 물리 커넥션의 상태를 기억해두고, 나머지 메서드는 그대로 물리 커넥션에 위임한다.
+	 */
+	private class ConnectionHandler implements InvocationHandler {
+		private boolean closed;
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "toString":
+					return "PooledConnection[" + physical + "]";
+				case "isClosed":
+					return closed;
+				case "close":
+					if (!closed) {
+						closed = true;
+						pool.recycle(PooledConnection.this);
+					}
+					return null;
+				case "unwrap":
+					if (((Class<?>) args[0]).isInstance(physical)) {
+						return physical;
+					}
+					break;
+				case "isWrapperFor":
+					if (((Class<?>) args[0]).isInstance(physical)) {
+						return true;
+					}
+					break;
+				default:
+					break;
+			}
+
+			if (closed) {
+				throw new SQLException("Connection is closed");
+			}
+
+			switch (method.getName()) {
+				case "getAutoCommit":
+					return autoCommit;
+				case "isReadOnly":
+					return readOnly;
+				case "getTransactionIsolation":
+					return isolation;
+				case "setAutoCommit":
+					boolean newAutoCommit = (Boolean) args[0];
+					if (newAutoCommit != autoCommit) {
+						invokePhysical(method, args);
+						autoCommit = newAutoCommit;
+						transactionDirty = false; // 수동 -> 자동 커밋 전환시 진행중인 트랜잭션은 커밋된다.
+					}
+					return null;
+				case "setReadOnly":
+					boolean newReadOnly = (Boolean) args[0];
+					if (newReadOnly != readOnly) {
+						invokePhysical(method, args);
+						readOnly = newReadOnly;
+					}
+					return null;
+				case "setTransactionIsolation":
+					int newIsolation = (Integer) args[0];
+					if (newIsolation != isolation) {
+						invokePhysical(method, args);
+						isolation = newIsolation;
+					}
+					return null;
+				case "commit":
+				case "rollback":
+					Object result = invokePhysical(method, args);
+					transactionDirty = false;
+					return result;
+				case "createStatement":
+				case "prepareStatement":
+				case "prepareCall":
+					if (!autoCommit) {
+						transactionDirty = true;
+					}
+					return invokePhysical(method, args);
+				default:
+					return invokePhysical(method, args);
+			}
+		}
+
+		private Object invokePhysical(Method method, Object[] args) throws Throwable {
+			try {
+				return method.invoke(physical, args);
+			} catch (InvocationTargetException e) {
+				Throwable cause = e.getTargetException();
+				if (cause instanceof SQLException sqlException
+					&& sqlException.getSQLState() != null
+					&& sqlException.getSQLState().startsWith("08")) {
+					broken = true;
+				}
+				throw cause;
+			}
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package hello.jdbc.connection;
+
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 트랜잭션 밖에서 실행하는 조회를 읽기 전용으로 표시한다. (ReadWriteRoutingDataSource가 복제본으로 보낸다)
+ * 트랜잭션 동기화가 활성화되어 있다면 커넥션이 트랜잭션 범위에 묶이므로 표시하지 않고 트랜잭션의 readOnly 설정을 따른다.
+ * 트랜잭션의 readOnly 표시(TransactionSynchronizationManager)는 건드리지 않고 라우팅 전용 ThreadLocal에 표시한다.
+ */
+public abstract class ReadOnlyRouting {
+
+	private static final ThreadLocal<Boolean> hint = new ThreadLocal<>();
+
+	public static <T, E extends Exception> T readOnly(Query<T, E> query) throws E {
+		// 이미 표시되어 있다면(중첩 호출) 바깥 호출이 표시를 지운다.
+		if (TransactionSynchronizationManager.isSynchronizationActive() || isReadOnly()) {
+			return query.execute();
+		}
+
+		hint.set(Boolean.TRUE);
+		try {
+			return query.execute();
+		} finally {
+			hint.remove();
+		}
+	}
+
+	static boolean isReadOnly() {
+		return hint.get() != null;
+	}
+
+	@FunctionalInterface
+	public interface Query<T, E extends Exception> {
+		T execute() throws E;
+	}
+}
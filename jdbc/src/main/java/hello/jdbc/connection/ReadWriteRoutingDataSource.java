@@ -0,0 +1,165 @@
+package hello.jdbc.connection;
+
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 읽기 전용 작업은 복제본(replica)으로, 나머지는 원본(primary)으로 보내는 DataSource
+ * 읽기 전용 작업은 다음 두 가지로 판단한다.
+ * - @Transactional(readOnly = true)
+ * - 트랜잭션 밖의 findById() (ReadOnlyRouting)
+ * 그 외의 작업은 원본으로 보내고, 조회인지 알 수 없으므로 쓴 것으로 본다.
+ *
+ * 트랜잭션 매니저는 트랜잭션 동기화(readOnly 표시)를 준비하기 전에 커넥션을 얻으므로,
+ * 트랜잭션 매니저와 리포지토리에는 첫 쿼리를 실행할 때 커넥션을 얻는 lazyProxy()를 넘긴다.
+ *
+ * 복제본은 원본보다 늦게 반영되므로 오래된 데이터를 읽는 범위를 제한한다.
+ * - read-your-writes: 스레드가 원본에 쓴 뒤 readYourWritesWindow 동안은 읽기 전용 작업도 원본으로 보낸다.
+ * - 복제 지연: replicaLagMillis가 maxReplicaLag를 넘으면 모든 작업을 원본으로 보낸다.
+ */
+@Slf4j
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+	public enum Route {
+		PRIMARY, REPLICA
+	}
+
+	private final long readYourWritesWindowNanos;
+	private final ThreadLocal<Long> lastWriteNanos = new ThreadLocal<>();
+	private final LongSupplier nanoTime;
+	private LongSupplier replicaLagMillis = () -> 0;
+	private long maxReplicaLagMillis = Long.MAX_VALUE;
+
+	private final LongAdder primaryCount = new LongAdder();
+	private final LongAdder replicaCount = new LongAdder();
+	private final LongAdder readYourWritesCount = new LongAdder();
+	private final LongAdder replicaLagFallbackCount = new LongAdder();
+
+	public ReadWriteRoutingDataSource(DataSource primary, DataSource replica, Duration readYourWritesWindow) {
+		this(primary, replica, readYourWritesWindow, System::nanoTime);
+	}
+
+	ReadWriteRoutingDataSource(DataSource primary, DataSource replica, Duration readYourWritesWindow, LongSupplier nanoTime) {
+		this.readYourWritesWindowNanos = readYourWritesWindow.toNanos();
+		this.nanoTime = nanoTime;
+		setTargetDataSources(Map.<Object, Object>of(Route.PRIMARY, primary, Route.REPLICA, replica));
+		setDefaultTargetDataSource(primary);
+		afterPropertiesSet();
+	}
+
+	/**
+	 * 복제 지연을 측정하는 함수와 허용할 최대 지연
+	 */
+	public void setReplicaLag(LongSupplier replicaLagMillis, Duration maxReplicaLag) {
+		this.replicaLagMillis = replicaLagMillis;
+		this.maxReplicaLagMillis = maxReplicaLag.toMillis();
+	}
+
+	/**
+	 * 트랜잭션 매니저와 리포지토리에 넘길 DataSource
+	 * 기본 커넥션 설정을 지정해서 설정을 확인하기 위한 커넥션을 미리 얻지 않는다.
+	 */
+	public DataSource lazyProxy() {
+		LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy();
+		proxy.setTargetDataSource(this);
+		proxy.setDefaultAutoCommit(true);
+		proxy.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+		return proxy;
+	}
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+		Route route = route();
+		(route == Route.PRIMARY ? primaryCount : replicaCount).increment();
+		log.debug("route={}", route);
+		return route;
+	}
+
+	private Route route() {
+		if (!isReadOnly()) {
+			markWrite();
+			return Route.PRIMARY;
+		}
+
+		if (isWithinReadYourWritesWindow()) {
+			readYourWritesCount.increment();
+			return Route.PRIMARY;
+		}
+		if (replicaLagMillis.getAsLong() > maxReplicaLagMillis) {
+			replicaLagFallbackCount.increment();
+			return Route.PRIMARY;
+		}
+		return Route.REPLICA;
+	}
+
+	private boolean isReadOnly() {
+		return TransactionSynchronizationManager.isCurrentTransactionReadOnly() || ReadOnlyRouting.isReadOnly();
+	}
+
+	private boolean isWithinReadYourWritesWindow() {
+		Long lastWrite = lastWriteNanos.get();
+		if (lastWrite == null) {
+			return false;
+		}
+		if (nanoTime.getAsLong() - lastWrite < readYourWritesWindowNanos) {
+			return true;
+		}
+		// 기간이 지난 기록은 지워서 풀의 스레드에 남지 않게 한다.
+		lastWriteNanos.remove();
+		return false;
+	}
+
+	/**
+	 * 읽기 전용이 아닌 작업만 쓴 것으로 본다, 읽기 전용 작업을 원본으로 보낸 경우(read-your-writes, 복제 지연)는 기록하지 않는다.
+	 * 트랜잭션이라면 복제가 시작되는 커밋 시점에 기록하고, 롤백되었다면 기록하지 않는다.
+	 */
+	private void markWrite() {
+		if (TransactionSynchronizationManager.isSynchronizationActive()
+			&& TransactionSynchronizationManager.isActualTransactionActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCompletion(int status) {
+					if (status == STATUS_COMMITTED) {
+						lastWriteNanos.set(nanoTime.getAsLong());
+					}
+				}
+			});
+			return;
+		}
+		lastWriteNanos.set(nanoTime.getAsLong());
+	}
+
+	public long getPrimaryCount() {
+		return primaryCount.sum();
+	}
+
+	public long getReplicaCount() {
+		return replicaCount.sum();
+	}
+
+	/**
+	 * 읽기 전용이지만 read-your-writes 때문에 원본으로 보낸 수
+	 */
+	public long getReadYourWritesCount() {
+		return readYourWritesCount.sum();
+	}
+
+	/**
+	 * 읽기 전용이지만 복제 지연 때문에 원본으로 보낸 수
+	 */
+	public long getReplicaLagFallbackCount() {
+		return replicaLagFallbackCount.sum();
+	}
+}
@@ -0,0 +1,206 @@
+package hello.jdbc.connection;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * DriverManager 기반의 간단한 커넥션 풀
+ * - 대여/반납 : 락 없이 ConcurrentLinkedDeque(LIFO)와 Semaphore(CAS)만 사용한다.
+ * - 최대 커넥션 수 : Semaphore의 permit 수로 (대여중 + 검증중) 커넥션 수를 제한한다.
+ * - 유휴 커넥션 정리, keepalive 검증 : 대여할 때마다 검증하지 않고 housekeeper 스레드가 주기적으로 수행한다.
+ * - 상태 추적 : autoCommit, readOnly, isolation은 실제로 변경된 경우에만 반납시 되돌린다. (PooledConnection 참고)
+ */
+@Slf4j
+public class SimpleConnectionPool extends AbstractDataSource implements AutoCloseable {
+
+	private final ConnectionPoolConfig config;
+
+	// 가장 최근에 반납된 커넥션을 먼저 대여한다(LIFO), 오래 사용되지 않은 커넥션은 뒤쪽에 남아 정리 대상이 된다.
+	private final ConcurrentLinkedDeque<PooledConnection> idleConnections = new ConcurrentLinkedDeque<>();
+	private final Semaphore permits;
+	private final AtomicInteger totalConnections = new AtomicInteger();
+	private final ScheduledExecutorService housekeeper;
+	private volatile boolean closed;
+
+	public SimpleConnectionPool(ConnectionPoolConfig config) {
+		this.config = config;
+		this.permits = new Semaphore(config.getMaximumPoolSize());
+		this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "SimpleConnectionPool-housekeeper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		housekeeper.scheduleWithFixedDelay(this::housekeep,
+			config.getHousekeepingPeriod(), config.getHousekeepingPeriod(), TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		if (closed) {
+			throw new SQLException("connection pool is closed");
+		}
+
+		acquirePermit();
+		try {
+			PooledConnection pooled = idleConnections.pollFirst();
+			if (pooled == null) {
+				pooled = createConnection();
+			}
+			return pooled.borrow();
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("SimpleConnectionPool uses the configured username and password");
+	}
+
+	private void acquirePermit() throws SQLException {
+		try {
+			if (!permits.tryAcquire(config.getConnectionTimeout(), TimeUnit.MILLISECONDS)) {
+				throw new SQLTransientConnectionException(
+					"connection is not available, request timed out after " + config.getConnectionTimeout() + "ms");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("interrupted during connection acquisition", e);
+		}
+	}
+
+	private PooledConnection createConnection() throws SQLException {
+		Connection physical = DriverManager.getConnection(config.getUrl(), config.getUsername(), config.getPassword());
+		try {
+			PooledConnection pooled = new PooledConnection(this, physical);
+			log.info("create pooled connection={}, total={}", physical, totalConnections.incrementAndGet());
+			return pooled;
+		} catch (SQLException e) {
+			physical.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * 논리 커넥션의 close()에서 호출된다.
+	 */
+	void recycle(PooledConnection pooled) {
+		try {
+			if (closed || pooled.isBroken() || !pooled.resetState()) {
+				discard(pooled);
+				return;
+			}
+
+			pooled.touch();
+			idleConnections.offerFirst(pooled);
+
+			// offer 직전에 풀이 닫혔다면 남아있는 커넥션을 정리한다.
+			if (closed && idleConnections.removeFirstOccurrence(pooled)) {
+				discard(pooled);
+			}
+		} finally {
+			permits.release();
+		}
+	}
+
+	private void housekeep() {
+		long now = System.currentTimeMillis();
+
+		// 가장 오래 사용되지 않은 커넥션(뒤쪽)부터 확인한다.
+		Iterator<PooledConnection> iterator = idleConnections.descendingIterator();
+		while (iterator.hasNext()) {
+			PooledConnection pooled = iterator.next();
+			if (now - pooled.getLastAccessed() > config.getIdleTimeout()
+				&& totalConnections.get() > config.getMinimumIdle()) {
+				// 대여와 경쟁하더라도 Deque에서 제거에 성공한 쪽만 커넥션을 가져간다.
+				if (idleConnections.removeFirstOccurrence(pooled)) {
+					log.info("evict idle connection={}", pooled.getPhysical());
+					discard(pooled);
+				}
+			} else if (now - pooled.getLastValidated() > config.getKeepaliveTime()) {
+				keepalive(pooled);
+			}
+		}
+	}
+
+	private void keepalive(PooledConnection pooled) {
+		// 검증하는 동안 커넥션을 풀에서 빼두므로, 최대 커넥션 수를 넘지 않도록 permit을 먼저 확보한다.
+		if (!permits.tryAcquire()) {
+			return;
+		}
+
+		try {
+			if (!idleConnections.removeFirstOccurrence(pooled)) {
+				return; // 이미 대여된 커넥션
+			}
+
+			if (pooled.isValid(config.getValidationTimeoutSeconds())) {
+				pooled.markValidated();
+				// 검증하는 동안 close()가 유휴 커넥션을 정리했다면 풀에 돌려놓지 않고 닫는다.
+				if (closed) {
+					discard(pooled);
+					return;
+				}
+				idleConnections.offerLast(pooled);
+
+				// offer 직전에 풀이 닫혔다면 남아있는 커넥션을 정리한다.
+				if (closed && idleConnections.removeFirstOccurrence(pooled)) {
+					discard(pooled);
+				}
+			} else {
+				log.info("keepalive failed, discard connection={}", pooled.getPhysical());
+				discard(pooled);
+			}
+		} finally {
+			permits.release();
+		}
+	}
+
+	private void discard(PooledConnection pooled) {
+		totalConnections.decrementAndGet();
+		pooled.closePhysical();
+	}
+
+	public int getTotalConnections() {
+		return totalConnections.get();
+	}
+
+	public int getIdleConnections() {
+		return idleConnections.size();
+	}
+
+	public int getActiveConnections() {
+		return Math.max(0, getTotalConnections() - getIdleConnections());
+	}
+
+	public int getPendingThreads() {
+		return permits.getQueueLength();
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		housekeeper.shutdownNow();
+
+		// 대여중인 커넥션은 반납될 때 닫힌다.
+		PooledConnection pooled;
+		while ((pooled = idleConnections.pollFirst()) != null) {
+			discard(pooled);
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package hello.jdbc.connection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.jdbc.support.JdbcUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 물리 커넥션 하나에 대한 PreparedStatement LRU 캐시
+ * 캐시에는 사용중이지 않은 PreparedStatement만 보관한다. 대여한 PreparedStatement는 close()가 호출되면 캐시로 돌아온다.
+ */
+@Slf4j
+class StatementCache {
+
+	// 설정값이 바뀐 PreparedStatement는 다음 사용자에게 영향을 줄 수 있으므로 캐시하지 않고 닫는다.
+	private static final Set<String> SETTING_METHODS = Set.of(
+		"setQueryTimeout", "setMaxRows", "setLargeMaxRows", "setFetchSize", "setFetchDirection",
+		"setMaxFieldSize", "setEscapeProcessing", "setPoolable", "setCursorName");
+
+	private final Connection physical;
+	private final StatementCachingDataSource owner;
+	private final LinkedHashMap<String, PreparedStatement> statements;
+
+	StatementCache(Connection physical, StatementCachingDataSource owner, int maxSize) {
+		this.physical = physical;
+		this.owner = owner;
+
+		// accessOrder = true, 가장 오래 사용되지 않은 PreparedStatement가 가장 먼저 제거된다.
+		this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				if (size() > maxSize) {
+					JdbcUtils.closeStatement(eldest.getValue());
+					owner.recordEviction();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	PreparedStatement prepareStatement(String sql) throws SQLException {
+		PreparedStatement statement = take(sql);
+		if (statement != null) {
+			owner.recordHit();
+		} else {
+			owner.recordMiss();
+			statement = physical.prepareStatement(sql);
+		}
+
+		return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+			new Class<?>[] {PreparedStatement.class}, new StatementHandler(sql, statement));
+	}
+
+	private synchronized PreparedStatement take(String sql) throws SQLException {
+		PreparedStatement statement = statements.remove(sql);
+		if (statement != null && statement.isClosed()) {
+			return null; // 물리 커넥션이 닫히면서 함께 닫힌 경우
+		}
+		return statement;
+	}
+
+	private synchronized void giveBack(String sql, PreparedStatement statement) {
+		// 같은 SQL을 동시에 여러 개 열어둔 경우, 캐시에는 하나만 보관한다.
+		if (statements.containsKey(sql)) {
+			JdbcUtils.closeStatement(statement);
+			return;
+		}
+		statements.put(sql, statement);
+	}
+
+	synchronized void clear() {
+		Iterator<PreparedStatement> iterator = statements.values().iterator();
+		while (iterator.hasNext()) {
+			JdbcUtils.closeStatement(iterator.next());
+			iterator.remove();
+		}
+	}
+
+	synchronized int size() {
+		return statements.size();
+	}
+
+	/**
+	 * 대여 1회에 해당하는 PreparedStatement 프록시
+	 */
+	private class StatementHandler implements InvocationHandler {
+		private final String sql;
+		private final PreparedStatement target;
+		private boolean closed;
+		private boolean settingsChanged;
+		private boolean batched;
+
+		StatementHandler(String sql, PreparedStatement target) {
+			this.sql = sql;
+			this.target = target;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			switch (name) {
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "toString":
+					return "CachedPreparedStatement[" + target + "]";
+				case "isClosed":
+					return closed;
+				case "close":
+					if (!closed) {
+						closed = true;
+						release();
+					}
+					return null;
+				default:
+					break;
+			}
+
+			if (closed) {
+				throw new SQLException("PreparedStatement is closed");
+			}
+			if (SETTING_METHODS.contains(name)) {
+				settingsChanged = true;
+			} else if (name.equals("addBatch")) {
+				batched = true;
+			}
+
+			try {
+				return method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+		}
+
+		private void release() {
+			if (settingsChanged) {
+				JdbcUtils.closeStatement(target);
+				return;
+			}
+
+			try {
+				target.clearParameters();
+				if (batched) {
+					target.clearBatch();
+				}
+				giveBack(sql, target);
+			} catch (SQLException e) {
+				log.info("reset cached statement error, sql={}", sql, e);
+				JdbcUtils.closeStatement(target);
+			}
+		}
+	}
+}
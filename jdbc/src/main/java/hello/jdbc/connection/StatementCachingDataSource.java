@@ -0,0 +1,151 @@
+package hello.jdbc.connection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * PreparedStatement 캐시를 적용하는 DataSource
+ * 대상 DataSource(e.g. HikariDataSource)를 감싸기만 하므로 DataSourceUtils, JdbcTemplate, 트랜잭션 매니저에서 그대로 사용할 수 있다.
+ * - 물리 커넥션마다 LRU 캐시를 두고, prepareStatement(sql)로 만든 PreparedStatement는 close() 시점에 캐시로 돌아간다.
+ * - PreparedStatement는 물리 커넥션에서 직접 생성하므로 커넥션 풀이 반납시 닫지 않는다.
+ *   대신 커넥션 풀의 커밋 상태 추적을 거치지 않으므로, 수동 커밋 모드는 트랜잭션 매니저처럼 항상 commit/rollback을 호출하는 경우에만 사용한다.
+ */
+@Slf4j
+public class StatementCachingDataSource extends DelegatingDataSource {
+
+	private final int cacheSize;
+
+	// 물리 커넥션 -> PreparedStatement 캐시 (ConcurrentHashMap은 equals를 사용하지만 JDBC 커넥션은 동일성 비교를 사용한다)
+	private final Map<Connection, StatementCache> caches = new ConcurrentHashMap<>();
+
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder evictionCount = new LongAdder();
+
+	public StatementCachingDataSource(DataSource targetDataSource, int cacheSize) {
+		super(targetDataSource);
+		this.cacheSize = cacheSize;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return wrap(obtainTargetDataSource().getConnection());
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		return wrap(obtainTargetDataSource().getConnection(username, password));
+	}
+
+	private Connection wrap(Connection logical) throws SQLException {
+		Connection physical = logical.isWrapperFor(Connection.class) ? logical.unwrap(Connection.class) : logical;
+
+		StatementCache cache = caches.get(physical);
+		if (cache == null) {
+			// 새로운 물리 커넥션이 등장했다면 이미 닫힌 물리 커넥션의 캐시를 정리한다.
+			removeClosedConnections();
+			cache = caches.computeIfAbsent(physical, key -> new StatementCache(key, this, cacheSize));
+		}
+
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+			new Class<?>[] {Connection.class}, new ConnectionHandler(logical, cache));
+	}
+
+	private void removeClosedConnections() {
+		caches.entrySet().removeIf(entry -> {
+			try {
+				if (entry.getKey().isClosed()) {
+					entry.getValue().clear();
+					return true;
+				}
+				return false;
+			} catch (SQLException e) {
+				return true;
+			}
+		});
+	}
+
+	void recordHit() {
+		hitCount.increment();
+	}
+
+	void recordMiss() {
+		missCount.increment();
+	}
+
+	void recordEviction() {
+		evictionCount.increment();
+	}
+
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictionCount.sum();
+	}
+
+	public double getHitRatio() {
+		long hits = getHitCount();
+		long total = hits + getMissCount();
+		return total == 0 ? 0.0 : (double) hits / total;
+	}
+
+	/**
+	 * prepareStatement(sql)만 캐시를 사용하고 나머지는 모두 원래 커넥션에 위임한다.
+	 */
+	private static class ConnectionHandler implements InvocationHandler {
+		private final Connection logical;
+		private final StatementCache cache;
+
+		ConnectionHandler(Connection logical, StatementCache cache) {
+			this.logical = logical;
+			this.cache = cache;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "toString":
+					return "StatementCachingConnection[" + logical + "]";
+				case "prepareStatement":
+					if (args.length == 1) {
+						if (logical.isClosed()) {
+							throw new SQLException("Connection is closed");
+						}
+						return cache.prepareStatement((String) args[0]);
+					}
+					break;
+				default:
+					break;
+			}
+
+			try {
+				return method.invoke(logical, args);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+		}
+	}
+}
@@ -0,0 +1,374 @@
+package hello.jdbc.connection;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import hello.jdbc.repository.async.VirtualThreads;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 반납된 커넥션을 반납한 스레드에 잠시(stickyTimeout) 붙잡아두는 DataSource
+ * 같은 스레드가 곧바로 다시 커넥션을 요청하면 커넥션 풀을 거치지 않고 붙잡아둔 커넥션을 돌려준다.
+ * - 플랫폼 스레드: ThreadLocal 슬롯을 사용한다.
+ * - 가상 스레드: 작업마다 새로 만들어지므로 ThreadLocal 대신 공유 슬롯 배열을 사용한다. (스레드 id로 시작 위치를 정한다)
+ *
+ * 커넥션이 새지 않도록
+ * - 붙잡아둔 커넥션은 maxParked 개를 넘지 않는다. 넘으면 바로 커넥션 풀에 반납한다.
+ * - 리퍼(reaper) 스레드가 stickyTimeout이 지난 커넥션을 커넥션 풀에 반납한다. (스레드가 종료된 경우 포함)
+ * - 수동 커밋, 읽기 전용 커넥션은 커넥션 풀이 상태를 되돌리도록 붙잡지 않고 반납한다.
+ * - close()를 호출하면 붙잡아둔 커넥션을 모두 반납한다.
+ * 붙잡아둔 커넥션은 커넥션 풀에서는 사용 중이므로, 커넥션 풀 크기보다 작은 maxParked를 사용한다.
+ */
+@Slf4j
+public class StickyConnectionDataSource extends DelegatingDataSource implements AutoCloseable {
+
+	private final long stickyNanos;
+	private final int maxParked;
+	private final AtomicInteger parkedCount = new AtomicInteger();
+
+	private final ThreadLocal<Slot> threadSlot = ThreadLocal.withInitial(this::newThreadSlot);
+	private final Set<Slot> threadSlots = ConcurrentHashMap.newKeySet();
+	private final Slot[] sharedSlots;
+
+	private final ScheduledExecutorService reaper;
+	private volatile boolean closed;
+
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder expiredCount = new LongAdder();
+
+	public StickyConnectionDataSource(DataSource targetDataSource, Duration stickyTimeout, int maxParked) {
+		super(targetDataSource);
+		if (maxParked < 1) {
+			throw new IllegalArgumentException("maxParked must be greater than 0");
+		}
+		this.stickyNanos = stickyTimeout.toNanos();
+		this.maxParked = maxParked;
+		this.sharedSlots = new Slot[maxParked];
+		for (int i = 0; i < maxParked; i++) {
+			sharedSlots[i] = new Slot(null);
+		}
+
+		this.reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "StickyConnectionReaper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long periodNanos = Math.max(stickyNanos / 2, TimeUnit.MILLISECONDS.toNanos(1));
+		reaper.scheduleWithFixedDelay(this::reap, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		if (closed) {
+			throw new SQLException("StickyConnectionDataSource is closed");
+		}
+
+		Connection connection = takeParked();
+		if (connection != null) {
+			hitCount.increment();
+			return wrap(connection);
+		}
+		missCount.increment();
+		return wrap(obtainTargetDataSource().getConnection());
+	}
+
+	/**
+	 * 다른 사용자의 커넥션은 붙잡지 않는다.
+	 */
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		return obtainTargetDataSource().getConnection(username, password);
+	}
+
+	private Connection wrap(Connection target) {
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+			new Class<?>[] {Connection.class}, new StickyConnectionHandler(target));
+	}
+
+	private Connection takeParked() {
+		Thread thread = Thread.currentThread();
+		if (!VirtualThreads.isVirtual(thread)) {
+			return threadSlot.get().take();
+		}
+
+		int start = (int) (thread.getId() % sharedSlots.length);
+		for (int i = 0; i < sharedSlots.length; i++) {
+			Slot slot = sharedSlots[(start + i) % sharedSlots.length];
+			if (slot.isOccupied()) {
+				Connection connection = slot.take();
+				if (connection != null) {
+					return connection;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 반납된 커넥션을 반납한 스레드의 슬롯에 붙잡아둔다. 붙잡을 수 없다면 커넥션 풀에 반납한다.
+	 */
+	private void park(Connection connection) throws SQLException {
+		if (closed || !reusable(connection) || !reserve()) {
+			connection.close();
+			return;
+		}
+
+		Parked parked = new Parked(connection, System.nanoTime());
+		Thread thread = Thread.currentThread();
+		if (!VirtualThreads.isVirtual(thread)) {
+			Parked previous = threadSlot.get().ref.getAndSet(parked);
+			if (previous != null) {
+				release(previous);
+			}
+		} else if (!parkShared(thread, parked)) {
+			release(parked);
+		}
+
+		// close()와 동시에 실행되었다면 방금 붙잡은 커넥션도 반납한다.
+		if (closed) {
+			drain();
+		}
+	}
+
+	private boolean parkShared(Thread thread, Parked parked) {
+		int start = (int) (thread.getId() % sharedSlots.length);
+		for (int i = 0; i < sharedSlots.length; i++) {
+			if (sharedSlots[(start + i) % sharedSlots.length].ref.compareAndSet(null, parked)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean reusable(Connection connection) {
+		try {
+			return connection.getAutoCommit() && !connection.isReadOnly();
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private boolean reserve() {
+		while (true) {
+			int count = parkedCount.get();
+			if (count >= maxParked) {
+				return false;
+			}
+			if (parkedCount.compareAndSet(count, count + 1)) {
+				return true;
+			}
+		}
+	}
+
+	private void release(Parked parked) {
+		parkedCount.decrementAndGet();
+		try {
+			parked.connection.close();
+		} catch (SQLException e) {
+			log.warn("failed to release parked connection", e);
+		}
+	}
+
+	private boolean expired(Parked parked) {
+		return System.nanoTime() - parked.parkedNanos >= stickyNanos;
+	}
+
+	/**
+	 * stickyTimeout이 지난 커넥션을 반납하고, 종료된 스레드의 빈 슬롯을 정리한다.
+	 */
+	private void reap() {
+		try {
+			for (Slot slot : threadSlots) {
+				slot.reapIfExpired();
+				if (!slot.isOwnerAlive() && !slot.isOccupied()) {
+					threadSlots.remove(slot);
+				}
+			}
+			for (Slot slot : sharedSlots) {
+				slot.reapIfExpired();
+			}
+		} catch (RuntimeException e) {
+			log.warn("reaper failed", e);
+		}
+	}
+
+	private void drain() {
+		for (Slot slot : threadSlots) {
+			slot.releaseNow();
+		}
+		for (Slot slot : sharedSlots) {
+			slot.releaseNow();
+		}
+	}
+
+	private Slot newThreadSlot() {
+		Slot slot = new Slot(Thread.currentThread());
+		threadSlots.add(slot);
+		return slot;
+	}
+
+	/**
+	 * 붙잡아둔 커넥션을 모두 반납한다. 대상 DataSource는 닫지 않는다.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		reaper.shutdownNow();
+		drain();
+	}
+
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	public double getHitRatio() {
+		long hits = getHitCount();
+		long total = hits + getMissCount();
+		return total == 0 ? 0.0 : (double) hits / total;
+	}
+
+	/**
+	 * 다시 사용되기 전에 stickyTimeout이 지나서 커넥션 풀에 반납한 수
+	 */
+	public long getExpiredCount() {
+		return expiredCount.sum();
+	}
+
+	/**
+	 * 지금 붙잡고 있는 커넥션 수
+	 */
+	public int getParkedCount() {
+		return parkedCount.get();
+	}
+
+	private record Parked(Connection connection, long parkedNanos) {
+	}
+
+	/**
+	 * 커넥션 하나를 붙잡아두는 슬롯, 먼저 ref를 비운 쪽(사용하는 스레드 또는 리퍼)이 커넥션을 가져간다.
+	 */
+	private class Slot {
+		private final AtomicReference<Parked> ref = new AtomicReference<>();
+		private final WeakReference<Thread> owner; // 공유 슬롯이라면 null
+
+		Slot(Thread owner) {
+			this.owner = owner == null ? null : new WeakReference<>(owner);
+		}
+
+		boolean isOccupied() {
+			return ref.get() != null;
+		}
+
+		boolean isOwnerAlive() {
+			if (owner == null) {
+				return true;
+			}
+			Thread thread = owner.get();
+			return thread != null && thread.isAlive();
+		}
+
+		Connection take() {
+			Parked parked = ref.getAndSet(null);
+			if (parked == null) {
+				return null;
+			}
+			if (expired(parked) || isClosed(parked.connection)) {
+				expiredCount.increment();
+				release(parked);
+				return null;
+			}
+			parkedCount.decrementAndGet();
+			return parked.connection;
+		}
+
+		void reapIfExpired() {
+			Parked parked = ref.get();
+			if (parked != null && expired(parked) && ref.compareAndSet(parked, null)) {
+				expiredCount.increment();
+				release(parked);
+			}
+		}
+
+		void releaseNow() {
+			Parked parked = ref.getAndSet(null);
+			if (parked != null) {
+				release(parked);
+			}
+		}
+
+		private boolean isClosed(Connection connection) {
+			try {
+				return connection.isClosed();
+			} catch (SQLException e) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * close()를 호출하면 커넥션 풀 대신 현재 스레드의 슬롯에 반납한다.
+	 * 커넥션은 한 스레드에서만 사용하므로 동기화하지 않는다.
+	 */
+	private class StickyConnectionHandler implements InvocationHandler {
+		private final Connection target;
+		private boolean closed;
+
+		StickyConnectionHandler(Connection target) {
+			this.target = target;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "toString":
+					return "StickyConnection[" + target + "]";
+				case "isClosed":
+					return closed;
+				case "close":
+					if (!closed) {
+						closed = true;
+						park(target);
+					}
+					return null;
+				default:
+					break;
+			}
+
+			if (closed) {
+				throw new SQLException("Connection is closed");
+			}
+			try {
+				return method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+		}
+	}
+}
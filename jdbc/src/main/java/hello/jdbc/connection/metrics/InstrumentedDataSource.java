@@ -0,0 +1,319 @@
+package hello.jdbc.connection.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 커넥션 풀 사용을 측정하는 DataSource
+ * - acquire: getConnection()이 커넥션을 돌려줄 때까지 기다린 시간 (타임아웃은 timeoutCount로 따로 센다)
+ * - hold: 커넥션을 얻은 뒤 close()로 반납할 때까지의 시간, 호출한 리포지토리 메서드별로도 기록한다.
+ * - active, idle, pending, total: 대상이 HikariDataSource라면 HikariPoolMXBean의 값
+ *
+ * snapshot()으로 직접 가져가거나(pull), registerMBean()으로 JMX에 등록해서 조회한다.
+ * 호출한 메서드는 getConnection()마다 StackWalker로 찾으므로, 비용이 부담된다면 setCallerTagging(false)로 끈다.
+ * 트랜잭션 매니저는 리포지토리를 호출하기 전에 커넥션을 얻으므로, 그때 찾지 못했다면 처음으로 Statement를 만드는 리포지토리 메서드로 기록한다.
+ * e.g. 서비스 트랜잭션에서 findById() 후 update()를 호출했다면 트랜잭션 전체의 hold 시간을 findById로 기록한다.
+ */
+@Slf4j
+public class InstrumentedDataSource extends DelegatingDataSource implements PoolMetricsMXBean, AutoCloseable {
+
+	static final String UNKNOWN_CALLER = "unknown";
+
+	private final String poolName;
+	private final HikariDataSource hikariDataSource; // HikariCP가 아니라면 null
+	private final StackWalker stackWalker = StackWalker.getInstance();
+	private String callerPackage = "hello.jdbc.repository";
+	private volatile boolean callerTagging = true;
+
+	private final LatencyHistogram acquire = new LatencyHistogram();
+	private final LatencyHistogram hold = new LatencyHistogram();
+	private final Map<String, LatencyHistogram> holdByCaller = new ConcurrentHashMap<>();
+	private final LongAdder timeoutCount = new LongAdder();
+
+	private ObjectName objectName;
+
+	public InstrumentedDataSource(DataSource targetDataSource, String poolName) {
+		super(targetDataSource);
+		this.poolName = poolName;
+		this.hikariDataSource = unwrapHikari(targetDataSource);
+	}
+
+	private static HikariDataSource unwrapHikari(DataSource dataSource) {
+		try {
+			return dataSource.isWrapperFor(HikariDataSource.class) ? dataSource.unwrap(HikariDataSource.class) : null;
+		} catch (SQLException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * 이 패키지(하위 패키지 포함)의 클래스를 호출한 메서드로 기록한다.
+	 */
+	public void setCallerPackage(String callerPackage) {
+		this.callerPackage = callerPackage;
+	}
+
+	public void setCallerTagging(boolean callerTagging) {
+		this.callerTagging = callerTagging;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		String caller = callerTagging ? findCaller() : null;
+		long start = System.nanoTime();
+		Connection connection;
+		try {
+			connection = obtainTargetDataSource().getConnection();
+		} catch (SQLTransientConnectionException e) {
+			// HikariCP는 connectionTimeout 동안 커넥션을 얻지 못하면 SQLTransientConnectionException을 던진다.
+			timeoutCount.increment();
+			log.debug("connection timeout, pool={}, caller={}", poolName, caller);
+			throw e;
+		}
+		long acquiredNanos = System.nanoTime();
+		acquire.record(acquiredNanos - start);
+
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+			new Class<?>[] {Connection.class}, new HoldTimeHandler(connection, caller, acquiredNanos));
+	}
+
+	/**
+	 * 스택을 따라 내려가며 callerPackage의 프레임을 찾고, 그 프레임부터 이어지는 리포지토리/인프라 프레임 중 가장 바깥쪽 메서드를 고른다.
+	 * e.g. MemberRepositoryV4_2.getConnection() <- selectById() <- ReadOnlyRouting.readOnly() <- findById() <- 서비스
+	 *      라면 MemberRepositoryV4_2.findById 로 기록한다.
+	 */
+	private String findCaller() {
+		return stackWalker.walk(frames -> {
+			String caller = null;
+			Iterator<StackWalker.StackFrame> iterator = frames.iterator();
+			while (iterator.hasNext()) {
+				StackWalker.StackFrame frame = iterator.next();
+				String className = frame.getClassName();
+				if (className.startsWith(callerPackage)) {
+					if (!frame.getMethodName().startsWith("lambda$")) {
+						caller = className.substring(className.lastIndexOf('.') + 1) + "." + frame.getMethodName();
+					}
+				} else if (caller != null && !isInfrastructure(className)) {
+					break;
+				}
+			}
+			return caller == null ? UNKNOWN_CALLER : caller;
+		});
+	}
+
+	private boolean isInfrastructure(String className) {
+		return className.startsWith("hello.jdbc.connection")
+			|| className.startsWith("org.springframework.")
+			|| className.startsWith("java.")
+			|| className.startsWith("jdk.")
+			|| className.contains("$$");
+	}
+
+	private void recordHold(String caller, long nanos) {
+		hold.record(nanos);
+		if (caller != null) {
+			holdByCaller.computeIfAbsent(caller, key -> new LatencyHistogram()).record(nanos);
+		}
+	}
+
+	public PoolMetrics snapshot() {
+		Map<String, LatencySnapshot> callers = new TreeMap<>();
+		holdByCaller.forEach((caller, histogram) -> callers.put(caller, histogram.snapshot()));
+
+		LatencySnapshot acquireSnapshot = acquire.snapshot();
+		return new PoolMetrics(poolName, getActiveConnections(), getIdleConnections(), getPendingThreads(),
+			getTotalConnections(), acquireSnapshot.getCount(), getTimeoutCount(), acquireSnapshot, hold.snapshot(), callers);
+	}
+
+	/**
+	 * 플랫폼 MBeanServer에 hello.jdbc:type=PoolMetrics,name={poolName} 으로 등록한다.
+	 */
+	public synchronized void registerMBean() {
+		if (objectName != null) {
+			return;
+		}
+		try {
+			ObjectName name = new ObjectName("hello.jdbc:type=PoolMetrics,name=" + ObjectName.quote(poolName));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+			objectName = name;
+			log.info("registered pool metrics MBean, name={}", name);
+		} catch (JMException e) {
+			throw new IllegalStateException("failed to register pool metrics MBean, pool=" + poolName, e);
+		}
+	}
+
+	public synchronized ObjectName getObjectName() {
+		return objectName;
+	}
+
+	/**
+	 * JMX 등록을 해제한다. 대상 DataSource는 닫지 않는다.
+	 */
+	@Override
+	public synchronized void close() {
+		if (objectName == null) {
+			return;
+		}
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			server.unregisterMBean(objectName);
+		} catch (JMException e) {
+			log.warn("failed to unregister pool metrics MBean, name={}", objectName, e);
+		}
+		objectName = null;
+	}
+
+	private HikariPoolMXBean hikariPool() {
+		// 커넥션 풀이 아직 시작되지 않았다면 null
+		return hikariDataSource == null ? null : hikariDataSource.getHikariPoolMXBean();
+	}
+
+	@Override
+	public String getPoolName() {
+		return poolName;
+	}
+
+	@Override
+	public int getActiveConnections() {
+		HikariPoolMXBean pool = hikariPool();
+		return pool == null ? -1 : pool.getActiveConnections();
+	}
+
+	@Override
+	public int getIdleConnections() {
+		HikariPoolMXBean pool = hikariPool();
+		return pool == null ? -1 : pool.getIdleConnections();
+	}
+
+	@Override
+	public int getPendingThreads() {
+		HikariPoolMXBean pool = hikariPool();
+		return pool == null ? -1 : pool.getThreadsAwaitingConnection();
+	}
+
+	@Override
+	public int getTotalConnections() {
+		HikariPoolMXBean pool = hikariPool();
+		return pool == null ? -1 : pool.getTotalConnections();
+	}
+
+	@Override
+	public long getAcquireCount() {
+		return acquire.snapshot().getCount();
+	}
+
+	@Override
+	public long getTimeoutCount() {
+		return timeoutCount.sum();
+	}
+
+	@Override
+	public double getAcquireMeanMicros() {
+		return acquire.snapshot().getMeanMicros();
+	}
+
+	@Override
+	public long getAcquireP99Micros() {
+		return acquire.snapshot().getP99Micros();
+	}
+
+	@Override
+	public long getAcquireMaxMicros() {
+		return acquire.snapshot().getMaxMicros();
+	}
+
+	@Override
+	public double getHoldMeanMicros() {
+		return hold.snapshot().getMeanMicros();
+	}
+
+	@Override
+	public long getHoldP99Micros() {
+		return hold.snapshot().getP99Micros();
+	}
+
+	@Override
+	public long getHoldMaxMicros() {
+		return hold.snapshot().getMaxMicros();
+	}
+
+	@Override
+	public Map<String, Long> getHoldP99MicrosByCaller() {
+		Map<String, Long> result = new TreeMap<>();
+		holdByCaller.forEach((caller, histogram) -> result.put(caller, histogram.snapshot().getP99Micros()));
+		return result;
+	}
+
+	/**
+	 * close()에서 hold 시간을 기록하고 나머지는 모두 원래 커넥션에 위임한다.
+	 */
+	private class HoldTimeHandler implements InvocationHandler {
+		private final Connection target;
+		private String caller;
+		private final long acquiredNanos;
+		private boolean closed;
+
+		HoldTimeHandler(Connection target, String caller, long acquiredNanos) {
+			this.target = target;
+			this.caller = caller;
+			this.acquiredNanos = acquiredNanos;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "toString":
+					return "InstrumentedConnection[" + target + "]";
+				case "close":
+					if (!closed) {
+						closed = true;
+						recordHold(caller, System.nanoTime() - acquiredNanos);
+						target.close();
+					}
+					return null;
+				case "createStatement":
+				case "prepareStatement":
+				case "prepareCall":
+					if (UNKNOWN_CALLER.equals(caller)) {
+						caller = findCaller();
+					}
+					break;
+				default:
+					break;
+			}
+
+			try {
+				return method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package hello.jdbc.connection.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 락 없이 기록하는 log2 버킷 지연 시간 히스토그램 (마이크로초 단위)
+ * i 번째 버킷은 [2^(i-1), 2^i) us 구간이고, 0 번째 버킷은 1us 미만이다.
+ * 버킷 경계로 백분위수를 구하므로 오차는 최대 2배이지만, 기록은 CAS 한 번과 LongAdder 갱신뿐이다.
+ */
+public class LatencyHistogram {
+	static final int BUCKETS = 64;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder totalNanos = new LongAdder();
+	private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		buckets.incrementAndGet(bucket(value / 1000));
+		totalNanos.add(value);
+		maxNanos.accumulate(value);
+	}
+
+	static int bucket(long micros) {
+		return BUCKETS - Long.numberOfLeadingZeros(micros);
+	}
+
+	/**
+	 * 버킷에 속하는 가장 큰 값(us)
+	 */
+	static long upperBoundMicros(int bucket) {
+		return bucket == 0 ? 0 : (1L << bucket) - 1;
+	}
+
+	/**
+	 * 기록 중에 만들어도 되지만, 버킷과 합계가 정확히 같은 시점의 값은 아니다.
+	 */
+	public LatencySnapshot snapshot() {
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+		}
+		return new LatencySnapshot(counts, totalNanos.sum(), maxNanos.get());
+	}
+}
@@ -0,0 +1,73 @@
+package hello.jdbc.connection.metrics;
+
+import java.util.Arrays;
+
+/**
+ * LatencyHistogram의 특정 시점 값
+ */
+public class LatencySnapshot {
+	private final long[] bucketCounts;
+	private final long count;
+	private final long totalNanos;
+	private final long maxNanos;
+
+	LatencySnapshot(long[] bucketCounts, long totalNanos, long maxNanos) {
+		this.bucketCounts = bucketCounts;
+		this.count = Arrays.stream(bucketCounts).sum();
+		this.totalNanos = totalNanos;
+		this.maxNanos = maxNanos;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	public double getMeanMicros() {
+		return count == 0 ? 0.0 : totalNanos / 1000.0 / count;
+	}
+
+	public long getMaxMicros() {
+		return maxNanos / 1000;
+	}
+
+	/**
+	 * 백분위수가 속한 버킷의 상한 (최댓값보다 크지 않다)
+	 * @param percentile 0.0 ~ 1.0
+	 */
+	public long getPercentileMicros(double percentile) {
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile * count));
+		long cumulative = 0;
+		for (int i = 0; i < bucketCounts.length; i++) {
+			cumulative += bucketCounts[i];
+			if (cumulative >= rank) {
+				return Math.min(LatencyHistogram.upperBoundMicros(i), getMaxMicros());
+			}
+		}
+		return getMaxMicros();
+	}
+
+	public long getP50Micros() {
+		return getPercentileMicros(0.50);
+	}
+
+	public long getP99Micros() {
+		return getPercentileMicros(0.99);
+	}
+
+	public long[] getBucketCounts() {
+		return bucketCounts.clone();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count=%d, mean=%.1fus, p50=%dus, p99=%dus, max=%dus",
+			count, getMeanMicros(), getP50Micros(), getP99Micros(), getMaxMicros());
+	}
+}
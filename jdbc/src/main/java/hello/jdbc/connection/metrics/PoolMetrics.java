@@ -0,0 +1,28 @@
+package hello.jdbc.connection.metrics;
+
+import java.util.Map;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+/**
+ * InstrumentedDataSource.snapshot()으로 가져가는 커넥션 풀 지표 (pull API)
+ * 커넥션 풀 상태(active, idle, pending, total)는 HikariCP가 아니라면 -1 이다.
+ */
+@Getter
+@ToString
+@RequiredArgsConstructor
+public class PoolMetrics {
+	private final String poolName;
+	private final int activeConnections;
+	private final int idleConnections;
+	private final int pendingThreads;
+	private final int totalConnections;
+
+	private final long acquireCount;
+	private final long timeoutCount;
+	private final LatencySnapshot acquire; // 커넥션을 얻기까지 기다린 시간
+	private final LatencySnapshot hold; // 커넥션을 얻은 뒤 반납할 때까지의 시간
+	private final Map<String, LatencySnapshot> holdByCaller; // 리포지토리 메서드(e.g. MemberRepositoryV4_2.findById)별 hold
+}
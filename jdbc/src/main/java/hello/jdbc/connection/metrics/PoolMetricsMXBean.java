@@ -0,0 +1,38 @@
+package hello.jdbc.connection.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX로 공개하는 커넥션 풀 지표 (jconsole, VisualVM의 hello.jdbc:type=PoolMetrics)
+ * 시간 단위는 모두 마이크로초(us)이다.
+ */
+public interface PoolMetricsMXBean {
+
+	String getPoolName();
+
+	int getActiveConnections();
+
+	int getIdleConnections();
+
+	int getPendingThreads();
+
+	int getTotalConnections();
+
+	long getAcquireCount();
+
+	long getTimeoutCount();
+
+	double getAcquireMeanMicros();
+
+	long getAcquireP99Micros();
+
+	long getAcquireMaxMicros();
+
+	double getHoldMeanMicros();
+
+	long getHoldP99Micros();
+
+	long getHoldMaxMicros();
+
+	Map<String, Long> getHoldP99MicrosByCaller();
+}
@@ -8,6 +8,7 @@ import lombok.extern.slf4j.Slf4j;
 public class Member {
 	private String memberId;
 	private int money;
+	private long version; // 낙관적 락에 사용, 변경될 때마다 1씩 증가한다.
 
 	public Member() {
 		log.info("create member");
@@ -18,4 +19,13 @@ public class Member {
 		this.memberId = memberId;
 		this.money = money;
 	}
+
+	/**
+	 * 같은 값을 가진 새 Member, 캐시나 여러 호출자가 공유하는 결과를 서로의 변경에서 보호할 때 사용한다.
+	 */
+	public Member copy() {
+		Member copy = new Member(memberId, money);
+		copy.version = version;
+		return copy;
+	}
 }
@@ -0,0 +1,129 @@
+package hello.jdbc.repository;
+
+import java.sql.BatchUpdateException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.StringJoiner;
+
+import hello.jdbc.domain.Member;
+
+/**
+ * JDBC 배치 처리를 위한 공통 기능
+ */
+abstract class BatchSupport {
+
+	// IN 절의 파라미터 개수는 아래 크기 중 하나로 맞춘다.
+	// 조회할 id 개수마다 SQL이 달라지면 PreparedStatement 캐시가 금방 가득차기 때문에, 남는 자리는 마지막 id를 반복해서 채운다.
+	static final int[] IN_LIST_SIZES = {1, 4, 16, 64, 256};
+
+	/**
+	 * size 단위로 잘라서 반환한다.
+	 */
+	static <T> List<List<T>> partition(Collection<T> items, int size) {
+		List<List<T>> chunks = new ArrayList<>();
+		List<T> chunk = new ArrayList<>(Math.min(size, items.size()));
+		for (T item : items) {
+			chunk.add(item);
+			if (chunk.size() == size) {
+				chunks.add(chunk);
+				chunk = new ArrayList<>(size);
+			}
+		}
+		if (!chunk.isEmpty()) {
+			chunks.add(chunk);
+		}
+		return chunks;
+	}
+
+	/**
+	 * 중복을 제거한 id를 IN 절 크기(IN_LIST_SIZES)에 맞춘 청크로 나눈다.
+	 */
+	static List<List<String>> inListChunks(Collection<String> ids) {
+		int maxSize = IN_LIST_SIZES[IN_LIST_SIZES.length - 1];
+		List<List<String>> chunks = partition(new LinkedHashSet<>(ids), maxSize);
+		for (List<String> chunk : chunks) {
+			int shape = inListSize(chunk.size());
+			String last = chunk.get(chunk.size() - 1);
+			while (chunk.size() < shape) {
+				chunk.add(last);
+			}
+		}
+		return chunks;
+	}
+
+	private static int inListSize(int size) {
+		for (int inListSize : IN_LIST_SIZES) {
+			if (size <= inListSize) {
+				return inListSize;
+			}
+		}
+		throw new IllegalArgumentException("in list is too large, size=" + size);
+	}
+
+	/**
+	 * e.g. inListSql("select * from member where member_id in", 4) -> "select * from member where member_id in (?, ?, ?, ?)"
+	 */
+	static String inListSql(String prefix, int size) {
+		StringJoiner placeholders = new StringJoiner(", ", " (", ")");
+		for (int i = 0; i < size; i++) {
+			placeholders.add("?");
+		}
+		return prefix + placeholders;
+	}
+
+	/**
+	 * executeBatch()의 결과로 영향받은 row 수를 계산한다.
+	 * 드라이버가 개수를 알려주지 않는 경우(SUCCESS_NO_INFO)는 1건으로 계산한다.
+	 */
+	static int affectedRows(int[] updateCounts) {
+		int rows = 0;
+		for (int updateCount : updateCounts) {
+			if (updateCount > 0) {
+				rows += updateCount;
+			} else if (updateCount == Statement.SUCCESS_NO_INFO) {
+				rows++;
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * 실패한 청크를 설명하는 메시지를 만든다. (e.g. saveAll chunk=2, failedMemberIds=[memberA])
+	 * 드라이버가 실패 이후의 배치를 실행하지 않았다면 실행되지 않은 회원도 실패로 보고한다.
+	 */
+	static String describeFailedChunk(String task, int chunkIndex, List<Member> chunk, Throwable e) {
+		return describeFailedChunk(task, chunkIndex, failedMemberIds(chunk, e));
+	}
+
+	static String describeFailedChunk(String task, int chunkIndex, List<String> failedMemberIds) {
+		return task + " chunk=" + chunkIndex + ", failedMemberIds=" + failedMemberIds;
+	}
+
+	private static List<String> failedMemberIds(List<Member> chunk, Throwable e) {
+		List<String> failedIds = new ArrayList<>();
+		if (chunk == null) {
+			return failedIds;
+		}
+
+		BatchUpdateException batchException = findBatchUpdateException(e);
+		int[] updateCounts = batchException == null ? new int[0] : batchException.getUpdateCounts();
+		for (int i = 0; i < chunk.size(); i++) {
+			if (i >= updateCounts.length || updateCounts[i] == Statement.EXECUTE_FAILED) {
+				failedIds.add(chunk.get(i).getMemberId());
+			}
+		}
+		return failedIds;
+	}
+
+	private static BatchUpdateException findBatchUpdateException(Throwable e) {
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if (cause instanceof BatchUpdateException batchUpdateException) {
+				return batchUpdateException;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,160 @@
+package hello.jdbc.repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import hello.jdbc.domain.Member;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 같은 회원을 동시에 조회하면 쿼리를 한 번만 실행하고 결과를 나누어 갖는다. (single-flight)
+ * 먼저 조회를 시작한 스레드가 쿼리를 실행하고, 그 사이에 들어온 스레드는 쿼리가 끝날 때까지 기다렸다가 같은 결과를 받는다.
+ * 조회가 실패하면 기다리던 스레드도 같은 예외를 받는다.
+ *
+ * 트랜잭션 안의 조회는 트랜잭션 커넥션으로 실행해야 하므로 합치지 않고 delegate를 그대로 호출한다.
+ * 회원이 변경(커밋)되면 진행중인 조회에는 더 이상 합류하지 않고 새로 조회한다.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class CoalescingMemberRepository implements MemberRepository {
+	private final MemberRepository delegate;
+	private final ConcurrentHashMap<String, CompletableFuture<Member>> inFlight = new ConcurrentHashMap<>();
+
+	private final LongAdder queries = new LongAdder(); // 실제로 실행한 조회 수
+	private final LongAdder coalesced = new LongAdder(); // 다른 조회에 합류한 수
+
+	@Override
+	public Member save(Member member) {
+		return delegate.save(member);
+	}
+
+	@Override
+	public Member findById(String memberId) {
+		if (TransactionSynchronizationManager.isActualTransactionActive()) {
+			return delegate.findById(memberId);
+		}
+
+		CompletableFuture<Member> call = new CompletableFuture<>();
+		CompletableFuture<Member> leader = inFlight.putIfAbsent(memberId, call);
+		if (leader != null) {
+			coalesced.increment();
+			// 같은 결과를 받은 스레드끼리 서로의 변경에 영향을 주지 않도록 복사해서 반환한다.
+			return await(leader).copy();
+		}
+
+		queries.increment();
+		try {
+			Member member = delegate.findById(memberId);
+			call.complete(member);
+			return member;
+		} catch (RuntimeException | Error e) {
+			call.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(memberId, call);
+		}
+	}
+
+	@Override
+	public void update(String memberId, int money) {
+		delegate.update(memberId, money);
+		forget(List.of(memberId));
+	}
+
+	@Override
+	public void delete(String memberId) {
+		delegate.delete(memberId);
+		forget(List.of(memberId));
+	}
+
+	@Override
+	public int saveAll(Collection<Member> members, int batchSize) {
+		return delegate.saveAll(members, batchSize);
+	}
+
+	@Override
+	public Map<String, Member> findAllByIds(Collection<String> memberIds) {
+		return delegate.findAllByIds(memberIds);
+	}
+
+	@Override
+	public Map<String, Member> findAllByIdsForUpdate(Collection<String> memberIds) {
+		return delegate.findAllByIdsForUpdate(memberIds);
+	}
+
+	@Override
+	public MemberPage findPage(String afterMemberId, int limit) {
+		return delegate.findPage(afterMemberId, limit);
+	}
+
+	@Override
+	public boolean addMoney(String memberId, int delta) {
+		boolean updated = delegate.addMoney(memberId, delta);
+		forget(List.of(memberId));
+		return updated;
+	}
+
+	@Override
+	public boolean updateWithVersion(String memberId, int money, long expectedVersion) {
+		boolean updated = delegate.updateWithVersion(memberId, money, expectedVersion);
+		forget(List.of(memberId));
+		return updated;
+	}
+
+	@Override
+	public int updateAll(Collection<Member> members) {
+		int updatedRows = delegate.updateAll(members);
+		forget(members.stream().map(Member::getMemberId).toList());
+		return updatedRows;
+	}
+
+	public long getQueryCount() {
+		return queries.sum();
+	}
+
+	public long getCoalescedCount() {
+		return coalesced.sum();
+	}
+
+	/**
+	 * 변경 이전에 시작한 조회에 새로운 호출이 합류하지 않도록 진행중인 조회를 목록에서 뺀다.
+	 * 트랜잭션 안이라면 커밋된 이후에 뺀다.
+	 */
+	private void forget(Collection<String> memberIds) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			memberIds.forEach(inFlight::remove);
+			return;
+		}
+
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				memberIds.forEach(inFlight::remove);
+			}
+		});
+	}
+
+	private static Member await(CompletableFuture<Member> leader) {
+		try {
+			return leader.join();
+		} catch (CompletionException e) {
+			// 먼저 조회한 스레드가 받은 예외를 그대로 던진다.
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			if (e.getCause() instanceof Error cause) {
+				throw cause;
+			}
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package hello.jdbc.repository;
+
+import java.nio.file.Path;
+
+import lombok.Data;
+
+/**
+ * JournalMemberRepository 설정
+ * 시간 단위는 모두 밀리초(ms)이다.
+ */
+@Data
+public class JournalConfig {
+	private Path path; // 저널 파일 경로
+
+	private int initialSize = 1 << 20; // 처음 매핑할 파일 크기(byte), 가득 차면 두 배로 늘린다.
+	private int maxSize = Integer.MAX_VALUE; // 늘릴 수 있는 최대 파일 크기(byte), MappedByteBuffer는 int로 위치를 나타내므로 2GB를 넘을 수 없다.
+	private FsyncMode fsyncMode = FsyncMode.NONE;
+
+	private long compactionPeriod = 60_000; // 이 주기로 압축이 필요한지 확인한다, 0 이하라면 자동으로 압축하지 않는다.
+	private int compactionMinDeadRecords = 1024; // 지난 레코드가 이 개수보다 많고, 살아있는 레코드보다 많을 때 압축한다.
+
+	public JournalConfig(Path path) {
+		this.path = path;
+	}
+
+	public enum FsyncMode {
+		/**
+		 * 강제로 디스크에 기록하지 않는다, 프로세스가 죽어도 OS 페이지 캐시에 남지만 OS가 죽으면 잃어버릴 수 있다.
+		 */
+		NONE,
+		/**
+		 * 쓸 때마다 디스크에 기록한 뒤 다음 쓰기를 받는다.
+		 */
+		ALWAYS,
+		/**
+		 * 쓰기는 기다리지 않고 기록하고, 디스크에 기록되기를 기다리는 쓰기들을 한 번의 fsync로 함께 기록한다. (group commit)
+		 */
+		GROUP
+	}
+}
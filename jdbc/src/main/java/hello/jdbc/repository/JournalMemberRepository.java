@@ -0,0 +1,603 @@
+package hello.jdbc.repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.util.Assert;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.JournalConfig.FsyncMode;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * DB 서버 없이 로컬 파일에 회원을 저장하는 MemberRepository
+ * 변경(save, update, delete 등)은 고정 크기 레코드로 메모리 매핑된 저널 파일 끝에 추가한다. (append-only)
+ * 회원 id -> 마지막 레코드 위치를 메모리에 인덱스로 가지고 있어서 조회는 파일을 훑지 않고 해당 레코드만 읽는다.
+ *
+ * 시작할 때 저널을 처음부터 다시 읽어서 인덱스를 만든다. (crash recovery)
+ * 쓰다가 중단되어 체크섬이 맞지 않는 레코드를 만나면 그 이후는 버린다.
+ * 지난 레코드가 쌓이면 살아있는 레코드만 새 파일에 복사한 뒤 원래 파일과 바꾼다. (compaction)
+ *
+ * 레코드 (RECORD_SIZE = 40 byte)
+ * | type(1) | id length(1) | member id(char 10개, 20) | money(4) | version(8) | crc32(4) | padding(2) |
+ *
+ * 트랜잭션을 지원하지 않는다, 메서드 하나는 원자적으로 실행되지만 롤백되지 않는다.
+ */
+@Slf4j
+public class JournalMemberRepository implements MemberRepository, AutoCloseable {
+	static final int RECORD_SIZE = 40;
+	static final int MAX_MEMBER_ID_LENGTH = 10; // member 테이블의 member_id varchar(10)과 같다.
+
+	private static final byte PUT = 1;
+	private static final byte DELETE = 2;
+
+	private static final int TYPE = 0;
+	private static final int ID_LENGTH = 1;
+	private static final int ID = 2;
+	private static final int MONEY = ID + MAX_MEMBER_ID_LENGTH * Character.BYTES;
+	private static final int VERSION = MONEY + Integer.BYTES;
+	private static final int CRC = VERSION + Long.BYTES;
+
+	private final JournalConfig config;
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Object syncLock = new Object();
+	private final ScheduledExecutorService compactor;
+
+	// 아래 필드는 lock으로 보호한다.
+	private final TreeMap<String, Integer> index = new TreeMap<>(); // 회원 id -> 마지막 PUT 레코드 위치
+	private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+	private final CRC32 crc = new CRC32();
+	private FileChannel channel;
+	private volatile long deadRecords; // 더 이상 최신이 아닌 레코드 수 (압축하면 사라진다), 압축 주기마다 lock 없이 먼저 확인한다.
+	private long compactions;
+
+	private volatile MappedByteBuffer buffer;
+	private volatile int position; // 다음 레코드를 쓸 위치
+	private int durablePosition; // 이 위치까지 디스크에 기록되었다, syncLock으로 보호한다.
+	private long syncs;
+
+	public JournalMemberRepository(JournalConfig config) {
+		this.config = config;
+		try {
+			// 압축 도중 중단되었다면 원래 파일은 그대로이므로 임시 파일만 지운다.
+			Files.deleteIfExists(compactionPath());
+			channel = FileChannel.open(config.getPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			long size = Math.max(channel.size(), config.getInitialSize());
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size - size % RECORD_SIZE);
+			recover();
+		} catch (IOException e) {
+			throw new UncheckedIOException("failed to open journal, path=" + config.getPath(), e);
+		}
+
+		if (config.getCompactionPeriod() > 0) {
+			compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "JournalMemberRepository-compactor");
+				thread.setDaemon(true);
+				return thread;
+			});
+			compactor.scheduleWithFixedDelay(this::compactIfNeeded,
+				config.getCompactionPeriod(), config.getCompactionPeriod(), TimeUnit.MILLISECONDS);
+		} else {
+			compactor = null;
+		}
+	}
+
+	/**
+	 * 저널을 처음부터 다시 읽어서 인덱스를 만든다.
+	 */
+	private void recover() {
+		int offset = 0;
+		int records = 0;
+		while (offset + RECORD_SIZE <= buffer.capacity()) {
+			byte type = buffer.get(offset + TYPE);
+			if (type == 0) {
+				break;
+			}
+			if (!isValid(offset)) {
+				log.warn("discard torn journal record, path={}, offset={}", config.getPath(), offset);
+				// 버린 레코드 이후에 남아있는 바이트가 다음 복구를 방해하지 않도록 지운다.
+				for (int i = offset; i < buffer.capacity(); i++) {
+					buffer.put(i, (byte)0);
+				}
+				break;
+			}
+
+			String memberId = readMemberId(offset);
+			Integer previous = type == PUT ? index.put(memberId, offset) : index.remove(memberId);
+			if (previous != null) {
+				deadRecords++;
+			}
+			if (type == DELETE) {
+				deadRecords++; // DELETE 레코드 자신도 압축하면 사라진다.
+			}
+			records++;
+			offset += RECORD_SIZE;
+		}
+
+		position = offset;
+		durablePosition = offset;
+		log.info("journal recovered, path={}, records={}, members={}", config.getPath(), records, index.size());
+	}
+
+	@Override
+	public Member save(Member member) {
+		int end;
+		lock.writeLock().lock();
+		try {
+			if (index.containsKey(member.getMemberId())) {
+				throw new DuplicateKeyException("save, duplicate member id=" + member.getMemberId());
+			}
+			end = put(member.getMemberId(), member.getMoney(), 0);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		sync(end);
+		return member;
+	}
+
+	@Override
+	public int saveAll(Collection<Member> members, int batchSize) {
+		Assert.isTrue(batchSize > 0, "batchSize must be greater than 0");
+
+		// JDBC 배치와 같이 실패한 회원이 있어도 청크의 나머지 회원은 저장한다.
+		int savedRows = 0;
+		int chunkIndex = 0;
+		for (List<Member> chunk : BatchSupport.partition(members, batchSize)) {
+			List<String> failedIds = new ArrayList<>();
+			int end = 0;
+			lock.writeLock().lock();
+			try {
+				for (Member member : chunk) {
+					if (index.containsKey(member.getMemberId())) {
+						failedIds.add(member.getMemberId());
+						continue;
+					}
+					end = put(member.getMemberId(), member.getMoney(), 0);
+					savedRows++;
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+			sync(end);
+
+			if (!failedIds.isEmpty()) {
+				throw new DuplicateKeyException(BatchSupport.describeFailedChunk("saveAll", chunkIndex, failedIds));
+			}
+			chunkIndex++;
+		}
+		return savedRows;
+	}
+
+	@Override
+	public Member findById(String memberId) {
+		lock.readLock().lock();
+		try {
+			Integer offset = index.get(memberId);
+			if (offset == null) {
+				throw new EmptyResultDataAccessException("member not found member id=" + memberId, 1);
+			}
+			return readMember(offset);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public Map<String, Member> findAllByIds(Collection<String> memberIds) {
+		Map<String, Member> members = new LinkedHashMap<>();
+		lock.readLock().lock();
+		try {
+			for (String memberId : memberIds) {
+				Integer offset = index.get(memberId);
+				if (offset != null) {
+					members.put(memberId, readMember(offset));
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		return members;
+	}
+
+	/**
+	 * 락을 걸지 않는다, member_id 순서로 반환하는 것만 같다.
+	 */
+	@Override
+	public Map<String, Member> findAllByIdsForUpdate(Collection<String> memberIds) {
+		return findAllByIds(new TreeSet<>(memberIds));
+	}
+
+	@Override
+	public MemberPage findPage(String afterMemberId, int limit) {
+		Assert.isTrue(limit > 0, "limit must be greater than 0");
+
+		List<Member> rows = new ArrayList<>(limit + 1);
+		lock.readLock().lock();
+		try {
+			// 인덱스가 member_id 순서로 정렬되어 있으므로 시작 위치부터 limit + 1 개만 읽는다.
+			Map<String, Integer> tail = afterMemberId == null ? index : index.tailMap(afterMemberId, false);
+			for (Integer offset : tail.values()) {
+				rows.add(readMember(offset));
+				if (rows.size() > limit) {
+					break;
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return MemberPage.of(rows, limit);
+	}
+
+	@Override
+	public void update(String memberId, int money) {
+		int end;
+		lock.writeLock().lock();
+		try {
+			Integer offset = index.get(memberId);
+			if (offset == null) {
+				return;
+			}
+			end = put(memberId, money, buffer.getLong(offset + VERSION) + 1);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		sync(end);
+	}
+
+	@Override
+	public boolean addMoney(String memberId, int delta) {
+		int end;
+		lock.writeLock().lock();
+		try {
+			Integer offset = index.get(memberId);
+			if (offset == null) {
+				return false;
+			}
+			long money = (long)buffer.getInt(offset + MONEY) + delta;
+			if (money < 0) {
+				return false;
+			}
+			end = put(memberId, (int)money, buffer.getLong(offset + VERSION) + 1);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		sync(end);
+		return true;
+	}
+
+	@Override
+	public boolean updateWithVersion(String memberId, int money, long expectedVersion) {
+		int end;
+		lock.writeLock().lock();
+		try {
+			Integer offset = index.get(memberId);
+			if (offset == null || buffer.getLong(offset + VERSION) != expectedVersion) {
+				return false;
+			}
+			end = put(memberId, money, expectedVersion + 1);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		sync(end);
+		return true;
+	}
+
+	@Override
+	public int updateAll(Collection<Member> members) {
+		int updatedRows = 0;
+		int end = 0;
+		lock.writeLock().lock();
+		try {
+			for (Member member : members) {
+				Integer offset = index.get(member.getMemberId());
+				if (offset != null) {
+					end = put(member.getMemberId(), member.getMoney(), buffer.getLong(offset + VERSION) + 1);
+					updatedRows++;
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+		sync(end);
+		return updatedRows;
+	}
+
+	@Override
+	public void delete(String memberId) {
+		int end;
+		lock.writeLock().lock();
+		try {
+			if (!index.containsKey(memberId)) {
+				return;
+			}
+			end = append(DELETE, memberId, 0, 0);
+			index.remove(memberId);
+			deadRecords += 2; // 지워진 회원의 마지막 PUT 레코드와 DELETE 레코드
+		} finally {
+			lock.writeLock().unlock();
+		}
+		sync(end);
+	}
+
+	/**
+	 * 살아있는 레코드만 새 파일에 복사한 뒤 원래 파일과 바꾼다. 압축하는 동안 읽기와 쓰기는 기다린다.
+	 */
+	public void compact() {
+		lock.writeLock().lock();
+		try {
+			doCompact();
+		} catch (IOException e) {
+			throw new UncheckedIOException("failed to compact journal, path=" + config.getPath(), e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void compactIfNeeded() {
+		try {
+			// 압축할 필요가 없다면 쓰기를 막지 않도록 lock 없이 먼저 확인한다. (index.size()는 근사값이어도 된다)
+			if (!isCompactionDue()) {
+				return;
+			}
+			lock.writeLock().lock();
+			try {
+				if (isCompactionDue()) {
+					doCompact();
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+		} catch (Exception e) {
+			// 예외가 발생하면 주기 실행이 멈추므로 로그만 남긴다.
+			log.warn("journal compaction failed, path={}", config.getPath(), e);
+		}
+	}
+
+	private boolean isCompactionDue() {
+		long dead = deadRecords;
+		return dead >= config.getCompactionMinDeadRecords() && dead > index.size();
+	}
+
+	private void doCompact() throws IOException {
+		Path compactionPath = compactionPath();
+		int liveSize = index.size() * RECORD_SIZE;
+		int capacity = (int)Math.max(config.getInitialSize(), Math.min(liveSize * 2L, maxCapacity()));
+		capacity -= capacity % RECORD_SIZE;
+
+		MappedByteBuffer compacted;
+		TreeMap<String, Integer> compactedIndex = new TreeMap<>();
+		try (FileChannel compactionChannel = FileChannel.open(compactionPath, StandardOpenOption.CREATE,
+			StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			compacted = compactionChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+			int offset = 0;
+			for (Map.Entry<String, Integer> entry : index.entrySet()) {
+				compacted.put(offset, buffer, entry.getValue(), RECORD_SIZE);
+				compactedIndex.put(entry.getKey(), offset);
+				offset += RECORD_SIZE;
+			}
+			compacted.force();
+		}
+
+		// 원래 파일과 한 번에 바꾼다, 바꾸기 전에 중단되면 원래 파일이 그대로 남는다.
+		Files.move(compactionPath, config.getPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		channel.close();
+		channel = FileChannel.open(config.getPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+		log.info("journal compacted, path={}, members={}, discarded records={}",
+			config.getPath(), index.size(), deadRecords);
+		index.clear();
+		index.putAll(compactedIndex);
+		buffer = compacted;
+		position = liveSize;
+		deadRecords = 0;
+		compactions++;
+		synchronized (syncLock) {
+			durablePosition = liveSize;
+		}
+	}
+
+	/**
+	 * 회원의 새 상태를 PUT 레코드로 추가하고 인덱스를 바꾼다. lock을 가진 상태에서 호출해야 한다.
+	 */
+	private int put(String memberId, int money, long version) {
+		int end = append(PUT, memberId, money, version);
+		if (index.put(memberId, end - RECORD_SIZE) != null) {
+			deadRecords++;
+		}
+		return end;
+	}
+
+	/**
+	 * @return 추가한 레코드의 끝 위치
+	 */
+	private int append(byte type, String memberId, int money, long version) {
+		if (memberId.length() > MAX_MEMBER_ID_LENGTH) {
+			throw new DataIntegrityViolationException(
+				"member id is too long, max=" + MAX_MEMBER_ID_LENGTH + ", memberId=" + memberId);
+		}
+		ensureCapacity();
+
+		record.clear();
+		record.put(type);
+		record.put((byte)memberId.length());
+		for (int i = 0; i < MAX_MEMBER_ID_LENGTH; i++) {
+			record.putChar(i < memberId.length() ? memberId.charAt(i) : 0);
+		}
+		record.putInt(money);
+		record.putLong(version);
+		crc.reset();
+		crc.update(record.array(), 0, CRC);
+		record.putInt((int)crc.getValue());
+
+		int offset = position;
+		buffer.put(offset, record.array());
+		position = offset + RECORD_SIZE;
+
+		if (config.getFsyncMode() == FsyncMode.ALWAYS) {
+			// 디스크에 기록한 뒤 lock을 놓으므로 다음 쓰기는 이 레코드가 기록된 이후에 시작된다.
+			force();
+		}
+		return position;
+	}
+
+	private void ensureCapacity() {
+		if (position + RECORD_SIZE <= buffer.capacity()) {
+			return;
+		}
+		try {
+			if (deadRecords > index.size()) {
+				doCompact();
+			}
+			if (position + RECORD_SIZE > buffer.capacity()) {
+				long capacity = Math.min((long)buffer.capacity() * 2, maxCapacity());
+				if (position + RECORD_SIZE > capacity) {
+					throw new DataAccessResourceFailureException(
+						"journal is full, path=" + config.getPath() + ", maxSize=" + config.getMaxSize());
+				}
+				// 매핑 크기를 늘리면 파일도 함께 늘어난다.
+				buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("failed to grow journal, path=" + config.getPath(), e);
+		}
+	}
+
+	/**
+	 * GROUP 모드에서는 end 위치까지 디스크에 기록되기를 기다린다.
+	 * 먼저 들어온 스레드가 그때까지 쓰인 모든 레코드를 한 번에 기록하고, 기다리던 스레드는 이미 기록되었다면 바로 반환한다.
+	 */
+	private void sync(int end) {
+		if (config.getFsyncMode() != FsyncMode.GROUP || end == 0) {
+			return;
+		}
+		synchronized (syncLock) {
+			if (durablePosition >= end) {
+				return;
+			}
+			force();
+		}
+	}
+
+	private void force() {
+		synchronized (syncLock) {
+			int target = position;
+			buffer.force();
+			durablePosition = target;
+			syncs++;
+		}
+	}
+
+	private boolean isValid(int offset) {
+		byte[] bytes = new byte[RECORD_SIZE];
+		buffer.get(offset, bytes);
+		CRC32 checksum = new CRC32();
+		checksum.update(bytes, 0, CRC);
+		return (int)checksum.getValue() == buffer.getInt(offset + CRC)
+			&& bytes[ID_LENGTH] >= 0 && bytes[ID_LENGTH] <= MAX_MEMBER_ID_LENGTH;
+	}
+
+	private String readMemberId(int offset) {
+		int length = buffer.get(offset + ID_LENGTH);
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = buffer.getChar(offset + ID + i * Character.BYTES);
+		}
+		return new String(chars);
+	}
+
+	private Member readMember(int offset) {
+		Member member = new Member();
+		member.setMemberId(readMemberId(offset));
+		member.setMoney(buffer.getInt(offset + MONEY));
+		member.setVersion(buffer.getLong(offset + VERSION));
+		return member;
+	}
+
+	/**
+	 * maxSize 이하인 RECORD_SIZE의 배수
+	 */
+	private int maxCapacity() {
+		return config.getMaxSize() - config.getMaxSize() % RECORD_SIZE;
+	}
+
+	private Path compactionPath() {
+		return config.getPath().resolveSibling(config.getPath().getFileName() + ".compact");
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return index.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public long getDeadRecordCount() {
+		lock.readLock().lock();
+		try {
+			return deadRecords;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public long getCompactionCount() {
+		lock.readLock().lock();
+		try {
+			return compactions;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * fsync 실행 횟수, GROUP 모드라면 쓰기 횟수보다 적다.
+	 */
+	public long getSyncCount() {
+		synchronized (syncLock) {
+			return syncs;
+		}
+	}
+
+	@Override
+	public void close() {
+		if (compactor != null) {
+			compactor.shutdownNow();
+		}
+		lock.writeLock().lock();
+		try {
+			buffer.force();
+			channel.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException("failed to close journal, path=" + config.getPath(), e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package hello.jdbc.repository;
+
+import java.util.List;
+
+import hello.jdbc.domain.Member;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+/**
+ * keyset 페이지네이션 결과
+ * nextAfterMemberId를 다음 findPage() 호출에 넘기면 이어지는 페이지를 조회한다.
+ */
+@Getter
+@ToString
+@RequiredArgsConstructor
+public class MemberPage {
+	private final List<Member> members;
+	private final String nextAfterMemberId; // 마지막 페이지라면 null
+
+	public boolean hasNext() {
+		return nextAfterMemberId != null;
+	}
+
+	/**
+	 * limit + 1 개를 조회한 결과로 페이지를 만든다, limit 보다 많이 조회되었다면 다음 페이지가 있다.
+	 */
+	static MemberPage of(List<Member> rows, int limit) {
+		if (rows.size() <= limit) {
+			return new MemberPage(rows, null);
+		}
+
+		List<Member> members = rows.subList(0, limit);
+		return new MemberPage(List.copyOf(members), members.get(limit - 1).getMemberId());
+	}
+}
@@ -1,10 +1,78 @@
 package hello.jdbc.repository;
 
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
 import hello.jdbc.domain.Member;
 
 public interface MemberRepository {
+	int DEFAULT_BATCH_SIZE = 1000;
+
 	Member save(Member member);
 	Member findById(String memberId);
 	void update(String memberId, int money);
 	void delete(String memberId);
+
+	/**
+	 * JDBC 배치로 여러 회원을 저장한다, batchSize 단위로 나누어 실행한다.
+	 * 키 중복이 발생하면 실패한 청크와 회원 id를 예외 메시지에 담아서 던진다.
+	 * @return 저장된 row 수
+	 */
+	int saveAll(Collection<Member> members, int batchSize);
+
+	default int saveAll(Collection<Member> members) {
+		return saveAll(members, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * 여러 회원을 IN 절로 나누어 조회한다.
+	 * 없는 회원은 NoSuchElementException을 던지지 않고 결과에서 빠진다. 결과에 없는 id가 곧 없는 회원이며, missingIds()로 구한다.
+	 * @return 회원 id -> 회원
+	 */
+	Map<String, Member> findAllByIds(Collection<String> memberIds);
+
+	/**
+	 * findAllByIds(), findAllByIdsForUpdate()로 요청했지만 결과에 없는 id (요청한 순서, 중복 제거)
+	 */
+	static Set<String> missingIds(Collection<String> memberIds, Map<String, Member> found) {
+		Set<String> missingIds = new LinkedHashSet<>(memberIds);
+		missingIds.removeAll(found.keySet());
+		return missingIds;
+	}
+
+	/**
+	 * findAllByIds()와 같지만 조회한 row에 member_id 순서로 배타 락을 건다. (select ... for update)
+	 * 트랜잭션 안에서 호출해야 하며, 락은 트랜잭션이 끝날 때 해제된다.
+	 */
+	Map<String, Member> findAllByIdsForUpdate(Collection<String> memberIds);
+
+	/**
+	 * member_id 순서로 afterMemberId 다음 회원부터 limit 개를 조회한다. (keyset 페이지네이션)
+	 * OFFSET을 사용하지 않고 PK 인덱스에서 바로 시작 위치를 찾으므로 페이지가 깊어져도 조회 비용이 일정하다.
+	 * @param afterMemberId 이전 페이지의 nextAfterMemberId, 첫 페이지는 null
+	 */
+	MemberPage findPage(String afterMemberId, int limit);
+
+	/**
+	 * 조회 없이 한 번의 쿼리로 잔액을 delta 만큼 변경한다. (update member set money = money + ?)
+	 * DB가 row 단위로 원자적으로 갱신하므로 동시에 같은 회원을 변경하더라도 변경 내용을 잃어버리지 않는다.
+	 * 변경 후 잔액이 음수가 된다면 변경하지 않는다.
+	 * @return 변경되었다면 true, 회원이 없거나 잔액이 부족하다면 false
+	 */
+	boolean addMoney(String memberId, int delta);
+
+	/**
+	 * 조회한 시점의 version이 그대로일 때만 잔액을 변경하고 version을 1 증가시킨다. (낙관적 락)
+	 * @return 다른 트랜잭션이 먼저 변경해서 version이 달라졌거나 회원이 없다면 false
+	 */
+	boolean updateWithVersion(String memberId, int money, long expectedVersion);
+
+	/**
+	 * 여러 회원의 잔액(member.getMoney())을 JDBC 배치로 변경하고 version을 1 증가시킨다.
+	 * version을 비교하지 않으므로 update()를 여러 번 호출한 것과 같다.
+	 * @return 변경된 row 수
+	 */
+	int updateAll(Collection<Member> members);
 }
@@ -85,7 +85,7 @@ public class MemberRepositoryV0 {
 	}
 
 	public void update(String memberId, int money) throws SQLException {
-		String sql = "update member set money = ? where member_id = ?";
+		String sql = "update member set money = ?, version = version + 1 where member_id = ?";
 
 		Connection conn = null;
 		PreparedStatement pstmt = null;
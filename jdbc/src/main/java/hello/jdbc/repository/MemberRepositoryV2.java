@@ -130,7 +130,7 @@ public class MemberRepositoryV2 {
 	}
 
 	public void update(String memberId, int money) throws SQLException {
-		String sql = "update member set money = ? where member_id = ?";
+		String sql = "update member set money = ?, version = version + 1 where member_id = ?";
 
 		Connection conn = null;
 		PreparedStatement pstmt = null;
@@ -155,7 +155,7 @@ public class MemberRepositoryV2 {
 	}
 
 	public void update(Connection conn, String memberId, int money) throws SQLException {
-		String sql = "update member set money = ? where member_id = ?";
+		String sql = "update member set money = ?, version = version + 1 where member_id = ?";
 
 		PreparedStatement pstmt = null;
 
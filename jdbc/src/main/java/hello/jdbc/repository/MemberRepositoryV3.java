@@ -12,6 +12,7 @@ import javax.sql.DataSource;
 import org.springframework.jdbc.datasource.DataSourceUtils;
 import org.springframework.jdbc.support.JdbcUtils;
 
+import hello.jdbc.connection.ReadOnlyRouting;
 import hello.jdbc.domain.Member;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -51,6 +52,11 @@ public class MemberRepositoryV3 {
 	}
 
 	public Member findById(String memberId) throws SQLException {
+		// 트랜잭션 밖의 단건 조회는 복제본으로 보낼 수 있다. (ReadWriteRoutingDataSource)
+		return ReadOnlyRouting.readOnly(() -> selectById(memberId));
+	}
+
+	private Member selectById(String memberId) throws SQLException {
 		String sql = "select * from member where member_id = ?";
 
 		Connection conn = null; // finally 구문에서 conn 참조 변수에 접근해야하기 때문에, null로 초기화하여 선언한다.
@@ -86,7 +92,7 @@ public class MemberRepositoryV3 {
 	}
 
 	public void update(String memberId, int money) throws SQLException {
-		String sql = "update member set money = ? where member_id = ?";
+		String sql = "update member set money = ?, version = version + 1 where member_id = ?";
 
 		Connection conn = null;
 		PreparedStatement pstmt = null;
@@ -108,6 +114,35 @@ public class MemberRepositoryV3 {
 		}
 	}
 
+	/**
+	 * 조회 없이 한 번의 쿼리로 잔액을 delta 만큼 변경한다, 변경 후 잔액이 음수가 된다면 변경하지 않는다.
+	 * @return 변경되었다면 true, 회원이 없거나 잔액이 부족하다면 false
+	 */
+	public boolean addMoney(String memberId, int delta) throws SQLException {
+		String sql = "update member set money = money + ?, version = version + 1 where member_id = ? and money + ? >= 0";
+
+		Connection conn = null;
+		PreparedStatement pstmt = null;
+
+		try {
+			conn = getConnection();
+			pstmt = conn.prepareStatement(sql);
+			pstmt.setInt(1, delta);
+			pstmt.setString(2, memberId);
+			pstmt.setInt(3, delta);
+
+			// 회원이 없거나 잔액이 부족하면 영향받은 row가 없다.
+			int resultSize = pstmt.executeUpdate();
+			log.info("reulstSize={}", resultSize);
+			return resultSize == 1;
+		} catch (SQLException e) {
+			log.error("db error", e);
+			throw e;
+		} finally {
+			close(conn, pstmt, null);
+		}
+	}
+
 	public void delete(String memberId) throws SQLException {
 		String sql = "delete from member where member_id = ?";
 
@@ -5,15 +5,23 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.TreeSet;
 
 import javax.sql.DataSource;
 
 import org.springframework.jdbc.datasource.DataSourceUtils;
 import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.util.Assert;
 
 import hello.jdbc.domain.Member;
 import hello.jdbc.repository.exception.MyDbException;
+import hello.jdbc.repository.exception.MyDuplicateKeyException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -50,6 +58,52 @@ public class MemberRepositoryV4_1 implements MemberRepository {
 		}
 	}
 
+	@Override
+	public int saveAll(Collection<Member> members, int batchSize) {
+		Assert.isTrue(batchSize > 0, "batchSize must be greater than 0");
+		if (members.isEmpty()) {
+			return 0;
+		}
+
+		String sql = "insert into member(member_id, money) values (?, ?)";
+
+		Connection conn = null;
+		PreparedStatement pstmt = null;
+		int chunkIndex = 0;
+		List<Member> chunk = null;
+
+		try {
+			// 모든 청크에 커넥션과 PreparedStatement를 하나만 사용한다.
+			conn = getConnection();
+			pstmt = conn.prepareStatement(sql);
+
+			int savedRows = 0;
+			for (List<Member> memberChunk : BatchSupport.partition(members, batchSize)) {
+				chunk = memberChunk;
+				for (Member member : chunk) {
+					pstmt.setString(1, member.getMemberId());
+					pstmt.setInt(2, member.getMoney());
+					pstmt.addBatch();
+				}
+
+				// 청크 단위로 한 번에 DB에 전송한다.
+				savedRows += BatchSupport.affectedRows(pstmt.executeBatch());
+				chunkIndex++;
+			}
+			return savedRows;
+		} catch (SQLException e) {
+			String message = BatchSupport.describeFailedChunk("saveAll", chunkIndex, chunk, e);
+
+			// h2 db의 duplicate key exception 발생시
+			if (e.getErrorCode() == 23505) {
+				throw new MyDuplicateKeyException(message, e);
+			}
+			throw new MyDbException(message, e);
+		} finally {
+			close(conn, pstmt, null);
+		}
+	}
+
 	@Override
 	public Member findById(String memberId) {
 		String sql = "select * from member where member_id = ?";
@@ -72,6 +126,7 @@ public class MemberRepositoryV4_1 implements MemberRepository {
 				Member member = new Member();
 				member.setMemberId(rs.getString("member_id"));
 				member.setMoney(rs.getInt("money"));
+				member.setVersion(rs.getLong("version"));
 
 				return member;
 			} else {
@@ -85,9 +140,104 @@ public class MemberRepositoryV4_1 implements MemberRepository {
 		}
 	}
 
+	@Override
+	public Map<String, Member> findAllByIds(Collection<String> memberIds) {
+		return findAllByIds(memberIds, "", "findAllByIds");
+	}
+
+	@Override
+	public Map<String, Member> findAllByIdsForUpdate(Collection<String> memberIds) {
+		// member_id 순서로 정렬해서 조회하므로 어떤 트랜잭션이든 항상 같은 순서로 row 락을 획득한다.
+		return findAllByIds(new TreeSet<>(memberIds), " order by member_id for update", "findAllByIdsForUpdate");
+	}
+
+	private Map<String, Member> findAllByIds(Collection<String> memberIds, String sqlSuffix, String task) {
+		Map<String, Member> members = new LinkedHashMap<>();
+		if (memberIds.isEmpty()) {
+			return members;
+		}
+
+		String sql = null;
+		Connection conn = null;
+		PreparedStatement pstmt = null;
+		ResultSet rs = null;
+
+		try {
+			// 모든 청크를 하나의 커넥션으로 조회한다.
+			conn = getConnection();
+			for (List<String> chunk : BatchSupport.inListChunks(memberIds)) {
+				sql = BatchSupport.inListSql("select * from member where member_id in", chunk.size()) + sqlSuffix;
+				pstmt = conn.prepareStatement(sql);
+				for (int i = 0; i < chunk.size(); i++) {
+					pstmt.setString(i + 1, chunk.get(i));
+				}
+
+				rs = pstmt.executeQuery();
+				while (rs.next()) {
+					Member member = new Member();
+					member.setMemberId(rs.getString("member_id"));
+					member.setMoney(rs.getInt("money"));
+					member.setVersion(rs.getLong("version"));
+					members.put(member.getMemberId(), member);
+				}
+
+				JdbcUtils.closeResultSet(rs);
+				JdbcUtils.closeStatement(pstmt);
+				rs = null;
+				pstmt = null;
+			}
+
+			return members;
+		} catch (SQLException e) {
+			throw new MyDbException(task, e);
+		} finally {
+			close(conn, pstmt, rs);
+		}
+	}
+
+	@Override
+	public MemberPage findPage(String afterMemberId, int limit) {
+		Assert.isTrue(limit > 0, "limit must be greater than 0");
+
+		// 다음 페이지가 있는지 확인하기 위해 limit + 1 개를 조회한다.
+		String sql = afterMemberId == null
+			? "select * from member order by member_id limit ?"
+			: "select * from member where member_id > ? order by member_id limit ?";
+
+		Connection conn = null;
+		PreparedStatement pstmt = null;
+		ResultSet rs = null;
+
+		try {
+			conn = getConnection();
+			pstmt = conn.prepareStatement(sql);
+
+			int parameterIndex = 1;
+			if (afterMemberId != null) {
+				pstmt.setString(parameterIndex++, afterMemberId);
+			}
+			pstmt.setInt(parameterIndex, limit + 1);
+
+			rs = pstmt.executeQuery();
+			List<Member> rows = new ArrayList<>(limit + 1);
+			while (rs.next()) {
+				Member member = new Member();
+				member.setMemberId(rs.getString("member_id"));
+				member.setMoney(rs.getInt("money"));
+				member.setVersion(rs.getLong("version"));
+				rows.add(member);
+			}
+			return MemberPage.of(rows, limit);
+		} catch (SQLException e) {
+			throw new MyDbException(e);
+		} finally {
+			close(conn, pstmt, rs);
+		}
+	}
+
 	@Override
 	public void update(String memberId, int money) {
-		String sql = "update member set money = ? where member_id = ?";
+		String sql = "update member set money = ?, version = version + 1 where member_id = ?";
 
 		Connection conn = null;
 		PreparedStatement pstmt = null;
@@ -108,6 +258,88 @@ public class MemberRepositoryV4_1 implements MemberRepository {
 		}
 	}
 
+	@Override
+	public boolean addMoney(String memberId, int delta) {
+		String sql = "update member set money = money + ?, version = version + 1 where member_id = ? and money + ? >= 0";
+
+		Connection conn = null;
+		PreparedStatement pstmt = null;
+
+		try {
+			conn = getConnection();
+			pstmt = conn.prepareStatement(sql);
+			pstmt.setInt(1, delta);
+			pstmt.setString(2, memberId);
+			pstmt.setInt(3, delta);
+
+			// 회원이 없거나 잔액이 부족하면 영향받은 row가 없다.
+			int resultSize = pstmt.executeUpdate();
+			log.info("reulstSize={}", resultSize);
+			return resultSize == 1;
+		} catch (SQLException e) {
+			throw new MyDbException(e);
+		} finally {
+			close(conn, pstmt, null);
+		}
+	}
+
+	@Override
+	public boolean updateWithVersion(String memberId, int money, long expectedVersion) {
+		String sql = "update member set money = ?, version = version + 1 where member_id = ? and version = ?";
+
+		Connection conn = null;
+		PreparedStatement pstmt = null;
+
+		try {
+			conn = getConnection();
+			pstmt = conn.prepareStatement(sql);
+			pstmt.setInt(1, money);
+			pstmt.setString(2, memberId);
+			pstmt.setLong(3, expectedVersion);
+
+			// 다른 트랜잭션이 먼저 변경했다면 version이 달라서 영향받은 row가 없다.
+			int resultSize = pstmt.executeUpdate();
+			log.info("reulstSize={}", resultSize);
+			return resultSize == 1;
+		} catch (SQLException e) {
+			throw new MyDbException(e);
+		} finally {
+			close(conn, pstmt, null);
+		}
+	}
+
+	@Override
+	public int updateAll(Collection<Member> members) {
+		if (members.isEmpty()) {
+			return 0;
+		}
+
+		String sql = "update member set money = ?, version = version + 1 where member_id = ?";
+
+		Connection conn = null;
+		PreparedStatement pstmt = null;
+
+		try {
+			conn = getConnection();
+			pstmt = conn.prepareStatement(sql);
+
+			int updatedRows = 0;
+			for (List<Member> chunk : BatchSupport.partition(members, DEFAULT_BATCH_SIZE)) {
+				for (Member member : chunk) {
+					pstmt.setInt(1, member.getMoney());
+					pstmt.setString(2, member.getMemberId());
+					pstmt.addBatch();
+				}
+				updatedRows += BatchSupport.affectedRows(pstmt.executeBatch());
+			}
+			return updatedRows;
+		} catch (SQLException e) {
+			throw new MyDbException(e);
+		} finally {
+			close(conn, pstmt, null);
+		}
+	}
+
 	@Override
 	public void delete(String memberId) {
 		String sql = "delete from member where member_id = ?";
@@ -1,9 +1,26 @@
 package hello.jdbc.repository;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
 import javax.sql.DataSource;
 
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.util.Assert;
+
+import hello.jdbc.connection.ReadOnlyRouting;
 import hello.jdbc.domain.Member;
 import lombok.extern.slf4j.Slf4j;
 
@@ -27,28 +44,140 @@ public class MemberRepositoryV5 implements MemberRepository {
 		return member;
 	}
 
+	@Override
+	public int saveAll(Collection<Member> members, int batchSize) {
+		Assert.isTrue(batchSize > 0, "batchSize must be greater than 0");
+		String sql = "insert into member(member_id, money) values (?, ?)";
+
+		int savedRows = 0;
+		int chunkIndex = 0;
+		for (List<Member> chunk : BatchSupport.partition(members, batchSize)) {
+			List<Object[]> batchArgs = chunk.stream()
+				.map(member -> new Object[] {member.getMemberId(), member.getMoney()})
+				.toList();
+
+			try {
+				// 청크 단위로 addBatch(), executeBatch()를 호출한다.
+				savedRows += BatchSupport.affectedRows(jdbcTemplate.batchUpdate(sql, batchArgs));
+			} catch (DuplicateKeyException e) {
+				// 어떤 청크의 어떤 회원에서 키 중복이 발생했는지 메시지에 남긴다.
+				throw new DuplicateKeyException(BatchSupport.describeFailedChunk("saveAll", chunkIndex, chunk, e), e);
+			}
+			chunkIndex++;
+		}
+		return savedRows;
+	}
+
 	@Override
 	public Member findById(String memberId) {
 		String sql = "select * from member where member_id = ?";
-		return jdbcTemplate.queryForObject(sql, memberRowMapper(), memberId);
+		// 트랜잭션 밖의 단건 조회는 복제본으로 보낼 수 있다. (ReadWriteRoutingDataSource)
+		return ReadOnlyRouting.readOnly(() -> jdbcTemplate.queryForObject(sql, memberRowMapper(), memberId));
 	}
 
 	private RowMapper<Member> memberRowMapper() {
-		return (rs, rowNum) -> {
-			Member member = new Member();
-			member.setMemberId(rs.getString("member_id"));
-			member.setMoney(rs.getInt("money"));
+		return (rs, rowNum) -> mapMember(rs);
+	}
+
+	private Member mapMember(ResultSet rs) throws SQLException {
+		Member member = new Member();
+		member.setMemberId(rs.getString("member_id"));
+		member.setMoney(rs.getInt("money"));
+		member.setVersion(rs.getLong("version"));
 
-			return member;
+		return member;
+	}
+
+	/**
+	 * member 테이블 전체를 Stream으로 조회한다.
+	 * 결과를 List로 모으지 않고 fetchSize 만큼씩 가져오므로 테이블 크기와 상관없이 일정한 메모리를 사용한다.
+	 * 커넥션은 Stream을 close() 할 때 반납되므로 반드시 try-with-resources로 사용해야 한다.
+	 */
+	public Stream<Member> streamAll(int fetchSize) {
+		return jdbcTemplate.queryForStream(scanAllStatement(fetchSize), memberRowMapper());
+	}
+
+	/**
+	 * streamAll()의 콜백 버전, 모든 row를 처리하면 커넥션을 바로 반납한다.
+	 */
+	public void forEachMember(int fetchSize, Consumer<Member> action) {
+		jdbcTemplate.query(scanAllStatement(fetchSize), (RowCallbackHandler) rs -> action.accept(mapMember(rs)));
+	}
+
+	private PreparedStatementCreator scanAllStatement(int fetchSize) {
+		String sql = "select * from member";
+		return con -> {
+			// 앞으로만 이동하는 읽기 전용 커서를 사용한다.
+			PreparedStatement pstmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			pstmt.setFetchSize(fetchSize);
+			return pstmt;
 		};
 	}
 
+	@Override
+	public Map<String, Member> findAllByIds(Collection<String> memberIds) {
+		return findAllByIds(memberIds, "");
+	}
+
+	@Override
+	public Map<String, Member> findAllByIdsForUpdate(Collection<String> memberIds) {
+		// member_id 순서로 정렬해서 조회하므로 어떤 트랜잭션이든 항상 같은 순서로 row 락을 획득한다.
+		return findAllByIds(new TreeSet<>(memberIds), " order by member_id for update");
+	}
+
+	private Map<String, Member> findAllByIds(Collection<String> memberIds, String sqlSuffix) {
+		Map<String, Member> members = new LinkedHashMap<>();
+		for (List<String> chunk : BatchSupport.inListChunks(memberIds)) {
+			String sql = BatchSupport.inListSql("select * from member where member_id in", chunk.size()) + sqlSuffix;
+			for (Member member : jdbcTemplate.query(sql, memberRowMapper(), chunk.toArray())) {
+				members.put(member.getMemberId(), member);
+			}
+		}
+
+		return members;
+	}
+
+	@Override
+	public MemberPage findPage(String afterMemberId, int limit) {
+		Assert.isTrue(limit > 0, "limit must be greater than 0");
+
+		// 다음 페이지가 있는지 확인하기 위해 limit + 1 개를 조회한다.
+		List<Member> rows = afterMemberId == null
+			? jdbcTemplate.query("select * from member order by member_id limit ?", memberRowMapper(), limit + 1)
+			: jdbcTemplate.query("select * from member where member_id > ? order by member_id limit ?",
+				memberRowMapper(), afterMemberId, limit + 1);
+		return MemberPage.of(rows, limit);
+	}
+
 	@Override
 	public void update(String memberId, int money) {
-		String sql = "update member set money = ? where member_id = ?";
+		String sql = "update member set money = ?, version = version + 1 where member_id = ?";
 		jdbcTemplate.update(sql, money, memberId); // 영향받은 row의 수를 반환한다.
 	}
 
+	@Override
+	public boolean addMoney(String memberId, int delta) {
+		String sql = "update member set money = money + ?, version = version + 1 where member_id = ? and money + ? >= 0";
+		// 회원이 없거나 잔액이 부족하면 영향받은 row가 없다.
+		return jdbcTemplate.update(sql, delta, memberId, delta) == 1;
+	}
+
+	@Override
+	public boolean updateWithVersion(String memberId, int money, long expectedVersion) {
+		String sql = "update member set money = ?, version = version + 1 where member_id = ? and version = ?";
+		// 다른 트랜잭션이 먼저 변경했다면 version이 달라서 영향받은 row가 없다.
+		return jdbcTemplate.update(sql, money, memberId, expectedVersion) == 1;
+	}
+
+	@Override
+	public int updateAll(Collection<Member> members) {
+		String sql = "update member set money = ?, version = version + 1 where member_id = ?";
+		List<Object[]> batchArgs = members.stream()
+			.map(member -> new Object[] {member.getMoney(), member.getMemberId()})
+			.toList();
+		return BatchSupport.affectedRows(jdbcTemplate.batchUpdate(sql, batchArgs));
+	}
+
 	@Override
 	public void delete(String memberId) {
 		String sql = "delete from member where member_id = ?";
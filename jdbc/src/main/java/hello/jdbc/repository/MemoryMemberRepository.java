@@ -0,0 +1,383 @@
+package hello.jdbc.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.util.Assert;
+
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * DB 없이 메모리에 회원을 저장하는 MemberRepository
+ * H2 서버 없이 테스트하거나, MemberServiceV4로 많은 이체를 빠르게 시뮬레이션할 때 사용한다.
+ *
+ * 회원마다 Member 객체를 만들어서 저장하지 않고 회원 id, 잔액, version을 배열에 나누어 저장한다. (open addressing, linear probing)
+ * 회원 id의 해시값으로 나눈 STRIPES 개의 테이블이 각각 락을 가지므로, 다른 테이블의 회원은 동시에 변경할 수 있다.
+ * Member 객체는 조회 결과를 반환할 때만 만든다.
+ *
+ * 트랜잭션을 지원하지 않는다, 메서드 하나는 원자적으로 실행되지만 롤백되지 않는다.
+ */
+@Slf4j
+public class MemoryMemberRepository implements MemberRepository {
+	static final int STRIPES = 16;
+	private static final int STRIPE_SHIFT = Integer.SIZE - Integer.numberOfTrailingZeros(STRIPES);
+
+	private final Table[] tables = new Table[STRIPES];
+
+	public MemoryMemberRepository() {
+		for (int i = 0; i < STRIPES; i++) {
+			tables[i] = new Table();
+		}
+	}
+
+	@Override
+	public Member save(Member member) {
+		if (!table(member.getMemberId()).insert(member.getMemberId(), member.getMoney())) {
+			throw new DuplicateKeyException("save, duplicate member id=" + member.getMemberId());
+		}
+		return member;
+	}
+
+	@Override
+	public int saveAll(Collection<Member> members, int batchSize) {
+		Assert.isTrue(batchSize > 0, "batchSize must be greater than 0");
+
+		// JDBC 배치와 같이 실패한 회원이 있어도 청크의 나머지 회원은 저장한다.
+		int savedRows = 0;
+		int chunkIndex = 0;
+		for (List<Member> chunk : BatchSupport.partition(members, batchSize)) {
+			List<String> failedIds = new ArrayList<>();
+			for (Member member : chunk) {
+				if (table(member.getMemberId()).insert(member.getMemberId(), member.getMoney())) {
+					savedRows++;
+				} else {
+					failedIds.add(member.getMemberId());
+				}
+			}
+			if (!failedIds.isEmpty()) {
+				throw new DuplicateKeyException(BatchSupport.describeFailedChunk("saveAll", chunkIndex, failedIds));
+			}
+			chunkIndex++;
+		}
+		return savedRows;
+	}
+
+	@Override
+	public Member findById(String memberId) {
+		Member member = table(memberId).get(memberId);
+		if (member == null) {
+			throw new EmptyResultDataAccessException("member not found member id=" + memberId, 1);
+		}
+		return member;
+	}
+
+	@Override
+	public Map<String, Member> findAllByIds(Collection<String> memberIds) {
+		Map<String, Member> members = new LinkedHashMap<>();
+		for (String memberId : memberIds) {
+			Member member = table(memberId).get(memberId);
+			if (member != null) {
+				members.put(memberId, member);
+			}
+		}
+
+		return members;
+	}
+
+	/**
+	 * 락을 걸지 않는다, member_id 순서로 반환하는 것만 같다.
+	 */
+	@Override
+	public Map<String, Member> findAllByIdsForUpdate(Collection<String> memberIds) {
+		return findAllByIds(new TreeSet<>(memberIds));
+	}
+
+	/**
+	 * 해시 테이블은 정렬되어 있지 않으므로 afterMemberId 보다 큰 회원 중 가장 작은 limit + 1 개를 힙으로 고른다. (전체를 훑는다)
+	 */
+	@Override
+	public MemberPage findPage(String afterMemberId, int limit) {
+		Assert.isTrue(limit > 0, "limit must be greater than 0");
+
+		// 가장 큰 member_id가 맨 앞에 오는 힙, limit + 1 개를 넘으면 가장 큰 것을 버린다.
+		PriorityQueue<Member> candidates = new PriorityQueue<>(
+			(a, b) -> b.getMemberId().compareTo(a.getMemberId()));
+		forEachSnapshot(member -> {
+			if (afterMemberId != null && member.getMemberId().compareTo(afterMemberId) <= 0) {
+				return;
+			}
+			candidates.add(member);
+			if (candidates.size() > limit + 1) {
+				candidates.poll();
+			}
+		});
+
+		List<Member> rows = new ArrayList<>(candidates);
+		rows.sort((a, b) -> a.getMemberId().compareTo(b.getMemberId()));
+		return MemberPage.of(rows, limit);
+	}
+
+	@Override
+	public void update(String memberId, int money) {
+		table(memberId).update(memberId, money, -1);
+	}
+
+	@Override
+	public boolean addMoney(String memberId, int delta) {
+		return table(memberId).addMoney(memberId, delta);
+	}
+
+	@Override
+	public boolean updateWithVersion(String memberId, int money, long expectedVersion) {
+		return table(memberId).update(memberId, money, expectedVersion);
+	}
+
+	@Override
+	public int updateAll(Collection<Member> members) {
+		int updatedRows = 0;
+		for (Member member : members) {
+			if (table(member.getMemberId()).update(member.getMemberId(), member.getMoney(), -1)) {
+				updatedRows++;
+			}
+		}
+		return updatedRows;
+	}
+
+	@Override
+	public void delete(String memberId) {
+		table(memberId).remove(memberId);
+	}
+
+	public int size() {
+		int size = 0;
+		for (Table table : tables) {
+			table.lock.lock();
+			try {
+				size += table.size;
+			} finally {
+				table.lock.unlock();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * 모든 테이블의 락을 잡은 상태에서 배열을 복사한 뒤, 락을 풀고 복사본을 순회한다.
+	 * 순회하는 동안 변경되더라도 복사한 시점의 회원만 전달된다.
+	 */
+	public void forEachSnapshot(Consumer<Member> action) {
+		List<Table> copies = new ArrayList<>(STRIPES);
+		for (Table table : tables) {
+			table.lock.lock();
+		}
+		try {
+			for (Table table : tables) {
+				copies.add(table.copy());
+			}
+		} finally {
+			for (Table table : tables) {
+				table.lock.unlock();
+			}
+		}
+
+		for (Table copy : copies) {
+			for (int slot = 0; slot < copy.keys.length; slot++) {
+				String key = copy.keys[slot];
+				if (key != null && key != Table.DELETED) {
+					action.accept(copy.toMember(slot));
+				}
+			}
+		}
+	}
+
+	private Table table(String memberId) {
+		// 상위 비트로 테이블을 고르고, 하위 비트로 테이블 안의 슬롯을 고른다.
+		return tables[spread(memberId.hashCode()) >>> STRIPE_SHIFT];
+	}
+
+	private static int spread(int hash) {
+		int h = hash * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * 락 하나로 보호되는 open addressing 해시 테이블
+	 * 삭제한 슬롯은 DELETED로 표시해서 뒤에 있는 회원을 계속 찾을 수 있도록 한다.
+	 */
+	private static class Table {
+		private static final String DELETED = new String("<deleted>");
+		private static final int INITIAL_CAPACITY = 16;
+
+		private final ReentrantLock lock = new ReentrantLock();
+		private String[] keys;
+		private int[] money;
+		private long[] versions;
+		private int size;
+		private int deleted;
+
+		private Table() {
+			this(INITIAL_CAPACITY);
+		}
+
+		private Table(int capacity) {
+			keys = new String[capacity];
+			money = new int[capacity];
+			versions = new long[capacity];
+		}
+
+		private Member get(String memberId) {
+			lock.lock();
+			try {
+				int slot = find(memberId);
+				return slot < 0 ? null : toMember(slot);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private boolean insert(String memberId, int amount) {
+			lock.lock();
+			try {
+				if (find(memberId) >= 0) {
+					return false;
+				}
+				if ((size + deleted + 1) * 4 > keys.length * 3) {
+					resize();
+				}
+
+				int slot = indexOf(memberId, keys.length);
+				while (keys[slot] != null && keys[slot] != DELETED) {
+					slot = (slot + 1) & (keys.length - 1);
+				}
+				if (keys[slot] == DELETED) {
+					deleted--;
+				}
+				keys[slot] = memberId;
+				money[slot] = amount;
+				versions[slot] = 0;
+				size++;
+				return true;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * @param expectedVersion 음수라면 version을 비교하지 않는다.
+		 */
+		private boolean update(String memberId, int amount, long expectedVersion) {
+			lock.lock();
+			try {
+				int slot = find(memberId);
+				if (slot < 0 || (expectedVersion >= 0 && versions[slot] != expectedVersion)) {
+					return false;
+				}
+				money[slot] = amount;
+				versions[slot]++;
+				return true;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private boolean addMoney(String memberId, int delta) {
+			lock.lock();
+			try {
+				int slot = find(memberId);
+				if (slot < 0 || (long)money[slot] + delta < 0) {
+					return false;
+				}
+				money[slot] += delta;
+				versions[slot]++;
+				return true;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void remove(String memberId) {
+			lock.lock();
+			try {
+				int slot = find(memberId);
+				if (slot >= 0) {
+					keys[slot] = DELETED;
+					size--;
+					deleted++;
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * @return 회원이 있는 슬롯, 없다면 -1
+		 */
+		private int find(String memberId) {
+			int mask = keys.length - 1;
+			for (int slot = indexOf(memberId, keys.length); keys[slot] != null; slot = (slot + 1) & mask) {
+				if (keys[slot] != DELETED && keys[slot].equals(memberId)) {
+					return slot;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * 삭제 표시가 많다면 같은 크기로, 아니라면 두 배 크기로 다시 배치한다.
+		 */
+		private void resize() {
+			int capacity = size * 2 >= keys.length ? keys.length * 2 : keys.length;
+			String[] oldKeys = keys;
+			int[] oldMoney = money;
+			long[] oldVersions = versions;
+
+			keys = new String[capacity];
+			money = new int[capacity];
+			versions = new long[capacity];
+			deleted = 0;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] == null || oldKeys[i] == DELETED) {
+					continue;
+				}
+				int slot = indexOf(oldKeys[i], capacity);
+				while (keys[slot] != null) {
+					slot = (slot + 1) & (capacity - 1);
+				}
+				keys[slot] = oldKeys[i];
+				money[slot] = oldMoney[i];
+				versions[slot] = oldVersions[i];
+			}
+		}
+
+		private Table copy() {
+			Table copy = new Table(keys.length);
+			System.arraycopy(keys, 0, copy.keys, 0, keys.length);
+			System.arraycopy(money, 0, copy.money, 0, money.length);
+			System.arraycopy(versions, 0, copy.versions, 0, versions.length);
+			copy.size = size;
+			return copy;
+		}
+
+		private Member toMember(int slot) {
+			Member member = new Member();
+			member.setMemberId(keys[slot]);
+			member.setMoney(money[slot]);
+			member.setVersion(versions[slot]);
+			return member;
+		}
+
+		private static int indexOf(String memberId, int capacity) {
+			return spread(memberId.hashCode()) & (capacity - 1);
+		}
+	}
+}
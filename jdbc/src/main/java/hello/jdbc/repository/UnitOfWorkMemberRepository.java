@@ -0,0 +1,300 @@
+package hello.jdbc.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import hello.jdbc.domain.Member;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 트랜잭션 범위의 identity map + 지연 쓰기(write-behind)
+ * 트랜잭션 안에서 한 번 조회한 회원은 DB를 다시 조회하지 않고 같은 인스턴스를 반환한다.
+ * update()는 바로 실행하지 않고 모아두었다가 커밋 직전(beforeCommit)에 JDBC 배치(updateAll) 한 번으로 반영한다.
+ * 롤백되면 모아둔 변경은 실행되지 않고 버려진다.
+ *
+ * 트랜잭션 밖에서 호출하면 아무것도 모으지 않고 delegate를 그대로 호출한다.
+ * 모아둔 변경을 모르는 delegate 쿼리(findPage, addMoney, delete 등)는 먼저 변경을 반영(flush)한 뒤 실행한다.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class UnitOfWorkMemberRepository implements MemberRepository {
+	private final MemberRepository delegate;
+
+	private final LongAdder identityMapHits = new LongAdder(); // DB 대신 identity map에서 반환한 수
+	private final LongAdder deferredUpdates = new LongAdder(); // 지연시킨 update() 호출 수
+	private final LongAdder flushedRows = new LongAdder(); // 배치로 반영한 회원 수
+	private final LongAdder flushes = new LongAdder(); // 배치 실행 수
+
+	@Override
+	public Member save(Member member) {
+		UnitOfWork unitOfWork = currentUnitOfWork();
+		if (unitOfWork != null) {
+			unitOfWork.flush();
+		}
+		return delegate.save(member);
+	}
+
+	@Override
+	public Member findById(String memberId) {
+		UnitOfWork unitOfWork = currentUnitOfWork();
+		if (unitOfWork == null) {
+			return delegate.findById(memberId);
+		}
+
+		Member member = unitOfWork.members.get(memberId);
+		if (member != null) {
+			identityMapHits.increment();
+			return member;
+		}
+		return unitOfWork.register(delegate.findById(memberId));
+	}
+
+	@Override
+	public void update(String memberId, int money) {
+		UnitOfWork unitOfWork = currentUnitOfWork();
+		if (unitOfWork == null) {
+			delegate.update(memberId, money);
+			return;
+		}
+
+		deferredUpdates.increment();
+		unitOfWork.dirty.put(memberId, money);
+		Member member = unitOfWork.members.get(memberId);
+		if (member != null) {
+			member.setMoney(money);
+		}
+	}
+
+	@Override
+	public void delete(String memberId) {
+		UnitOfWork unitOfWork = currentUnitOfWork();
+		if (unitOfWork == null) {
+			delegate.delete(memberId);
+			return;
+		}
+
+		unitOfWork.flush();
+		delegate.delete(memberId);
+		unitOfWork.members.remove(memberId);
+	}
+
+	@Override
+	public int saveAll(Collection<Member> members, int batchSize) {
+		UnitOfWork unitOfWork = currentUnitOfWork();
+		if (unitOfWork != null) {
+			unitOfWork.flush();
+		}
+		return delegate.saveAll(members, batchSize);
+	}
+
+	@Override
+	public Map<String, Member> findAllByIds(Collection<String> memberIds) {
+		UnitOfWork unitOfWork = currentUnitOfWork();
+		if (unitOfWork == null) {
+			return delegate.findAllByIds(memberIds);
+		}
+
+		// identity map에 없는 회원만 한 번에 조회한다.
+		List<String> missingIds = new ArrayList<>();
+		for (String memberId : new LinkedHashSet<>(memberIds)) {
+			if (unitOfWork.members.containsKey(memberId)) {
+				identityMapHits.increment();
+			} else {
+				missingIds.add(memberId);
+			}
+		}
+		if (!missingIds.isEmpty()) {
+			delegate.findAllByIds(missingIds).values().forEach(unitOfWork::register);
+		}
+		return unitOfWork.collect(memberIds);
+	}
+
+	@Override
+	public Map<String, Member> findAllByIdsForUpdate(Collection<String> memberIds) {
+		UnitOfWork unitOfWork = currentUnitOfWork();
+		if (unitOfWork == null) {
+			return delegate.findAllByIdsForUpdate(memberIds);
+		}
+
+		// 락을 걸기 위해 항상 DB를 조회하고, 락을 얻은 시점의 값으로 identity map을 교체한다.
+		delegate.findAllByIdsForUpdate(memberIds).values().forEach(member -> {
+			unitOfWork.members.remove(member.getMemberId());
+			unitOfWork.register(member);
+		});
+		return unitOfWork.collect(memberIds);
+	}
+
+	@Override
+	public MemberPage findPage(String afterMemberId, int limit) {
+		UnitOfWork unitOfWork = currentUnitOfWork();
+		if (unitOfWork != null) {
+			unitOfWork.flush();
+		}
+		return delegate.findPage(afterMemberId, limit);
+	}
+
+	@Override
+	public boolean addMoney(String memberId, int delta) {
+		UnitOfWork unitOfWork = currentUnitOfWork();
+		if (unitOfWork == null) {
+			return delegate.addMoney(memberId, delta);
+		}
+
+		// DB에서 잔액이 바뀌므로 identity map의 회원은 더 이상 최신이 아니다.
+		unitOfWork.flush();
+		unitOfWork.members.remove(memberId);
+		return delegate.addMoney(memberId, delta);
+	}
+
+	@Override
+	public boolean updateWithVersion(String memberId, int money, long expectedVersion) {
+		UnitOfWork unitOfWork = currentUnitOfWork();
+		if (unitOfWork == null) {
+			return delegate.updateWithVersion(memberId, money, expectedVersion);
+		}
+
+		unitOfWork.flush();
+		unitOfWork.members.remove(memberId);
+		return delegate.updateWithVersion(memberId, money, expectedVersion);
+	}
+
+	@Override
+	public int updateAll(Collection<Member> members) {
+		UnitOfWork unitOfWork = currentUnitOfWork();
+		if (unitOfWork == null) {
+			return delegate.updateAll(members);
+		}
+
+		members.forEach(member -> update(member.getMemberId(), member.getMoney()));
+		return members.size();
+	}
+
+	/**
+	 * 모아둔 변경을 지금 DB에 반영한다. 트랜잭션 밖이라면 아무것도 하지 않는다.
+	 */
+	public void flush() {
+		UnitOfWork unitOfWork = currentUnitOfWork();
+		if (unitOfWork != null) {
+			unitOfWork.flush();
+		}
+	}
+
+	/**
+	 * 트랜잭션이 진행중이라면 트랜잭션에 바인딩된 UnitOfWork를 반환하고, 처음 호출되었다면 만들어서 바인딩한다.
+	 */
+	private UnitOfWork currentUnitOfWork() {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()
+			|| !TransactionSynchronizationManager.isActualTransactionActive()) {
+			return null;
+		}
+
+		UnitOfWork unitOfWork = (UnitOfWork)TransactionSynchronizationManager.getResource(this);
+		if (unitOfWork == null) {
+			unitOfWork = new UnitOfWork();
+			TransactionSynchronizationManager.bindResource(this, unitOfWork);
+			TransactionSynchronizationManager.registerSynchronization(unitOfWork);
+		}
+		return unitOfWork;
+	}
+
+	public long getIdentityMapHitCount() {
+		return identityMapHits.sum();
+	}
+
+	public long getDeferredUpdateCount() {
+		return deferredUpdates.sum();
+	}
+
+	public long getFlushedRowCount() {
+		return flushedRows.sum();
+	}
+
+	public long getFlushCount() {
+		return flushes.sum();
+	}
+
+	/**
+	 * 트랜잭션 하나의 identity map과 아직 반영하지 않은 변경
+	 * 트랜잭션은 하나의 스레드에서만 실행되므로 동기화하지 않는다.
+	 */
+	private class UnitOfWork implements TransactionSynchronization {
+		private final Map<String, Member> members = new HashMap<>();
+		private final Map<String, Integer> dirty = new LinkedHashMap<>(); // 회원 id -> 변경할 잔액
+
+		/**
+		 * 조회한 회원을 identity map에 등록한다. 아직 반영하지 않은 변경이 있다면 조회한 회원에도 적용한다.
+		 */
+		private Member register(Member member) {
+			Integer money = dirty.get(member.getMemberId());
+			if (money != null) {
+				member.setMoney(money);
+			}
+			members.put(member.getMemberId(), member);
+			return member;
+		}
+
+		private Map<String, Member> collect(Collection<String> memberIds) {
+			Map<String, Member> result = new LinkedHashMap<>();
+			for (String memberId : memberIds) {
+				Member member = members.get(memberId);
+				if (member != null) {
+					result.put(memberId, member);
+				}
+			}
+			return result;
+		}
+
+		private void flush() {
+			if (dirty.isEmpty()) {
+				return;
+			}
+
+			List<Member> changes = new ArrayList<>(dirty.size());
+			dirty.forEach((memberId, money) -> changes.add(new Member(memberId, money)));
+			int updatedRows = delegate.updateAll(changes);
+			log.info("flush deferred updates, members={}, updatedRows={}", changes.size(), updatedRows);
+
+			// updateAll()이 version을 1 증가시키므로 identity map의 회원도 맞춰준다.
+			for (String memberId : dirty.keySet()) {
+				Member member = members.get(memberId);
+				if (member != null) {
+					member.setVersion(member.getVersion() + 1);
+				}
+			}
+			dirty.clear();
+			flushes.increment();
+			flushedRows.add(changes.size());
+		}
+
+		// REQUIRES_NEW로 새 트랜잭션이 시작되면 바깥 트랜잭션의 UnitOfWork를 잠시 내려놓는다.
+		@Override
+		public void suspend() {
+			TransactionSynchronizationManager.unbindResource(UnitOfWorkMemberRepository.this);
+		}
+
+		@Override
+		public void resume() {
+			TransactionSynchronizationManager.bindResource(UnitOfWorkMemberRepository.this, this);
+		}
+
+		@Override
+		public void beforeCommit(boolean readOnly) {
+			flush();
+		}
+
+		@Override
+		public void afterCompletion(int status) {
+			TransactionSynchronizationManager.unbindResourceIfPossible(UnitOfWorkMemberRepository.this);
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package hello.jdbc.repository.async;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * MemberRepository를 CompletableFuture로 호출하는 비동기 API
+ * 호출마다 가상 스레드(지원하지 않는 JVM이라면 플랫폼 스레드)에서 delegate를 실행한다.
+ *
+ * 동시에 delegate를 실행하는 작업 수를 세마포어로 제한한다. (bulkhead)
+ * permit을 얻지 못한 작업은 스레드에 넘기지 않고 큐(FIFO)에서 기다리므로, 커넥션 풀 크기에 맞추면
+ * 풀의 connectionTimeout으로 실패하지 않고 커넥션을 가진 작업이 끝나는 대로 차례로 실행된다.
+ *
+ * 작업은 다른 스레드에서 실행되므로 호출한 스레드의 트랜잭션에 참여하지 않는다.
+ */
+@Slf4j
+public class AsyncMemberRepository implements AutoCloseable {
+	private final MemberRepository delegate;
+	private final ExecutorService executor;
+	private final Semaphore bulkhead;
+	private final Queue<PendingCall<?>> pending = new ConcurrentLinkedQueue<>();
+	private final int maxConcurrency;
+
+	/**
+	 * 동시 실행 수를 dataSource의 최대 커넥션 수에 맞춘다.
+	 */
+	public AsyncMemberRepository(MemberRepository delegate, HikariDataSource dataSource) {
+		this(delegate, dataSource.getMaximumPoolSize());
+	}
+
+	public AsyncMemberRepository(MemberRepository delegate, int maxConcurrency) {
+		this(delegate, maxConcurrency, VirtualThreads.newExecutor("AsyncMemberRepository"));
+	}
+
+	public AsyncMemberRepository(MemberRepository delegate, int maxConcurrency, ExecutorService executor) {
+		if (maxConcurrency < 1) {
+			throw new IllegalArgumentException("maxConcurrency must be greater than 0");
+		}
+		this.delegate = delegate;
+		this.executor = executor;
+		this.maxConcurrency = maxConcurrency;
+		this.bulkhead = new Semaphore(maxConcurrency);
+	}
+
+	public CompletableFuture<Member> save(Member member) {
+		return supply(() -> delegate.save(member));
+	}
+
+	public CompletableFuture<Member> findById(String memberId) {
+		return supply(() -> delegate.findById(memberId));
+	}
+
+	public CompletableFuture<Void> update(String memberId, int money) {
+		return supply(() -> {
+			delegate.update(memberId, money);
+			return null;
+		});
+	}
+
+	public CompletableFuture<Void> delete(String memberId) {
+		return supply(() -> {
+			delegate.delete(memberId);
+			return null;
+		});
+	}
+
+	private <T> CompletableFuture<T> supply(Supplier<T> action) {
+		PendingCall<T> call = new PendingCall<>(action);
+		pending.offer(call);
+		dispatch();
+		return call.result;
+	}
+
+	/**
+	 * permit을 얻은 만큼만 executor에 작업을 넘긴다.
+	 * 기다리는 작업은 스레드 없이 큐에만 남으므로, 가상 스레드를 지원하지 않아 플랫폼 스레드를 만드는 경우에도
+	 * 스레드 수가 maxConcurrency를 크게 넘지 않는다.
+	 */
+	private void dispatch() {
+		// permit을 얻은 뒤 큐가 비어있다면 반납하고 다시 확인한다. (반납하는 사이에 추가된 작업을 놓치지 않는다)
+		while (!pending.isEmpty() && bulkhead.tryAcquire()) {
+			PendingCall<?> call = pending.poll();
+			if (call == null) {
+				bulkhead.release();
+				continue;
+			}
+
+			try {
+				executor.execute(() -> runPending(call));
+			} catch (RejectedExecutionException e) {
+				// close() 이후의 호출
+				bulkhead.release();
+				call.result.completeExceptionally(e);
+			}
+		}
+	}
+
+	/**
+	 * permit을 가진 채로 큐에 남은 작업을 이어서 실행한다, 작업마다 executor에 다시 넘기지 않으므로 스레드를 재사용한다.
+	 */
+	private void runPending(PendingCall<?> call) {
+		try {
+			while (call != null) {
+				call.run();
+				call = pending.poll();
+			}
+		} finally {
+			bulkhead.release();
+		}
+		dispatch();
+	}
+
+	/**
+	 * delegate를 실행중인 작업 수
+	 */
+	public int getActiveCount() {
+		return maxConcurrency - bulkhead.availablePermits();
+	}
+
+	/**
+	 * permit을 기다리는 작업 수
+	 */
+	public int getWaitingCount() {
+		return pending.size();
+	}
+
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+
+	@RequiredArgsConstructor
+	private static class PendingCall<T> {
+		private final Supplier<T> action;
+		private final CompletableFuture<T> result = new CompletableFuture<>();
+
+		void run() {
+			try {
+				result.complete(action.get());
+			} catch (Throwable e) {
+				result.completeExceptionally(e);
+			}
+		}
+	}
+}
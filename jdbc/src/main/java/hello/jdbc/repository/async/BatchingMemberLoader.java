@@ -0,0 +1,200 @@
+package hello.jdbc.repository.async;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 짧은 시간(window) 동안 들어온 회원 조회를 모아서 findAllByIds() 한 번으로 조회한다. (DataLoader)
+ * 첫 조회가 들어온 뒤 window가 지나거나 모인 회원 id가 maxBatchSize 개가 되면 조회를 실행하고, 각 호출자의 future를 완료한다.
+ * 같은 회원을 여러 번 요청하면 한 번만 조회하고, 두 번째 호출자부터는 복사한 회원을 받는다.
+ *
+ * 조회는 executor의 스레드에서 실행되므로 호출한 스레드의 트랜잭션에 참여하지 않는다.
+ * findById()는 결과를 기다리는 동안 호출한 스레드를 블로킹하므로 가상 스레드에서 호출하는 것이 좋다.
+ */
+@Slf4j
+public class BatchingMemberLoader implements AutoCloseable {
+	private final MemberRepository repository;
+	private final long windowNanos;
+	private final int maxBatchSize;
+	private final ExecutorService executor;
+	private final ScheduledExecutorService timer;
+
+	private final Object lock = new Object();
+	private Batch current; // 모으고 있는 배치, lock으로 보호한다.
+
+	private final LongAdder loads = new LongAdder(); // load() 호출 수
+	private final LongAdder batches = new LongAdder(); // 실행한 쿼리 수
+
+	public BatchingMemberLoader(MemberRepository repository, Duration window, int maxBatchSize) {
+		this(repository, window, maxBatchSize, VirtualThreads.newExecutor("BatchingMemberLoader"));
+	}
+
+	public BatchingMemberLoader(MemberRepository repository, Duration window, int maxBatchSize,
+		ExecutorService executor) {
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("maxBatchSize must be greater than 0");
+		}
+		this.repository = repository;
+		this.windowNanos = window.toNanos();
+		this.maxBatchSize = maxBatchSize;
+		this.executor = executor;
+		this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "BatchingMemberLoader-timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public CompletableFuture<Member> load(String memberId) {
+		loads.increment();
+		CompletableFuture<Member> future = new CompletableFuture<>();
+		Batch full = null;
+
+		synchronized (lock) {
+			if (current == null) {
+				Batch batch = new Batch();
+				batch.timeout = timer.schedule(() -> dispatch(batch), windowNanos, TimeUnit.NANOSECONDS);
+				current = batch;
+			}
+			current.waiters.computeIfAbsent(memberId, id -> new ArrayList<>()).add(future);
+			if (current.waiters.size() >= maxBatchSize) {
+				full = current;
+				current = null;
+			}
+		}
+
+		if (full != null) {
+			full.timeout.cancel(false);
+			submit(full);
+		}
+		return future;
+	}
+
+	/**
+	 * load()의 결과를 기다린다.
+	 * @throws NoSuchElementException 회원이 없는 경우
+	 */
+	public Member findById(String memberId) {
+		try {
+			return load(memberId).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * 모으고 있는 조회를 기다리지 않고 바로 실행한다.
+	 */
+	public void dispatch() {
+		Batch batch;
+		synchronized (lock) {
+			batch = current;
+			current = null;
+		}
+		if (batch != null) {
+			batch.timeout.cancel(false);
+			submit(batch);
+		}
+	}
+
+	private void dispatch(Batch batch) {
+		synchronized (lock) {
+			// 이미 가득 차서 실행된 배치
+			if (current != batch) {
+				return;
+			}
+			current = null;
+		}
+		submit(batch);
+	}
+
+	/**
+	 * executor가 종료되어 실행할 수 없다면, 기다리는 호출자가 멈춰있지 않도록 배치의 future를 모두 예외로 완료한다.
+	 */
+	private void submit(Batch batch) {
+		try {
+			executor.execute(() -> run(batch));
+		} catch (RejectedExecutionException e) {
+			log.info("batch load rejected, memberIds={}", batch.waiters.keySet(), e);
+			fail(batch, e);
+		}
+	}
+
+	private void run(Batch batch) {
+		batches.increment();
+		Map<String, Member> found;
+		try {
+			found = repository.findAllByIds(batch.waiters.keySet());
+		} catch (RuntimeException | Error e) {
+			log.info("batch load failed, memberIds={}", batch.waiters.keySet(), e);
+			fail(batch, e);
+			return;
+		}
+
+		batch.waiters.forEach((memberId, futures) -> {
+			Member member = found.get(memberId);
+			for (int i = 0; i < futures.size(); i++) {
+				if (member == null) {
+					futures.get(i).completeExceptionally(new NoSuchElementException("member not found member id=" + memberId));
+				} else {
+					futures.get(i).complete(i == 0 ? member : member.copy());
+				}
+			}
+		});
+	}
+
+	private void fail(Batch batch, Throwable e) {
+		batch.waiters.values().forEach(futures -> futures.forEach(future -> future.completeExceptionally(e)));
+	}
+
+	/**
+	 * 모으고 있던 조회를 실행한 뒤 스레드를 정리한다.
+	 */
+	@Override
+	public void close() {
+		dispatch();
+		timer.shutdownNow();
+		executor.shutdown();
+	}
+
+	public long getLoadCount() {
+		return loads.sum();
+	}
+
+	public long getBatchCount() {
+		return batches.sum();
+	}
+
+	/**
+	 * 쿼리 한 번에 평균 몇 번의 load()를 처리했는지
+	 */
+	public double getAverageBatchSize() {
+		long batchCount = batches.sum();
+		return batchCount == 0 ? 0 : (double)loads.sum() / batchCount;
+	}
+
+	private static class Batch {
+		private final Map<String, List<CompletableFuture<Member>>> waiters = new LinkedHashMap<>();
+		private ScheduledFuture<?> timeout;
+	}
+}
@@ -0,0 +1,177 @@
+package hello.jdbc.repository.async;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
+import org.springframework.jdbc.support.SQLExceptionTranslator;
+
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * member 테이블 전체를 Flow.Publisher로 조회한다.
+ * 구독자가 request(n)으로 요청한 만큼만 JDBC 커서에서 row를 읽으므로, 구독자가 처리하는 속도보다 빠르게 메모리에 쌓이지 않는다. (backpressure)
+ *
+ * 구독마다 첫 요청이 들어왔을 때 커넥션을 하나 얻어서 구독이 끝날 때까지 사용하고,
+ * 모두 읽었거나(onComplete) 실패했거나(onError) 취소(cancel)되면 반납한다.
+ * SQLException은 MemberRepositoryV4_2와 같이 SQLErrorCodeSQLExceptionTranslator로 변환해서 onError로 전달한다.
+ *
+ * JDBC 객체는 여러 스레드에서 동시에 사용할 수 없으므로, 구독 하나의 작업(읽기, 반납)은 executor에서 한 번에 하나씩 실행한다.
+ */
+@Slf4j
+public class MemberScanPublisher implements Flow.Publisher<Member> {
+	private static final String SQL = "select * from member";
+
+	private final DataSource dataSource;
+	private final int fetchSize;
+	private final Executor executor;
+	private final SQLExceptionTranslator exceptionTranslator;
+
+	public MemberScanPublisher(DataSource dataSource, int fetchSize) {
+		this(dataSource, fetchSize, VirtualThreads.newExecutor("MemberScanPublisher"));
+	}
+
+	public MemberScanPublisher(DataSource dataSource, int fetchSize, Executor executor) {
+		this.dataSource = dataSource;
+		this.fetchSize = fetchSize;
+		this.executor = executor;
+		this.exceptionTranslator = new SQLErrorCodeSQLExceptionTranslator(dataSource);
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super Member> subscriber) {
+		Objects.requireNonNull(subscriber, "subscriber");
+		subscriber.onSubscribe(new ScanSubscription(subscriber));
+	}
+
+	private class ScanSubscription implements Flow.Subscription {
+		private final Flow.Subscriber<? super Member> subscriber;
+		private final AtomicLong demand = new AtomicLong();
+		private final AtomicInteger pendingDrains = new AtomicInteger();
+		private volatile boolean cancelled;
+		private volatile Throwable invalidRequest;
+
+		// drain()에서만 사용한다.
+		private Connection conn;
+		private PreparedStatement pstmt;
+		private ResultSet rs;
+		private boolean done;
+
+		private ScanSubscription(Flow.Subscriber<? super Member> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				// Reactive Streams 규칙 3.9
+				invalidRequest = new IllegalArgumentException("request must be positive, n=" + n);
+			} else {
+				demand.getAndAccumulate(n, (current, added) -> {
+					long sum = current + added;
+					return sum < 0 ? Long.MAX_VALUE : sum;
+				});
+			}
+			scheduleDrain();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			scheduleDrain();
+		}
+
+		/**
+		 * 이미 drain()이 실행중이라면 실행중인 스레드가 한 번 더 반복하도록 표시만 한다.
+		 */
+		private void scheduleDrain() {
+			if (pendingDrains.getAndIncrement() == 0) {
+				executor.execute(this::drain);
+			}
+		}
+
+		private void drain() {
+			do {
+				if (!done) {
+					drainOnce();
+				}
+			} while (pendingDrains.decrementAndGet() != 0);
+		}
+
+		private void drainOnce() {
+			if (cancelled) {
+				finish();
+				return;
+			}
+			if (invalidRequest != null) {
+				finish();
+				subscriber.onError(invalidRequest);
+				return;
+			}
+
+			try {
+				while (demand.get() > 0 && !cancelled) {
+					if (rs == null) {
+						open();
+					}
+					if (!rs.next()) {
+						finish();
+						subscriber.onComplete();
+						return;
+					}
+					demand.decrementAndGet();
+					subscriber.onNext(mapMember(rs));
+				}
+				if (cancelled) {
+					finish();
+				}
+			} catch (SQLException sqlException) {
+				finish();
+				subscriber.onError(exceptionTranslator.translate("scan", SQL, sqlException));
+			} catch (RuntimeException e) {
+				// onNext()에서 던진 예외, 또는 커넥션을 얻지 못한 경우
+				finish();
+				subscriber.onError(e);
+			}
+		}
+
+		private void open() throws SQLException {
+			conn = DataSourceUtils.getConnection(dataSource);
+			// 앞으로만 이동하는 읽기 전용 커서를 사용한다.
+			pstmt = conn.prepareStatement(SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			pstmt.setFetchSize(fetchSize);
+			rs = pstmt.executeQuery();
+		}
+
+		private void finish() {
+			done = true;
+			JdbcUtils.closeResultSet(rs);
+			JdbcUtils.closeStatement(pstmt);
+			DataSourceUtils.releaseConnection(conn, dataSource);
+			rs = null;
+			pstmt = null;
+			conn = null;
+		}
+	}
+
+	private static Member mapMember(ResultSet rs) throws SQLException {
+		Member member = new Member();
+		member.setMemberId(rs.getString("member_id"));
+		member.setMoney(rs.getInt("money"));
+		member.setVersion(rs.getLong("version"));
+
+		return member;
+	}
+}
@@ -0,0 +1,71 @@
+package hello.jdbc.repository.async;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 작업마다 가상 스레드를 만드는 ExecutorService
+ * 프로젝트는 Java 17로 컴파일되므로 Java 21 이상에서 실행될 때만 리플렉션으로 가상 스레드를 사용하고,
+ * 그 외에는 필요한 만큼 데몬 플랫폼 스레드를 만드는 cached thread pool을 사용한다.
+ */
+@Slf4j
+public abstract class VirtualThreads {
+	private static final Method FACTORY = findFactory();
+	private static final Method IS_VIRTUAL = findIsVirtual();
+
+	public static boolean isSupported() {
+		return FACTORY != null;
+	}
+
+	/**
+	 * Java 21 미만에서는 항상 false
+	 */
+	public static boolean isVirtual(Thread thread) {
+		if (IS_VIRTUAL == null) {
+			return false;
+		}
+		try {
+			return (boolean)IS_VIRTUAL.invoke(thread);
+		} catch (ReflectiveOperationException e) {
+			return false;
+		}
+	}
+
+	public static ExecutorService newExecutor(String name) {
+		if (FACTORY != null) {
+			try {
+				return (ExecutorService)FACTORY.invoke(null);
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException("failed to create virtual thread executor", e);
+			}
+		}
+
+		log.info("virtual threads are not supported, use platform threads, name={}", name);
+		AtomicInteger sequence = new AtomicInteger();
+		return Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, name + "-" + sequence.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	private static Method findFactory() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private static Method findIsVirtual() {
+		try {
+			return Thread.class.getMethod("isVirtual");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+}
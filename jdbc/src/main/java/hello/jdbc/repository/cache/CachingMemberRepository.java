@@ -0,0 +1,266 @@
+package hello.jdbc.repository.cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberPage;
+import hello.jdbc.repository.MemberRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 조회 결과를 캐시하는 MemberRepository (read-through)
+ * findById(), findAllByIds()는 캐시에 없을 때만 delegate를 조회하고 결과를 캐시에 저장한다.
+ *
+ * 변경(update, delete, addMoney 등)은 커밋된 이후에 캐시에서 제거한다.
+ * - 트랜잭션 밖 : 변경 직후 제거한다.
+ * - 트랜잭션 안 : 커밋 이후(afterCommit) 제거한다. 롤백되면 DB가 바뀌지 않았으므로 캐시도 그대로 둔다.
+ *   커밋 전까지 같은 트랜잭션에서 변경한 회원은 캐시를 사용하지 않고 delegate를 조회한다.
+ * 조회 도중 무효화가 일어났다면 조회 결과를 저장하지 않으므로 오래된 값이 다시 캐시되지 않는다.
+ *
+ * 캐시에 저장한 회원을 호출자가 변경하지 못하도록 저장할 때와 반환할 때 복사한다.
+ */
+@Slf4j
+public class CachingMemberRepository implements MemberRepository {
+	private final MemberRepository delegate;
+	private final MemberCache cache;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder loads = new LongAdder();
+	private final LongAdder loadNanos = new LongAdder();
+
+	public CachingMemberRepository(MemberRepository delegate, int maximumSize, Duration ttl) {
+		this(delegate, maximumSize, ttl, System::nanoTime);
+	}
+
+	CachingMemberRepository(MemberRepository delegate, int maximumSize, Duration ttl, LongSupplier nanoTime) {
+		this.delegate = delegate;
+		this.cache = new MemberCache(maximumSize, ttl.toNanos(), nanoTime);
+	}
+
+	@Override
+	public Member save(Member member) {
+		Member saved = delegate.save(member);
+		invalidate(List.of(member.getMemberId()));
+		return saved;
+	}
+
+	@Override
+	public Member findById(String memberId) {
+		if (!writtenInCurrentTransaction(memberId)) {
+			Member cached = cache.get(memberId);
+			if (cached != null) {
+				hits.increment();
+				return cached.copy();
+			}
+		}
+		misses.increment();
+
+		long generation = cache.generation();
+		long startNanos = System.nanoTime();
+		Member member = delegate.findById(memberId);
+		recordLoad(startNanos);
+
+		cacheIfCommitted(member, generation);
+		return member;
+	}
+
+	@Override
+	public void update(String memberId, int money) {
+		delegate.update(memberId, money);
+		invalidate(List.of(memberId));
+	}
+
+	@Override
+	public void delete(String memberId) {
+		delegate.delete(memberId);
+		invalidate(List.of(memberId));
+	}
+
+	@Override
+	public int saveAll(Collection<Member> members, int batchSize) {
+		int savedRows = delegate.saveAll(members, batchSize);
+		invalidate(members.stream().map(Member::getMemberId).toList());
+		return savedRows;
+	}
+
+	@Override
+	public Map<String, Member> findAllByIds(Collection<String> memberIds) {
+		Map<String, Member> found = new LinkedHashMap<>();
+		List<String> missingIds = new ArrayList<>();
+		for (String memberId : new HashSet<>(memberIds)) {
+			Member cached = writtenInCurrentTransaction(memberId) ? null : cache.get(memberId);
+			if (cached != null) {
+				hits.increment();
+				found.put(memberId, cached.copy());
+			} else {
+				misses.increment();
+				missingIds.add(memberId);
+			}
+		}
+
+		if (!missingIds.isEmpty()) {
+			long generation = cache.generation();
+			long startNanos = System.nanoTime();
+			Map<String, Member> loaded = delegate.findAllByIds(missingIds);
+			recordLoad(startNanos);
+
+			loaded.values().forEach(member -> cacheIfCommitted(member, generation));
+			found.putAll(loaded);
+		}
+
+		// 요청한 순서대로 반환한다.
+		Map<String, Member> result = new LinkedHashMap<>();
+		for (String memberId : memberIds) {
+			Member member = found.get(memberId);
+			if (member != null) {
+				result.put(memberId, member);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public Map<String, Member> findAllByIdsForUpdate(Collection<String> memberIds) {
+		// 락을 걸어야 하므로 항상 DB를 조회한다.
+		return delegate.findAllByIdsForUpdate(memberIds);
+	}
+
+	@Override
+	public MemberPage findPage(String afterMemberId, int limit) {
+		return delegate.findPage(afterMemberId, limit);
+	}
+
+	@Override
+	public boolean addMoney(String memberId, int delta) {
+		boolean updated = delegate.addMoney(memberId, delta);
+		invalidate(List.of(memberId));
+		return updated;
+	}
+
+	@Override
+	public boolean updateWithVersion(String memberId, int money, long expectedVersion) {
+		boolean updated = delegate.updateWithVersion(memberId, money, expectedVersion);
+		invalidate(List.of(memberId));
+		return updated;
+	}
+
+	@Override
+	public int updateAll(Collection<Member> members) {
+		int updatedRows = delegate.updateAll(members);
+		invalidate(members.stream().map(Member::getMemberId).toList());
+		return updatedRows;
+	}
+
+	public double getHitRatio() {
+		long hitCount = hits.sum();
+		long total = hitCount + misses.sum();
+		return total == 0 ? 0 : (double)hitCount / total;
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long getEvictionCount() {
+		return cache.getEvictionCount();
+	}
+
+	public long getExpirationCount() {
+		return cache.getExpirationCount();
+	}
+
+	public int getSize() {
+		return cache.size();
+	}
+
+	/**
+	 * delegate 조회 1번의 평균 시간
+	 */
+	public double getAverageLoadMillis() {
+		long loadCount = loads.sum();
+		return loadCount == 0 ? 0 : loadNanos.sum() / 1_000_000.0 / loadCount;
+	}
+
+	private void recordLoad(long startNanos) {
+		loads.increment();
+		loadNanos.add(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * 이 트랜잭션에서 변경한 회원이라면 커밋되지 않은 값일 수 있으므로 캐시에 저장하지 않는다.
+	 */
+	private void cacheIfCommitted(Member member, long generation) {
+		if (!writtenInCurrentTransaction(member.getMemberId())) {
+			cache.put(member.copy(), generation);
+		}
+	}
+
+	private void invalidate(Collection<String> memberIds) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()
+			|| !TransactionSynchronizationManager.isActualTransactionActive()) {
+			memberIds.forEach(cache::invalidate);
+			return;
+		}
+		currentWrites().memberIds.addAll(memberIds);
+	}
+
+	private boolean writtenInCurrentTransaction(String memberId) {
+		TransactionWrites writes = (TransactionWrites)TransactionSynchronizationManager.getResource(this);
+		return writes != null && writes.memberIds.contains(memberId);
+	}
+
+	private TransactionWrites currentWrites() {
+		TransactionWrites writes = (TransactionWrites)TransactionSynchronizationManager.getResource(this);
+		if (writes == null) {
+			writes = new TransactionWrites();
+			TransactionSynchronizationManager.bindResource(this, writes);
+			TransactionSynchronizationManager.registerSynchronization(writes);
+		}
+		return writes;
+	}
+
+	/**
+	 * 트랜잭션 안에서 변경한 회원 id, 커밋된 이후 캐시에서 제거한다.
+	 */
+	private class TransactionWrites implements TransactionSynchronization {
+		private final Set<String> memberIds = new HashSet<>();
+
+		@Override
+		public void suspend() {
+			TransactionSynchronizationManager.unbindResource(CachingMemberRepository.this);
+		}
+
+		@Override
+		public void resume() {
+			TransactionSynchronizationManager.bindResource(CachingMemberRepository.this, this);
+		}
+
+		@Override
+		public void afterCommit() {
+			log.info("invalidate committed members={}", memberIds);
+			memberIds.forEach(cache::invalidate);
+		}
+
+		@Override
+		public void afterCompletion(int status) {
+			TransactionSynchronizationManager.unbindResourceIfPossible(CachingMemberRepository.this);
+		}
+	}
+}
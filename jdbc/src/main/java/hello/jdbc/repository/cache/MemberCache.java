@@ -0,0 +1,146 @@
+package hello.jdbc.repository.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import hello.jdbc.domain.Member;
+
+/**
+ * 크기가 제한된 회원 캐시 (TTL + 접근 빈도 기반 제거)
+ * 가득 차면 가장 오래 접근하지 않은 SAMPLE_SIZE 개 중에서 접근 빈도가 가장 낮은 회원을 제거한다.
+ * 자주 조회되는 회원은 잠깐 조회되지 않더라도 남아있고, 한 번 조회된 회원들이 자주 조회되는 회원을 밀어내지 못한다.
+ * 접근 빈도는 주기적으로 절반으로 줄여서(aging) 예전에만 자주 조회된 회원이 계속 남아있지 않도록 한다.
+ */
+class MemberCache {
+	static final int SAMPLE_SIZE = 8;
+
+	private final int maximumSize;
+	private final long ttlNanos;
+	private final LongSupplier nanoTime;
+	private final long agingPeriod; // 이 횟수만큼 접근할 때마다 접근 빈도를 절반으로 줄인다.
+
+	// accessOrder=true : 가장 오래 접근하지 않은 회원이 맨 앞에 온다.
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long accessesSinceAging;
+	private long invalidations; // 조회 도중 무효화가 일어났는지 확인하기 위한 값
+
+	private long evictionCount;
+	private long expirationCount;
+
+	MemberCache(int maximumSize, long ttlNanos, LongSupplier nanoTime) {
+		if (maximumSize < 1) {
+			throw new IllegalArgumentException("maximumSize must be greater than 0");
+		}
+		this.maximumSize = maximumSize;
+		this.ttlNanos = ttlNanos;
+		this.nanoTime = nanoTime;
+		this.agingPeriod = maximumSize * 10L;
+	}
+
+	/**
+	 * @return 캐시된 회원, 없거나 만료되었다면 null
+	 */
+	synchronized Member get(String memberId) {
+		Entry entry = entries.get(memberId);
+		if (entry == null) {
+			return null;
+		}
+		if (nanoTime.getAsLong() - entry.loadedAt >= ttlNanos) {
+			entries.remove(memberId);
+			expirationCount++;
+			return null;
+		}
+
+		entry.frequency++;
+		if (++accessesSinceAging >= agingPeriod) {
+			age();
+		}
+		return entry.member;
+	}
+
+	/**
+	 * 조회를 시작할 때 호출한다. 반환한 값을 put()에 넘기면 조회 도중 무효화가 일어났을 때 오래된 값을 저장하지 않는다.
+	 */
+	synchronized long generation() {
+		return invalidations;
+	}
+
+	synchronized void put(Member member, long generation) {
+		if (generation != invalidations) {
+			return;
+		}
+
+		Entry entry = entries.get(member.getMemberId());
+		if (entry != null) {
+			entry.member = member;
+			entry.loadedAt = nanoTime.getAsLong();
+			return;
+		}
+
+		if (entries.size() >= maximumSize) {
+			evict();
+		}
+		entries.put(member.getMemberId(), new Entry(member, nanoTime.getAsLong()));
+	}
+
+	synchronized void invalidate(String memberId) {
+		invalidations++;
+		entries.remove(memberId);
+	}
+
+	synchronized void invalidateAll() {
+		invalidations++;
+		entries.clear();
+	}
+
+	private void evict() {
+		String victim = null;
+		int victimFrequency = Integer.MAX_VALUE;
+
+		Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+		for (int i = 0; i < SAMPLE_SIZE && iterator.hasNext(); i++) {
+			Map.Entry<String, Entry> candidate = iterator.next();
+			if (candidate.getValue().frequency < victimFrequency) {
+				victim = candidate.getKey();
+				victimFrequency = candidate.getValue().frequency;
+			}
+		}
+
+		if (victim != null) {
+			entries.remove(victim);
+			evictionCount++;
+		}
+	}
+
+	private void age() {
+		for (Entry entry : entries.values()) {
+			entry.frequency >>= 1;
+		}
+		accessesSinceAging = 0;
+	}
+
+	synchronized int size() {
+		return entries.size();
+	}
+
+	synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	synchronized long getExpirationCount() {
+		return expirationCount;
+	}
+
+	private static class Entry {
+		private Member member;
+		private long loadedAt;
+		private int frequency;
+
+		private Entry(Member member, long loadedAt) {
+			this.member = member;
+			this.loadedAt = loadedAt;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package hello.jdbc.repository.shard;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 회원 id를 샤드에 배정하는 consistent hash ring (불변)
+ * 샤드마다 virtualNodes 개의 점을 링 위에 찍고, 회원 id의 해시값에서 시계 방향으로 처음 만나는 점의 샤드에 배정한다.
+ * 샤드를 추가하거나 제거해도 새 샤드의 점 바로 앞 구간(약 1/N)의 회원만 다른 샤드로 옮겨진다.
+ */
+public class ConsistentHashRing {
+	private final Set<String> shardNames;
+	private final int virtualNodes;
+	private final TreeMap<Long, String> ring = new TreeMap<>(); // 점의 해시값 -> 샤드 이름
+
+	public ConsistentHashRing(Collection<String> shardNames, int virtualNodes) {
+		if (shardNames.isEmpty()) {
+			throw new IllegalArgumentException("at least one shard is required");
+		}
+		if (virtualNodes < 1) {
+			throw new IllegalArgumentException("virtualNodes must be greater than 0");
+		}
+		this.shardNames = Collections.unmodifiableSet(new LinkedHashSet<>(shardNames));
+		this.virtualNodes = virtualNodes;
+		for (String shardName : this.shardNames) {
+			for (int i = 0; i < virtualNodes; i++) {
+				ring.put(hash(shardName + "#" + i), shardName);
+			}
+		}
+	}
+
+	public String shardFor(String memberId) {
+		return ownerOf(hash(memberId));
+	}
+
+	/**
+	 * 해시값이 속한 구간을 가진 샤드
+	 */
+	public String ownerOf(long hash) {
+		Map.Entry<Long, String> entry = ring.ceilingEntry(hash);
+		return entry == null ? ring.firstEntry().getValue() : entry.getValue();
+	}
+
+	public ConsistentHashRing withShard(String shardName) {
+		Set<String> names = new LinkedHashSet<>(shardNames);
+		names.add(shardName);
+		return new ConsistentHashRing(names, virtualNodes);
+	}
+
+	public ConsistentHashRing withoutShard(String shardName) {
+		Set<String> names = new LinkedHashSet<>(shardNames);
+		names.remove(shardName);
+		return new ConsistentHashRing(names, virtualNodes);
+	}
+
+	public Set<String> getShardNames() {
+		return shardNames;
+	}
+
+	/**
+	 * 링 위의 점, 점 p는 이전 점 다음부터 p까지의 구간을 가진다.
+	 */
+	public NavigableSet<Long> points() {
+		return Collections.unmodifiableNavigableSet(ring.navigableKeySet());
+	}
+
+	/**
+	 * JVM이 달라도 같은 값이 나오도록 String.hashCode() 대신 64bit FNV-1a 해시를 사용하고, 비트를 한 번 더 섞는다.
+	 */
+	public static long hash(String key) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < key.length(); i++) {
+			hash ^= key.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
@@ -0,0 +1,13 @@
+package hello.jdbc.repository.shard;
+
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+
+/**
+ * 여러 샤드에 걸쳐서 원자적으로 실행할 수 없는 작업을 요청한 경우
+ */
+public class CrossShardException extends InvalidDataAccessApiUsageException {
+
+	public CrossShardException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,118 @@
+package hello.jdbc.repository.shard;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
+
+import hello.jdbc.domain.Member;
+
+/**
+ * 샤드 사이에서 member row를 그대로(money, version 포함) 옮기는 JDBC 작업
+ * 트랜잭션이 끝나는 시점(afterCompletion)에도 호출되므로 트랜잭션에 묶인 커넥션을 사용하지 않고,
+ * 항상 dataSource에서 새 커넥션을 얻어 자동 커밋으로 실행한다.
+ */
+class MemberRowCopier {
+
+	/**
+	 * member_id 순서로 afterMemberId 다음 row를 limit 개 조회한다.
+	 */
+	List<Member> page(DataSource dataSource, String afterMemberId, int limit) {
+		String sql = afterMemberId == null
+			? "select member_id, money, version from member order by member_id limit ?"
+			: "select member_id, money, version from member where member_id > ? order by member_id limit ?";
+		return execute(dataSource, sql, con -> {
+			try (PreparedStatement pstmt = con.prepareStatement(sql)) {
+				int index = 1;
+				if (afterMemberId != null) {
+					pstmt.setString(index++, afterMemberId);
+				}
+				pstmt.setInt(index, limit);
+				return toMembers(pstmt);
+			}
+		});
+	}
+
+	List<Member> read(DataSource dataSource, Collection<String> memberIds) {
+		if (memberIds.isEmpty()) {
+			return List.of();
+		}
+		String sql = "select member_id, money, version from member where member_id in ("
+			+ String.join(", ", Collections.nCopies(memberIds.size(), "?")) + ")";
+		return execute(dataSource, sql, con -> {
+			try (PreparedStatement pstmt = con.prepareStatement(sql)) {
+				int index = 1;
+				for (String memberId : memberIds) {
+					pstmt.setString(index++, memberId);
+				}
+				return toMembers(pstmt);
+			}
+		});
+	}
+
+	/**
+	 * row가 없으면 insert, 있으면 덮어쓴다. (H2 merge ... key)
+	 */
+	void merge(DataSource dataSource, Collection<Member> members) {
+		String sql = "merge into member(member_id, money, version) key(member_id) values (?, ?, ?)";
+		batch(dataSource, sql, members, (pstmt, member) -> {
+			pstmt.setString(1, member.getMemberId());
+			pstmt.setInt(2, member.getMoney());
+			pstmt.setLong(3, member.getVersion());
+		});
+	}
+
+	void delete(DataSource dataSource, Collection<String> memberIds) {
+		String sql = "delete from member where member_id = ?";
+		batch(dataSource, sql, memberIds, (pstmt, memberId) -> pstmt.setString(1, memberId));
+	}
+
+	private <T> void batch(DataSource dataSource, String sql, Collection<T> values, ParameterSetter<T> setter) {
+		if (values.isEmpty()) {
+			return;
+		}
+		execute(dataSource, sql, con -> {
+			try (PreparedStatement pstmt = con.prepareStatement(sql)) {
+				for (T value : values) {
+					setter.setValues(pstmt, value);
+					pstmt.addBatch();
+				}
+				return pstmt.executeBatch();
+			}
+		});
+	}
+
+	private List<Member> toMembers(PreparedStatement pstmt) throws SQLException {
+		List<Member> members = new ArrayList<>();
+		try (ResultSet rs = pstmt.executeQuery()) {
+			while (rs.next()) {
+				Member member = new Member(rs.getString("member_id"), rs.getInt("money"));
+				member.setVersion(rs.getLong("version"));
+				members.add(member);
+			}
+		}
+		return members;
+	}
+
+	private <T> T execute(DataSource dataSource, String sql, ConnectionCallback<T> action) {
+		try (Connection con = dataSource.getConnection()) {
+			return action.doInConnection(con);
+		} catch (SQLException e) {
+			throw new SQLErrorCodeSQLExceptionTranslator(dataSource).translate("shard copy", sql, e);
+		}
+	}
+
+	@FunctionalInterface
+	private interface ParameterSetter<T> {
+		void setValues(PreparedStatement pstmt, T value) throws SQLException;
+	}
+}
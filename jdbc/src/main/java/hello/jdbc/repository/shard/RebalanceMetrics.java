@@ -0,0 +1,124 @@
+package hello.jdbc.repository.shard;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 리밸런싱 한 번의 진행 상황
+ * - 진행률: 원자적으로 전환(cutover)된 구간 수 / 옮겨야 할 구간 수
+ * - 처리량: 복사한 row 수 / 경과 시간
+ * - 지연(lag): 원본에 쓰였지만 아직 새 샤드에 반영(dual-write)되지 않은 회원 수와, 쓰기부터 반영까지 걸린 최대 시간
+ */
+public class RebalanceMetrics {
+	private final long startNanos = System.nanoTime();
+	private final AtomicLong finishNanos = new AtomicLong();
+	private final int totalRanges;
+	private final AtomicInteger cutOverRanges = new AtomicInteger();
+	private final LongAdder scannedRows = new LongAdder();
+	private final LongAdder copiedRows = new LongAdder();
+	private final LongAdder deletedRows = new LongAdder();
+	private final LongAdder mirroredWrites = new LongAdder();
+	private final AtomicInteger pendingMirrors = new AtomicInteger();
+	private final LongAccumulator maxMirrorLagNanos = new LongAccumulator(Math::max, 0);
+
+	RebalanceMetrics(int totalRanges) {
+		this.totalRanges = totalRanges;
+	}
+
+	public int getTotalRanges() {
+		return totalRanges;
+	}
+
+	public int getCutOverRanges() {
+		return cutOverRanges.get();
+	}
+
+	/**
+	 * 0.0 ~ 1.0
+	 */
+	public double getProgress() {
+		return totalRanges == 0 ? 1.0 : (double)cutOverRanges.get() / totalRanges;
+	}
+
+	public boolean isFinished() {
+		return finishNanos.get() != 0;
+	}
+
+	public long getScannedRows() {
+		return scannedRows.sum();
+	}
+
+	public long getCopiedRows() {
+		return copiedRows.sum();
+	}
+
+	public long getDeletedRows() {
+		return deletedRows.sum();
+	}
+
+	public long getMirroredWrites() {
+		return mirroredWrites.sum();
+	}
+
+	public int getPendingMirrors() {
+		return pendingMirrors.get();
+	}
+
+	public long getMaxMirrorLagMillis() {
+		return maxMirrorLagNanos.get() / 1_000_000;
+	}
+
+	public long getElapsedMillis() {
+		long end = isFinished() ? finishNanos.get() : System.nanoTime();
+		return (end - startNanos) / 1_000_000;
+	}
+
+	/**
+	 * 초당 복사한 row 수
+	 */
+	public double getCopyThroughput() {
+		long elapsedMillis = getElapsedMillis();
+		return elapsedMillis == 0 ? 0 : getCopiedRows() * 1000.0 / elapsedMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "RebalanceMetrics(progress=" + getCutOverRanges() + "/" + totalRanges
+			+ ", scanned=" + getScannedRows() + ", copied=" + getCopiedRows() + ", deleted=" + getDeletedRows()
+			+ ", throughput=" + String.format("%.1f", getCopyThroughput()) + "rows/s"
+			+ ", mirrored=" + getMirroredWrites() + ", pendingMirrors=" + getPendingMirrors()
+			+ ", maxMirrorLag=" + getMaxMirrorLagMillis() + "ms, elapsed=" + getElapsedMillis() + "ms)";
+	}
+
+	void cutOver() {
+		cutOverRanges.incrementAndGet();
+	}
+
+	void scanned(int rows) {
+		scannedRows.add(rows);
+	}
+
+	void copied(int rows) {
+		copiedRows.add(rows);
+	}
+
+	void deleted(int rows) {
+		deletedRows.add(rows);
+	}
+
+	void mirrorPending() {
+		pendingMirrors.incrementAndGet();
+	}
+
+	void mirrored(long writtenNanos) {
+		pendingMirrors.decrementAndGet();
+		mirroredWrites.increment();
+		maxMirrorLagNanos.accumulate(System.nanoTime() - writtenNanos);
+	}
+
+	void finish() {
+		finishNanos.compareAndSet(0, System.nanoTime());
+	}
+}
@@ -0,0 +1,34 @@
+package hello.jdbc.repository.shard;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 샤드 하나, 샤드마다 자신의 DataSource(커넥션 풀)와 리포지토리, 트랜잭션을 가진다.
+ */
+@Getter
+@ToString(of = "name")
+public class Shard {
+	private final String name;
+	private final DataSource dataSource;
+	private final MemberRepository repository;
+	private final TransactionTemplate txTemplate; // 이 샤드의 DataSource에만 적용되는 트랜잭션
+
+	public Shard(String name, DataSource dataSource) {
+		this(name, dataSource, new MemberRepositoryV5(dataSource));
+	}
+
+	public Shard(String name, DataSource dataSource, MemberRepository repository) {
+		this.name = name;
+		this.dataSource = dataSource;
+		this.repository = repository;
+		this.txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+	}
+}
@@ -0,0 +1,173 @@
+package hello.jdbc.repository.shard;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import hello.jdbc.domain.Member;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 진행 중인 리밸런싱, 링이 from에서 to로 바뀌면서 소유 샤드가 달라지는 해시 구간(Range)들을 가진다.
+ * 구간은 전환(cutover) 전에는 원본 샤드가, 전환 후에는 새 샤드가 소유한다.
+ *
+ * 구간마다 ReadWriteLock을 둔다.
+ * - 쓰기는 읽기 락을 잡고 원본 샤드에 쓴 뒤 같은 회원을 새 샤드에 반영한다. (dual-write)
+ * - 복사와 전환은 쓰기 락을 잡으므로 진행 중인 쓰기가 끝나기를 기다리고, 그동안 그 구간의 새 쓰기는 기다린다.
+ */
+@Slf4j
+class ShardMigration {
+	private static final int STRIPES = 64;
+
+	@Getter
+	private final ConsistentHashRing from;
+	@Getter
+	private final ConsistentHashRing to;
+	private final Map<String, Shard> shards;
+	private final TreeMap<Long, Range> ranges = new TreeMap<>(); // 구간의 끝 -> 구간
+	private final Lock[] stripes = new Lock[STRIPES];
+	private final MemberRowCopier copier = new MemberRowCopier();
+	@Getter
+	private final RebalanceMetrics metrics;
+
+	ShardMigration(ConsistentHashRing from, ConsistentHashRing to, Map<String, Shard> shards) {
+		this.from = from;
+		this.to = to;
+		this.shards = shards;
+
+		// 두 링의 점을 합치면, 이웃한 두 점 사이의 구간은 두 링 각각에서 하나의 샤드가 소유한다.
+		TreeSet<Long> points = new TreeSet<>(from.points());
+		points.addAll(to.points());
+		long previous = points.last();
+		for (long point : points) {
+			Shard source = shards.get(from.ownerOf(point));
+			Shard target = shards.get(to.ownerOf(point));
+			if (source != target) {
+				ranges.put(point, new Range(previous, point, source, target));
+			}
+			previous = point;
+		}
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new ReentrantLock();
+		}
+		this.metrics = new RebalanceMetrics(ranges.size());
+	}
+
+	/**
+	 * 회원이 속한 옮겨야 할 구간, 소유 샤드가 바뀌지 않는 회원이라면 null
+	 */
+	Range rangeOf(String memberId) {
+		long hash = ConsistentHashRing.hash(memberId);
+		Map.Entry<Long, Range> entry = ranges.ceilingEntry(hash);
+		if (entry == null) {
+			entry = ranges.firstEntry();
+		}
+		if (entry == null || !entry.getValue().contains(hash)) {
+			return null;
+		}
+		return entry.getValue();
+	}
+
+	Shard ownerOf(String memberId) {
+		Range range = rangeOf(memberId);
+		if (range == null) {
+			return shards.get(from.shardFor(memberId));
+		}
+		return range.isCutOver() ? range.getTarget() : range.getSource();
+	}
+
+	Collection<Range> getRanges() {
+		return ranges.values();
+	}
+
+	/**
+	 * 원본 샤드에 쓴 회원을 새 샤드에 반영한다, 구간의 읽기 락을 가진 상태에서 호출해야 한다.
+	 * 같은 회원의 반영이 동시에 실행되면 나중에 읽은 값이 먼저 쓰일 수 있으므로 회원별 락으로 순서를 맞춘다.
+	 * 실패하면 전환할 때 다시 반영하도록 기록해둔다.
+	 */
+	void mirror(Range range, String memberId, long writtenNanos) {
+		Lock stripe = stripes[Math.floorMod(memberId.hashCode(), STRIPES)];
+		stripe.lock();
+		try {
+			sync(range, List.of(memberId));
+		} catch (RuntimeException e) {
+			log.warn("mirror failed, retry on cutover. memberId={}, range={}", memberId, range, e);
+			range.unsynced.add(memberId);
+		} finally {
+			stripe.unlock();
+			metrics.mirrored(writtenNanos);
+		}
+	}
+
+	/**
+	 * 원본 샤드의 커밋된 row를 다시 읽어서 새 샤드에 덮어쓰고, 원본에 없는 회원은 새 샤드에서도 삭제한다.
+	 * @return 새 샤드에 쓴 row 수
+	 */
+	int sync(Range range, Collection<String> memberIds) {
+		List<Member> members = copier.read(range.getSource().getDataSource(), memberIds);
+		copier.merge(range.getTarget().getDataSource(), members);
+
+		Set<String> deleted = new HashSet<>(memberIds);
+		members.forEach(member -> deleted.remove(member.getMemberId()));
+		copier.delete(range.getTarget().getDataSource(), deleted);
+		return members.size();
+	}
+
+	/**
+	 * 구간을 새 샤드로 전환한다, 구간의 쓰기 락을 가진 상태에서 호출해야 한다.
+	 */
+	void cutOver(Range range) {
+		if (!range.unsynced.isEmpty()) {
+			sync(range, Set.copyOf(range.unsynced));
+			range.unsynced.clear();
+		}
+		range.cutOver = true;
+		metrics.cutOver();
+	}
+
+	MemberRowCopier getCopier() {
+		return copier;
+	}
+
+	/**
+	 * 해시값 (startExclusive, endInclusive] 구간, start가 end보다 크다면 Long.MAX_VALUE에서 Long.MIN_VALUE로 넘어가는 구간이다.
+	 */
+	@Getter
+	static class Range {
+		private final long startExclusive;
+		private final long endInclusive;
+		private final Shard source;
+		private final Shard target;
+		private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		private final Set<String> unsynced = ConcurrentHashMap.newKeySet();
+		private volatile boolean cutOver;
+
+		Range(long startExclusive, long endInclusive, Shard source, Shard target) {
+			this.startExclusive = startExclusive;
+			this.endInclusive = endInclusive;
+			this.source = source;
+			this.target = target;
+		}
+
+		boolean contains(long hash) {
+			if (startExclusive < endInclusive) {
+				return startExclusive < hash && hash <= endInclusive;
+			}
+			return startExclusive < hash || hash <= endInclusive;
+		}
+
+		@Override
+		public String toString() {
+			return "(" + startExclusive + ", " + endInclusive + "] " + source.getName() + " -> " + target.getName();
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package hello.jdbc.repository.shard;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.Lock;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.async.VirtualThreads;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 서비스를 멈추지 않고 ShardedMemberRepository에 샤드를 추가한다.
+ * 1. 새 링에서 소유 샤드가 바뀌는 해시 구간을 구하고, 그 구간의 쓰기를 원본과 새 샤드에 함께 쓰기 시작한다. (dual-write)
+ * 2. 원본 샤드마다 병렬로 chunkSize 개씩 keyset 스캔하면서 옮겨지는 회원을 구간별 청크로 나누고, 청크를 병렬로 새 샤드에 merge 배치로 복사한다.
+ * 3. 원본 샤드의 스캔이 끝나면 그 샤드의 구간을 하나씩 쓰기 락을 잡고 새 샤드로 전환(cutover)한다.
+ * 4. 전환된 회원을 원본 샤드에서 delete 배치로 삭제한다.
+ * 5. 모든 구간이 전환되면 새 링으로 바꾼다.
+ *
+ * 진행률, 처리량, dual-write 지연은 getMetrics()로 진행 중에 조회할 수 있다.
+ * 실패하면 예외를 던지고 리밸런싱 상태는 그대로 남는다, 이미 전환된 구간은 새 샤드가, 나머지 구간은 원본 샤드가 계속 소유한다.
+ */
+@Slf4j
+public class ShardRebalancer implements AutoCloseable {
+	private final ShardedMemberRepository repository;
+	private final int chunkSize;
+	private final Semaphore parallelism; // 동시에 복사하는 청크 수
+	private final ExecutorService executor = VirtualThreads.newExecutor("ShardRebalancer");
+	private volatile RebalanceMetrics metrics;
+
+	public ShardRebalancer(ShardedMemberRepository repository, int chunkSize, int parallelism) {
+		if (chunkSize < 1 || parallelism < 1) {
+			throw new IllegalArgumentException("chunkSize and parallelism must be greater than 0");
+		}
+		this.repository = repository;
+		this.chunkSize = chunkSize;
+		this.parallelism = new Semaphore(parallelism);
+	}
+
+	/**
+	 * 리밸런싱이 끝날 때까지 기다린다.
+	 */
+	public RebalanceMetrics addShard(Shard shard) {
+		ShardMigration migration = repository.beginMigration(shard);
+		metrics = migration.getMetrics();
+		log.info("rebalance start, shard={}, ranges={}", shard.getName(), migration.getRanges().size());
+
+		Map<Shard, List<ShardMigration.Range>> bySource = new LinkedHashMap<>();
+		migration.getRanges().forEach(range -> bySource.computeIfAbsent(range.getSource(), source -> new ArrayList<>()).add(range));
+
+		List<CompletableFuture<Void>> sources = new ArrayList<>();
+		bySource.forEach((source, ranges) ->
+			sources.add(CompletableFuture.runAsync(() -> moveSource(migration, source, ranges), executor)));
+		join(sources);
+
+		repository.completeMigration(migration);
+		metrics.finish();
+		log.info("rebalance done, shard={}, {}", shard.getName(), metrics);
+		return metrics;
+	}
+
+	/**
+	 * 진행 중이거나 마지막으로 실행한 리밸런싱, 실행한 적이 없다면 null
+	 */
+	public RebalanceMetrics getMetrics() {
+		return metrics;
+	}
+
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+
+	private void moveSource(ShardMigration migration, Shard source, List<ShardMigration.Range> ranges) {
+		MemberRowCopier copier = migration.getCopier();
+
+		// 복사
+		List<CompletableFuture<Void>> chunks = new ArrayList<>();
+		String after = null;
+		do {
+			List<Member> page = copier.page(source.getDataSource(), after, chunkSize);
+			metrics.scanned(page.size());
+			movingByRange(migration, source, page).forEach((range, memberIds) -> chunks.add(copyChunk(migration, range, memberIds)));
+			after = page.size() < chunkSize ? null : page.get(page.size() - 1).getMemberId();
+		} while (after != null);
+		join(chunks);
+
+		// 구간별 전환
+		for (ShardMigration.Range range : ranges) {
+			Lock lock = range.getLock().writeLock();
+			lock.lock();
+			try {
+				migration.cutOver(range);
+			} finally {
+				lock.unlock();
+			}
+		}
+		log.info("cut over source={}, ranges={}", source.getName(), ranges.size());
+
+		// 전환된 회원은 더 이상 원본 샤드에서 읽거나 쓰지 않는다.
+		after = null;
+		do {
+			List<Member> page = copier.page(source.getDataSource(), after, chunkSize);
+			List<String> moved = new ArrayList<>();
+			movingByRange(migration, source, page).values().forEach(moved::addAll);
+			copier.delete(source.getDataSource(), moved);
+			metrics.deleted(moved.size());
+			after = page.size() < chunkSize ? null : page.get(page.size() - 1).getMemberId();
+		} while (after != null);
+	}
+
+	private Map<ShardMigration.Range, List<String>> movingByRange(ShardMigration migration, Shard source, List<Member> page) {
+		Map<ShardMigration.Range, List<String>> byRange = new LinkedHashMap<>();
+		for (Member member : page) {
+			ShardMigration.Range range = migration.rangeOf(member.getMemberId());
+			if (range != null && range.getSource() == source) {
+				byRange.computeIfAbsent(range, r -> new ArrayList<>()).add(member.getMemberId());
+			}
+		}
+		return byRange;
+	}
+
+	/**
+	 * 구간의 쓰기 락을 잡고 원본의 최신 row를 다시 읽어서 복사하므로, 그 사이에 dual-write로 반영된 값을 덮어쓰지 않는다.
+	 */
+	private CompletableFuture<Void> copyChunk(ShardMigration migration, ShardMigration.Range range, List<String> memberIds) {
+		parallelism.acquireUninterruptibly();
+		return CompletableFuture.runAsync(() -> {
+			Lock lock = range.getLock().writeLock();
+			lock.lock();
+			try {
+				metrics.copied(migration.sync(range, memberIds));
+			} finally {
+				lock.unlock();
+				parallelism.release();
+			}
+		}, executor);
+	}
+
+	private void join(List<CompletableFuture<Void>> futures) {
+		try {
+			CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+		} catch (CompletionException e) {
+			log.error("rebalance failed, {}", metrics, e.getCause());
+			throw e.getCause() instanceof RuntimeException runtime ? runtime : e;
+		}
+	}
+}
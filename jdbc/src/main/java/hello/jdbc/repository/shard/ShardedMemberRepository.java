@@ -0,0 +1,535 @@
+package hello.jdbc.repository.shard;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberPage;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.async.VirtualThreads;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * member_id를 consistent hash로 N개의 샤드(DataSource)에 나누어 저장하는 MemberRepository
+ * 회원 한 명에 대한 작업은 그 회원의 샤드 리포지토리에 그대로 위임한다.
+ * 여러 샤드에 걸친 조회(findAllByIds, findPage)와 배치(saveAll, updateAll)는 샤드별 작업으로 나누어 병렬로 실행하고 결과를 합친다. (scatter-gather)
+ *
+ * 샤드마다 DataSource가 다르므로 하나의 트랜잭션은 하나의 샤드에만 적용된다.
+ * 병렬 작업은 다른 스레드에서 실행되므로 호출한 스레드의 트랜잭션에 참여하지 않고, 작업이 한 샤드에만 해당할 때는 호출한 스레드에서 실행한다.
+ * 여러 샤드에 걸친 배치는 샤드 단위로 커밋되므로 한 샤드가 실패해도 다른 샤드의 변경은 남는다.
+ *
+ * ShardRebalancer가 샤드를 추가하는 동안에는 옮겨지는 구간의 쓰기를 원본 샤드에 쓰고 새 샤드에도 반영한다. (ShardMigration)
+ * 쓰기는 토폴로지 읽기 락을 잡으므로 리밸런싱은 진행 중인 쓰기가 끝난 뒤 시작한다.
+ * 트랜잭션 안의 쓰기는 락을 트랜잭션이 끝날 때까지 가지고 있다가, 커밋된 row를 새 샤드에 반영한 뒤 해제한다.
+ * 구간 락은 구간의 끝 순서로 잡는다, 이미 잡은 구간보다 앞선 구간의 락은 기다리는 복사/전환보다 먼저 잡는다. (TransactionLocks)
+ */
+@Slf4j
+public class ShardedMemberRepository implements MemberRepository, AutoCloseable {
+	public static final int DEFAULT_VIRTUAL_NODES = 128;
+	private static final long TOPOLOGY_ORDER = Long.MIN_VALUE; // 구간 락보다 먼저 잡는다.
+	private static final long RETRY_OUT_OF_ORDER_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+	private final ExecutorService executor;
+	private final ReentrantReadWriteLock topologyLock = new ReentrantReadWriteLock();
+	private volatile Map<String, Shard> shards;
+	private volatile ConsistentHashRing ring;
+	private volatile ShardMigration migration; // 리밸런싱 중이 아니라면 null
+
+	public ShardedMemberRepository(List<Shard> shards) {
+		this(shards, DEFAULT_VIRTUAL_NODES, VirtualThreads.newExecutor("ShardedMemberRepository"));
+	}
+
+	public ShardedMemberRepository(List<Shard> shards, int virtualNodes, ExecutorService executor) {
+		Map<String, Shard> byName = new LinkedHashMap<>();
+		for (Shard shard : shards) {
+			if (byName.putIfAbsent(shard.getName(), shard) != null) {
+				throw new IllegalArgumentException("duplicate shard name=" + shard.getName());
+			}
+		}
+		this.shards = Collections.unmodifiableMap(byName);
+		this.ring = new ConsistentHashRing(byName.keySet(), virtualNodes);
+		this.executor = executor;
+	}
+
+	public Shard shardFor(String memberId) {
+		ShardMigration migration = this.migration;
+		if (migration != null) {
+			return migration.ownerOf(memberId);
+		}
+		return shards.get(ring.shardFor(memberId));
+	}
+
+	public boolean isSameShard(String memberId, String otherMemberId) {
+		return shardFor(memberId) == shardFor(otherMemberId);
+	}
+
+	/**
+	 * 트랜잭션이 끝날 때까지 회원들의 소유 샤드가 바뀌지 않도록 토폴로지 락과 구간 락을 구간의 끝 순서로 잡는다.
+	 * 트랜잭션 안에서 호출해야 한다, 트랜잭션을 시작하기 전에 shardFor()로 정한 샤드와 다르다면 그 사이에 전환된 것이다.
+	 * @return 회원 id -> 소유 샤드 (요청한 순서)
+	 */
+	public Map<String, Shard> lockShards(Collection<String> memberIds) {
+		TransactionLocks locks = transactionLocks();
+		if (locks == null) {
+			throw new IllegalStateException("lockShards() requires an active transaction");
+		}
+		locks.hold(topologyLock.readLock(), TOPOLOGY_ORDER);
+
+		ShardMigration migration = this.migration;
+		if (migration != null) {
+			memberIds.stream()
+				.map(migration::rangeOf)
+				.filter(Objects::nonNull)
+				.distinct()
+				.sorted(Comparator.comparingLong(ShardMigration.Range::getEndInclusive))
+				.forEach(range -> locks.hold(range.getLock().readLock(), range.getEndInclusive()));
+		}
+
+		Map<String, Shard> owners = new LinkedHashMap<>();
+		memberIds.forEach(memberId -> owners.put(memberId, shardFor(memberId)));
+		return owners;
+	}
+
+	public List<Shard> getShards() {
+		return List.copyOf(shards.values());
+	}
+
+	@Override
+	public Member save(Member member) {
+		return write(member.getMemberId(), repository -> repository.save(member));
+	}
+
+	@Override
+	public Member findById(String memberId) {
+		return repositoryFor(memberId).findById(memberId);
+	}
+
+	@Override
+	public void update(String memberId, int money) {
+		write(memberId, repository -> {
+			repository.update(memberId, money);
+			return null;
+		});
+	}
+
+	@Override
+	public void delete(String memberId) {
+		write(memberId, repository -> {
+			repository.delete(memberId);
+			return null;
+		});
+	}
+
+	@Override
+	public int saveAll(Collection<Member> members, int batchSize) {
+		return writeAll(members, (repository, shardMembers) -> repository.saveAll(shardMembers, batchSize));
+	}
+
+	@Override
+	public Map<String, Member> findAllByIds(Collection<String> memberIds) {
+		Map<Shard, List<String>> byShard = groupByShard(memberIds, Function.identity());
+		Map<String, Member> found = new HashMap<>();
+		scatter(byShard, (shard, shardIds) -> shard.getRepository().findAllByIds(shardIds)).values().forEach(found::putAll);
+		return inRequestOrder(memberIds, found);
+	}
+
+	/**
+	 * 락은 하나의 샤드 트랜잭션 안에서만 걸 수 있으므로, 회원들이 여러 샤드에 나뉘어 있다면 CrossShardException을 던진다.
+	 * row 락을 가진 트랜잭션이 토폴로지 락을 기다리지 않도록 쓰기와 같이 토폴로지 읽기 락을 먼저 잡는다.
+	 */
+	@Override
+	public Map<String, Member> findAllByIdsForUpdate(Collection<String> memberIds) {
+		Lock topology = topologyLock.readLock();
+		acquire(topology, TOPOLOGY_ORDER);
+		try {
+			Map<Shard, List<String>> byShard = groupByShard(memberIds, Function.identity());
+			if (byShard.size() > 1) {
+				throw new CrossShardException("cannot lock members on different shards " + byShard.keySet());
+			}
+			if (byShard.isEmpty()) {
+				return new LinkedHashMap<>();
+			}
+			Map.Entry<Shard, List<String>> entry = byShard.entrySet().iterator().next();
+			return inRequestOrder(memberIds, entry.getKey().getRepository().findAllByIdsForUpdate(entry.getValue()));
+		} finally {
+			release(topology);
+		}
+	}
+
+	/**
+	 * 다른 MemberRepository 구현과 같이 요청한 순서의 LinkedHashMap으로 반환한다.
+	 */
+	private Map<String, Member> inRequestOrder(Collection<String> memberIds, Map<String, Member> found) {
+		Map<String, Member> result = new LinkedHashMap<>();
+		for (String memberId : memberIds) {
+			Member member = found.get(memberId);
+			if (member != null) {
+				result.putIfAbsent(memberId, member);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 모든 샤드에서 afterMemberId 다음 limit 개씩 조회한 뒤 member_id 순서로 합쳐서 앞의 limit 개를 반환한다.
+	 * 리밸런싱 중에는 같은 회원이 두 샤드에 있을 수 있으므로 소유 샤드의 row만 사용한다.
+	 * 다음 페이지가 있는 샤드 중 가장 작은 마지막 member_id까지만 모든 샤드의 row가 모였으므로,
+	 * 거기까지 모은 row가 limit 보다 적다면 그 다음부터 다시 조회한다.
+	 */
+	@Override
+	public MemberPage findPage(String afterMemberId, int limit) {
+		List<Member> rows = new ArrayList<>();
+		String after = afterMemberId;
+		while (true) {
+			String from = after;
+			Map<Shard, MemberPage> pages = scatterAll(shard -> shard.getRepository().findPage(from, limit));
+
+			String complete = null; // 모든 샤드의 row가 모인 마지막 member_id, null 이라면 끝까지 모였다.
+			for (MemberPage page : pages.values()) {
+				if (page.hasNext() && (complete == null || page.getNextAfterMemberId().compareTo(complete) < 0)) {
+					complete = page.getNextAfterMemberId();
+				}
+			}
+			List<Member> round = new ArrayList<>();
+			for (Map.Entry<Shard, MemberPage> entry : pages.entrySet()) {
+				for (Member member : entry.getValue().getMembers()) {
+					if ((complete == null || member.getMemberId().compareTo(complete) <= 0)
+						&& shardFor(member.getMemberId()) == entry.getKey()) {
+						round.add(member);
+					}
+				}
+			}
+			round.sort(Comparator.comparing(Member::getMemberId));
+			rows.addAll(round);
+
+			if (rows.size() > limit) {
+				List<Member> members = List.copyOf(rows.subList(0, limit));
+				return new MemberPage(members, members.get(limit - 1).getMemberId());
+			}
+			if (complete == null) {
+				return new MemberPage(List.copyOf(rows), null);
+			}
+			after = complete;
+		}
+	}
+
+	/**
+	 * 모든 샤드를 병렬로 pageSize 개씩 keyset 페이지네이션 하면서 회원마다 action을 호출한다.
+	 * action은 여러 스레드에서 동시에 호출되고, 샤드 안에서는 member_id 순서이지만 샤드 사이의 순서는 보장하지 않는다.
+	 * @return 조회한 회원 수
+	 */
+	public long forEachMember(int pageSize, Consumer<Member> action) {
+		return scatterAll(shard -> scanShard(shard, pageSize, action))
+			.values().stream().mapToLong(Long::longValue).sum();
+	}
+
+	private long scanShard(Shard shard, int pageSize, Consumer<Member> action) {
+		long count = 0;
+		String after = null;
+		do {
+			MemberPage page = shard.getRepository().findPage(after, pageSize);
+			for (Member member : page.getMembers()) {
+				if (shardFor(member.getMemberId()) == shard) {
+					action.accept(member);
+					count++;
+				}
+			}
+			after = page.getNextAfterMemberId();
+		} while (after != null);
+		return count;
+	}
+
+	@Override
+	public boolean addMoney(String memberId, int delta) {
+		return write(memberId, repository -> repository.addMoney(memberId, delta));
+	}
+
+	@Override
+	public boolean updateWithVersion(String memberId, int money, long expectedVersion) {
+		return write(memberId, repository -> repository.updateWithVersion(memberId, money, expectedVersion));
+	}
+
+	@Override
+	public int updateAll(Collection<Member> members) {
+		return writeAll(members, MemberRepository::updateAll);
+	}
+
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+
+	/**
+	 * shard를 추가하는 리밸런싱을 시작한다, 진행 중인 쓰기가 모두 끝난 뒤 옮겨지는 구간의 dual-write가 시작된다.
+	 */
+	ShardMigration beginMigration(Shard shard) {
+		Lock topology = topologyLock.writeLock();
+		topology.lock();
+		try {
+			if (migration != null) {
+				throw new IllegalStateException("another migration is in progress");
+			}
+			if (shards.containsKey(shard.getName())) {
+				throw new IllegalArgumentException("duplicate shard name=" + shard.getName());
+			}
+			Map<String, Shard> grown = new LinkedHashMap<>(shards);
+			grown.put(shard.getName(), shard);
+			ShardMigration started = new ShardMigration(ring, ring.withShard(shard.getName()), grown);
+			shards = Collections.unmodifiableMap(grown);
+			migration = started;
+			return started;
+		} finally {
+			topology.unlock();
+		}
+	}
+
+	/**
+	 * 모든 구간이 전환된 뒤 새 링으로 바꾼다.
+	 */
+	void completeMigration(ShardMigration completed) {
+		Lock topology = topologyLock.writeLock();
+		topology.lock();
+		try {
+			ring = completed.getTo();
+			migration = null;
+		} finally {
+			topology.unlock();
+		}
+	}
+
+	private MemberRepository repositoryFor(String memberId) {
+		return shardFor(memberId).getRepository();
+	}
+
+	/**
+	 * 회원 한 명을 변경한다, 옮겨지는 중인 구간이라면 원본 샤드에 쓰고 새 샤드에 반영한다.
+	 */
+	private <T> T write(String memberId, Function<MemberRepository, T> operation) {
+		Lock topology = topologyLock.readLock();
+		acquire(topology, TOPOLOGY_ORDER);
+		try {
+			ShardMigration migration = this.migration;
+			ShardMigration.Range range = migration == null ? null : migration.rangeOf(memberId);
+			if (range == null) {
+				return operation.apply(repositoryFor(memberId));
+			}
+
+			Lock rangeLock = range.getLock().readLock();
+			acquire(rangeLock, range.getEndInclusive());
+			try {
+				if (range.isCutOver()) {
+					return operation.apply(range.getTarget().getRepository());
+				}
+				long writtenNanos = System.nanoTime();
+				T result = operation.apply(range.getSource().getRepository());
+				TransactionLocks locks = transactionLocks();
+				if (locks == null) {
+					migration.getMetrics().mirrorPending();
+					migration.mirror(range, memberId, writtenNanos);
+				} else {
+					locks.mirrorAfterCompletion(migration, range, memberId, writtenNanos);
+				}
+				return result;
+			} finally {
+				release(rangeLock);
+			}
+		} finally {
+			release(topology);
+		}
+	}
+
+	/**
+	 * 여러 회원을 샤드별 배치로 변경한다, 옮겨지는 중인 구간의 회원은 write()로 한 명씩 변경한다.
+	 */
+	private int writeAll(Collection<Member> members, BiFunction<MemberRepository, List<Member>, Integer> batch) {
+		Lock topology = topologyLock.readLock();
+		acquire(topology, TOPOLOGY_ORDER);
+		try {
+			ShardMigration migration = this.migration;
+			List<Member> moving = new ArrayList<>();
+			Map<Shard, List<Member>> byShard = new LinkedHashMap<>();
+			for (Member member : members) {
+				if (migration != null && migration.rangeOf(member.getMemberId()) != null) {
+					moving.add(member);
+				} else {
+					byShard.computeIfAbsent(shardFor(member.getMemberId()), shard -> new ArrayList<>()).add(member);
+				}
+			}
+
+			int rows = scatter(byShard, (shard, shardMembers) -> batch.apply(shard.getRepository(), shardMembers))
+				.values().stream().mapToInt(Integer::intValue).sum();
+			for (Member member : moving) {
+				rows += write(member.getMemberId(), repository -> batch.apply(repository, List.of(member)));
+			}
+			return rows;
+		} finally {
+			release(topology);
+		}
+	}
+
+	private <T> Map<Shard, List<T>> groupByShard(Collection<T> values, Function<T, String> memberIdOf) {
+		Map<Shard, List<T>> byShard = new LinkedHashMap<>();
+		for (T value : values) {
+			byShard.computeIfAbsent(shardFor(memberIdOf.apply(value)), shard -> new ArrayList<>()).add(value);
+		}
+		return byShard;
+	}
+
+	private <R> Map<Shard, R> scatterAll(Function<Shard, R> action) {
+		Map<Shard, Shard> everyShard = new LinkedHashMap<>();
+		shards.values().forEach(shard -> everyShard.put(shard, shard));
+		return scatter(everyShard, (shard, ignored) -> action.apply(shard));
+	}
+
+	/**
+	 * 샤드별 작업을 병렬로 실행하고 모두 끝날 때까지 기다린다, 작업이 하나라면 호출한 스레드에서 실행한다.
+	 * 실패한 작업이 있다면 나머지 작업이 끝난 뒤 처음 실패한 예외를 그대로 던진다.
+	 */
+	private <T, R> Map<Shard, R> scatter(Map<Shard, T> inputs, BiFunction<Shard, T, R> action) {
+		Map<Shard, R> results = new LinkedHashMap<>();
+		if (inputs.size() == 1) {
+			Map.Entry<Shard, T> entry = inputs.entrySet().iterator().next();
+			results.put(entry.getKey(), action.apply(entry.getKey(), entry.getValue()));
+			return results;
+		}
+
+		Map<Shard, CompletableFuture<R>> futures = new LinkedHashMap<>();
+		inputs.forEach((shard, input) ->
+			futures.put(shard, CompletableFuture.supplyAsync(() -> action.apply(shard, input), executor)));
+
+		RuntimeException failure = null;
+		for (Map.Entry<Shard, CompletableFuture<R>> entry : futures.entrySet()) {
+			try {
+				results.put(entry.getKey(), entry.getValue().join());
+			} catch (CompletionException e) {
+				log.warn("shard task failed, shard={}", entry.getKey().getName(), e.getCause());
+				if (failure == null) {
+					failure = e.getCause() instanceof RuntimeException runtime ? runtime : e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return results;
+	}
+
+	/**
+	 * 트랜잭션 밖이라면 락을 바로 잡고, 트랜잭션 안이라면 트랜잭션마다 한 번만 잡고 트랜잭션이 끝날 때 해제한다.
+	 * @param order 트랜잭션 안에서 락을 잡는 순서 (토폴로지 락이 먼저, 구간 락은 구간의 끝 순서)
+	 */
+	private void acquire(Lock lock, long order) {
+		TransactionLocks locks = transactionLocks();
+		if (locks == null) {
+			lock.lock();
+		} else {
+			locks.hold(lock, order);
+		}
+	}
+
+	private void release(Lock lock) {
+		if (TransactionSynchronizationManager.getResource(this) == null) {
+			lock.unlock();
+		}
+	}
+
+	private TransactionLocks transactionLocks() {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()
+			|| !TransactionSynchronizationManager.isActualTransactionActive()) {
+			return null;
+		}
+
+		TransactionLocks locks = (TransactionLocks)TransactionSynchronizationManager.getResource(this);
+		if (locks == null) {
+			locks = new TransactionLocks();
+			TransactionSynchronizationManager.bindResource(this, locks);
+			TransactionSynchronizationManager.registerSynchronization(locks);
+		}
+		return locks;
+	}
+
+	/**
+	 * 트랜잭션이 잡은 락과 새 샤드에 반영할 회원
+	 * 커밋되지 않은 변경을 새 샤드에 옮기지 않도록, 트랜잭션이 끝난 뒤 원본의 커밋된 row를 다시 읽어서 반영하고 락을 해제한다.
+	 */
+	private class TransactionLocks implements TransactionSynchronization {
+		private final Set<Lock> locks = new LinkedHashSet<>();
+		private final Map<String, PendingMirror> mirrors = new LinkedHashMap<>();
+		private long lastOrder = Long.MIN_VALUE;
+		private boolean holding;
+
+		/**
+		 * 락은 order 순서로 잡는다. 두 트랜잭션이 구간 A, B를 반대 순서로 잡으면서 두 구간에 복사/전환(쓰기 락)이 기다리고 있다면,
+		 * 기다리는 쓰기 락이 새 읽기 락을 막으므로 서로를 기다리게 된다.
+		 * 이미 잡은 락보다 앞선 락은 기다리는 쓰기 락을 무시하는 tryLock()으로 잡고, 쓰기 락을 가진 복사/전환은
+		 * 다른 락을 기다리지 않으므로 끝날 때까지 잠깐씩 다시 시도한다.
+		 */
+		void hold(Lock lock, long order) {
+			if (!locks.add(lock)) {
+				return;
+			}
+			if (!holding || order > lastOrder) {
+				lock.lock();
+				lastOrder = order;
+				holding = true;
+				return;
+			}
+			while (!lock.tryLock()) {
+				LockSupport.parkNanos(RETRY_OUT_OF_ORDER_NANOS);
+			}
+		}
+
+		void mirrorAfterCompletion(ShardMigration migration, ShardMigration.Range range, String memberId, long writtenNanos) {
+			if (mirrors.putIfAbsent(memberId, new PendingMirror(migration, range, writtenNanos)) == null) {
+				migration.getMetrics().mirrorPending();
+			}
+		}
+
+		@Override
+		public void suspend() {
+			TransactionSynchronizationManager.unbindResource(ShardedMemberRepository.this);
+		}
+
+		@Override
+		public void resume() {
+			TransactionSynchronizationManager.bindResource(ShardedMemberRepository.this, this);
+		}
+
+		@Override
+		public void afterCompletion(int status) {
+			TransactionSynchronizationManager.unbindResourceIfPossible(ShardedMemberRepository.this);
+			try {
+				mirrors.forEach((memberId, pending) -> pending.migration.mirror(pending.range, memberId, pending.writtenNanos));
+			} finally {
+				List<Lock> held = new ArrayList<>(locks);
+				Collections.reverse(held);
+				held.forEach(Lock::unlock);
+			}
+		}
+	}
+
+	private record PendingMirror(ShardMigration migration, ShardMigration.Range range, long writtenNanos) {
+	}
+}
@@ -1,6 +1,7 @@
 package hello.jdbc.service;
 
 import java.sql.SQLException;
+import java.util.NoSuchElementException;
 
 import org.springframework.transaction.annotation.Transactional;
 
@@ -22,6 +23,23 @@ public class MemberServiceV3_3 {
 		bizLogic(fromId, toId, money);
 	}
 
+	/**
+	 * 조회 없이 증감 쿼리(addMoney)로 계좌이체
+	 * 회원당 1번의 쿼리만 실행하고, 동시에 같은 계좌로 이체하더라도 변경 내용을 잃어버리지 않는다.
+	 */
+	public void accountTransferAtomic(String fromId, String toId, int money) throws SQLException {
+		// 계좌이체 출금, 잔액이 부족하면 변경되지 않는다.
+		if (!memberRepository.addMoney(fromId, -money)) {
+			throw new IllegalStateException("출금 실패, 회원이 없거나 잔액이 부족합니다. memberId=" + fromId);
+		}
+
+		// 입금
+		validation(toId);
+		if (!memberRepository.addMoney(toId, money)) {
+			throw new NoSuchElementException("member not found member id=" + toId);
+		}
+	}
+
 	private void bizLogic(String fromId, String toId, int money) throws SQLException {
 		Member fromMember = memberRepository.findById(fromId);
 		Member toMember = memberRepository.findById(toId);
@@ -35,7 +53,11 @@ public class MemberServiceV3_3 {
 	}
 
 	private void validation(Member toMember) {
-		if(toMember.getMemberId().equals("ex")){
+		validation(toMember.getMemberId());
+	}
+
+	private void validation(String toId) {
+		if(toId.equals("ex")){
 			throw new IllegalStateException("이체 중 예외 발생");
 		}
 	}
@@ -1,7 +1,11 @@
 package hello.jdbc.service;
 
 import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.transaction.annotation.Transactional;
 
 import hello.jdbc.domain.Member;
@@ -24,6 +28,77 @@ public class MemberServiceV4 {
 		bizLogic(fromId, toId, money);
 	}
 
+	/**
+	 * 조회 없이 증감 쿼리(addMoney)로 계좌이체
+	 * 회원당 1번의 쿼리만 실행하고, 동시에 같은 계좌로 이체하더라도 변경 내용을 잃어버리지 않는다.
+	 */
+	public void accountTransferAtomic(String fromId, String toId, int money) {
+		// 계좌이체 출금, 잔액이 부족하면 변경되지 않는다.
+		if (!memberRepository.addMoney(fromId, -money)) {
+			throw new IllegalStateException("출금 실패, 회원이 없거나 잔액이 부족합니다. memberId=" + fromId);
+		}
+
+		// 입금
+		validation(toId);
+		if (!memberRepository.addMoney(toId, money)) {
+			throw new NoSuchElementException("member not found member id=" + toId);
+		}
+	}
+
+	/**
+	 * 두 회원의 row를 한 번의 select ... for update로 잠근 뒤 계좌이체 (비관적 락)
+	 * 호출 순서(from, to)와 상관없이 항상 member_id 순서로 락을 획득하므로,
+	 * A->B, B->A 이체가 동시에 실행되더라도 서로의 락을 기다리는 교착 상태(deadlock)가 발생하지 않는다.
+	 */
+	public void accountTransferWithLock(String fromId, String toId, int money) {
+		// 같은 회원이라면 두 번 조회한 같은 잔액으로 출금과 입금을 차례로 덮어쓰므로, 잔액이 money만큼 늘어난다.
+		if (fromId.equals(toId)) {
+			throw new IllegalArgumentException("cannot transfer to the same member, memberId=" + fromId);
+		}
+		Map<String, Member> members = memberRepository.findAllByIdsForUpdate(List.of(fromId, toId));
+		Member fromMember = getLockedMember(members, fromId);
+		Member toMember = getLockedMember(members, toId);
+
+		// 계좌이체 출금
+		memberRepository.update(fromId, fromMember.getMoney() - money);
+
+		// 입금
+		validation(toMember);
+		memberRepository.update(toId, toMember.getMoney() + money);
+	}
+
+	private Member getLockedMember(Map<String, Member> members, String memberId) {
+		Member member = members.get(memberId);
+		if (member == null) {
+			throw new NoSuchElementException("member not found member id=" + memberId);
+		}
+		return member;
+	}
+
+	/**
+	 * 락 없이 version을 비교하며 계좌이체 (낙관적 락)
+	 * 조회 이후 다른 트랜잭션이 먼저 변경했다면 OptimisticLockingFailureException을 던지고 트랜잭션은 롤백된다.
+	 * 충돌이 드문 경우 락을 기다리지 않으므로 처리량이 높다, 재시도는 OptimisticLockRetryExecutor로 트랜잭션 바깥에서 수행한다.
+	 */
+	public void accountTransferOptimistic(String fromId, String toId, int money) {
+		Member fromMember = memberRepository.findById(fromId);
+		Member toMember = memberRepository.findById(toId);
+
+		// 계좌이체 출금
+		updateWithVersion(fromMember, fromMember.getMoney() - money);
+
+		// 입금
+		validation(toMember);
+		updateWithVersion(toMember, toMember.getMoney() + money);
+	}
+
+	private void updateWithVersion(Member member, int money) {
+		if (!memberRepository.updateWithVersion(member.getMemberId(), money, member.getVersion())) {
+			throw new OptimisticLockingFailureException(
+				"member was updated by another transaction, memberId=" + member.getMemberId() + ", version=" + member.getVersion());
+		}
+	}
+
 	private void bizLogic(String fromId, String toId, int money) {
 		Member fromMember = memberRepository.findById(fromId);
 		Member toMember = memberRepository.findById(toId);
@@ -37,7 +112,11 @@ public class MemberServiceV4 {
 	}
 
 	private void validation(Member toMember) {
-		if(toMember.getMemberId().equals("ex")){
+		validation(toMember.getMemberId());
+	}
+
+	private void validation(String toId) {
+		if(toId.equals("ex")){
 			throw new IllegalStateException("이체 중 예외 발생");
 		}
 	}
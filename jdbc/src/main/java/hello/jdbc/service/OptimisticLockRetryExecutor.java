@@ -0,0 +1,82 @@
+package hello.jdbc.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 낙관적 락 충돌(OptimisticLockingFailureException)이 발생하면 잠시 기다렸다가 다시 실행한다.
+ * 재시도마다 새로운 트랜잭션이 시작되어야 하므로 반드시 트랜잭션 바깥에서 트랜잭션 프록시(@Transactional)를 호출해야 한다.
+ * 기다리는 시간은 지수적으로 늘어나고(exponential backoff), 충돌한 스레드끼리 다시 충돌하지 않도록 0 ~ 상한 사이의 임의의 값을 사용한다(full jitter).
+ */
+@Slf4j
+public class OptimisticLockRetryExecutor {
+	private final int maxAttempts;
+	private final long initialBackoffMillis;
+	private final long maxBackoffMillis;
+
+	private final LongAdder conflicts = new LongAdder(); // 발생한 충돌 수
+	private final LongAdder retries = new LongAdder(); // 재시도한 수
+	private final LongAdder exhausted = new LongAdder(); // 재시도를 모두 소진하고 실패한 수
+
+	public OptimisticLockRetryExecutor(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("maxAttempts must be greater than 0");
+		}
+		this.maxAttempts = maxAttempts;
+		this.initialBackoffMillis = initialBackoffMillis;
+		this.maxBackoffMillis = maxBackoffMillis;
+	}
+
+	public void run(Runnable action) {
+		execute(() -> {
+			action.run();
+			return null;
+		});
+	}
+
+	public <T> T execute(Supplier<T> action) {
+		for (int attempt = 1; ; attempt++) {
+			try {
+				return action.get();
+			} catch (OptimisticLockingFailureException e) {
+				conflicts.increment();
+				if (attempt >= maxAttempts) {
+					exhausted.increment();
+					throw e;
+				}
+
+				log.info("optimistic lock conflict, attempt={}, message={}", attempt, e.getMessage());
+				retries.increment();
+				backoff(attempt);
+			}
+		}
+	}
+
+	private void backoff(int attempt) {
+		long ceiling = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 30));
+		long sleepMillis = ThreadLocalRandom.current().nextLong(ceiling + 1);
+		try {
+			Thread.sleep(sleepMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted during retry backoff", e);
+		}
+	}
+
+	public long getConflictCount() {
+		return conflicts.sum();
+	}
+
+	public long getRetryCount() {
+		return retries.sum();
+	}
+
+	public long getExhaustedCount() {
+		return exhausted.sum();
+	}
+}
@@ -0,0 +1,130 @@
+package hello.jdbc.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+import hello.jdbc.repository.shard.CrossShardException;
+import hello.jdbc.repository.shard.Shard;
+import hello.jdbc.repository.shard.ShardedMemberRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 샤딩된 회원의 계좌이체
+ * 같은 샤드의 회원끼리는 그 샤드의 트랜잭션 하나로 이체한다.
+ * 다른 샤드의 회원끼리는 하나의 트랜잭션으로 묶을 수 없으므로 바로 실패하거나(accountTransfer),
+ * 출금과 입금을 각 샤드의 트랜잭션으로 나누어 실행하고 입금이 실패하면 출금을 되돌린다. (accountTransferTwoStep)
+ *
+ * 변경은 모두 ShardedMemberRepository를 통해서 실행하므로 리밸런싱 중이라면 새 샤드에도 반영된다.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ShardedMemberService {
+	private static final Object OWNER_CHANGED = new Object();
+
+	private final ShardedMemberRepository memberRepository;
+
+	/**
+	 * 두 회원이 다른 샤드에 있다면 아무것도 변경하지 않고 CrossShardException을 던진다.
+	 */
+	public void accountTransfer(String fromId, String toId, int money) {
+		inShardTransaction(List.of(fromId, toId), () -> {
+			withdraw(fromId, money);
+			deposit(toId, money);
+			return null;
+		});
+	}
+
+	/**
+	 * 같은 샤드라면 accountTransfer()와 같고, 다른 샤드라면 두 단계로 이체한다.
+	 * 1. 출금 샤드의 트랜잭션으로 출금하고 커밋한다.
+	 * 2. 입금 샤드의 트랜잭션으로 입금한다, 실패하면 출금 샤드의 새 트랜잭션으로 출금액을 되돌리고(보상) 원래 예외를 던진다.
+	 * 1과 2 사이에는 출금된 금액이 어느 회원에게도 없는 상태가 잠시 보인다.
+	 */
+	public void accountTransferTwoStep(String fromId, String toId, int money) {
+		if (memberRepository.isSameShard(fromId, toId)) {
+			accountTransfer(fromId, toId, money);
+			return;
+		}
+
+		inShardTransaction(List.of(fromId), () -> {
+			withdraw(fromId, money);
+			return null;
+		});
+		try {
+			inShardTransaction(List.of(toId), () -> {
+				deposit(toId, money);
+				return null;
+			});
+		} catch (RuntimeException e) {
+			log.warn("deposit failed, compensating withdraw. from={}, to={}, money={}", fromId, toId, money);
+			compensate(fromId, money, e);
+			throw e;
+		}
+	}
+
+	private void compensate(String fromId, int money, RuntimeException cause) {
+		try {
+			Boolean restored = inShardTransaction(List.of(fromId), () -> memberRepository.addMoney(fromId, money));
+			if (!Boolean.TRUE.equals(restored)) {
+				throw new IllegalStateException("보상 실패, 회원이 없습니다. memberId=" + fromId);
+			}
+		} catch (RuntimeException e) {
+			// 출금만 반영된 상태로 남으므로 수동으로 처리해야 한다.
+			log.error("compensation failed, from={}, money={}", fromId, money, e);
+			cause.addSuppressed(e);
+		}
+	}
+
+	/**
+	 * 회원들을 소유한 샤드의 트랜잭션으로 action을 실행한다, 회원들이 다른 샤드에 있다면 CrossShardException을 던진다.
+	 * 샤드를 정한 뒤 트랜잭션에서 소유 샤드를 고정하기 전에 리밸런싱으로 전환되었다면, 아무것도 변경하지 않고 새 샤드에서 다시 실행한다.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T inShardTransaction(List<String> memberIds, Supplier<T> action) {
+		while (true) {
+			Shard shard = memberRepository.shardFor(memberIds.get(0));
+			for (String memberId : memberIds) {
+				Shard owner = memberRepository.shardFor(memberId);
+				if (owner != shard) {
+					throw new CrossShardException("cannot transfer between shards, " + memberIds.get(0) + "(" + shard.getName()
+						+ "), " + memberId + "(" + owner.getName() + ")");
+				}
+			}
+
+			Object result = shard.getTxTemplate().execute(status -> {
+				Map<String, Shard> owners = memberRepository.lockShards(memberIds);
+				if (owners.values().stream().anyMatch(owner -> owner != shard)) {
+					return OWNER_CHANGED;
+				}
+				return action.get();
+			});
+			if (result != OWNER_CHANGED) {
+				return (T)result;
+			}
+			log.info("owner shard changed during rebalance, retry. memberIds={}", memberIds);
+		}
+	}
+
+	private void withdraw(String fromId, int money) {
+		// 계좌이체 출금, 잔액이 부족하면 변경되지 않는다.
+		if (!memberRepository.addMoney(fromId, -money)) {
+			throw new IllegalStateException("출금 실패, 회원이 없거나 잔액이 부족합니다. memberId=" + fromId);
+		}
+	}
+
+	private void deposit(String toId, int money) {
+		validation(toId);
+		if (!memberRepository.addMoney(toId, money)) {
+			throw new NoSuchElementException("member not found member id=" + toId);
+		}
+	}
+
+	private void validation(String toId) {
+		if (toId.equals("ex")) {
+			throw new IllegalStateException("이체 중 예외 발생");
+		}
+	}
+}
@@ -0,0 +1,8 @@
+-- 애플리케이션 시작시 실행된다. (spring.sql.init) 기존 데이터를 유지하며 여러 번 실행해도 결과가 같다.
+create table if not exists member (
+    member_id varchar(10),
+    money integer not null default 0,
+    primary key (member_id)
+);
+-- 낙관적 락 (MemberRepositoryV4_1, V4_2, V5)
+alter table member add column if not exists version bigint not null default 0;
@@ -0,0 +1,7 @@
+drop table member if exists cascade;
+create table member (
+    member_id varchar(10),
+    money integer not null default 0,
+    version bigint not null default 0,
+    primary key (member_id)
+);
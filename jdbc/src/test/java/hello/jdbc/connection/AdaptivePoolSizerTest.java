@@ -0,0 +1,281 @@
+package hello.jdbc.connection;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import hello.jdbc.connection.AdaptivePoolSizer.Window;
+import hello.jdbc.connection.metrics.InstrumentedDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.service.MemberServiceV4;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class AdaptivePoolSizerTest {
+	static final int MEMBERS = 200;
+	static final int THREADS = 16;
+	static final int SETTLE_WINDOWS = 5;
+	static final long MEASURE_MILLIS = 1_000;
+
+	HikariDataSource pool;
+	InstrumentedDataSource dataSource;
+	MemberRepositoryV5 repository;
+
+	@AfterEach
+	void afterEach() {
+		pool.close();
+	}
+
+	@Test
+	void increaseWhileStarvingUpToMaximum() {
+		AdaptivePoolSizer sizer = sizer(2, 6);
+
+		for (int i = 0; i < 10; i++) {
+			sizer.decide(starving(100.0 * sizer.getPoolSize(), 100));
+		}
+
+		assertThat(sizer.getSizeHistory()).startsWith(3, 4, 5, 6).allMatch(size -> size <= 6);
+		assertThat(pool.getMaximumPoolSize()).isEqualTo(2); // decide()는 커넥션 풀에 반영하지 않는다.
+	}
+
+	@Test
+	void decreaseWhenQueryLatencyGrows() {
+		AdaptivePoolSizer sizer = sizer(2, 6);
+		for (int i = 0; i < 4; i++) {
+			sizer.decide(starving(100.0 * sizer.getPoolSize(), 100));
+		}
+		assertThat(sizer.getPoolSize()).isEqualTo(6);
+
+		// hold 시간이 기준값(100us)의 1.5배를 넘으면 0.75를 곱한다.
+		assertThat(sizer.decide(new Window(100, 10, 300, 600, 0))).isEqualTo(4);
+		assertThat(sizer.decide(new Window(100, 10, 300, 600, 0))).isEqualTo(3);
+		for (int i = 0; i < 10; i++) {
+			sizer.decide(new Window(100, 10, 1000, 600, 0));
+		}
+		assertThat(sizer.getPoolSize()).isEqualTo(1);
+	}
+
+	@Test
+	void stepBackWithoutThroughputGain() {
+		AdaptivePoolSizer sizer = sizer(2, 6);
+
+		for (int i = 0; i < 5; i++) {
+			sizer.decide(starving(200, 100));
+		}
+
+		// 늘려도 처리량이 그대로라면 되돌리고, 커넥션이 부족한 구간이 probeHoldWindows(2) 만큼 지난 뒤 다시 늘려본다.
+		assertThat(sizer.getSizeHistory()).containsExactly(3, 2, 2, 2, 3);
+	}
+
+	@Test
+	void keepSizeWithoutLoad() {
+		AdaptivePoolSizer sizer = sizer(2, 6);
+
+		sizer.decide(new Window(0, 0, 0, 0, 0));
+
+		assertThat(sizer.getSizeHistory()).containsExactly(2);
+	}
+
+	@Test
+	void keepOnlyRecentHistory() {
+		pool = MemoryDb.dataSource("adaptivePoolSizer", 2);
+		AdaptivePoolSizerConfig config = new AdaptivePoolSizerConfig();
+		config.setMaximumPoolSize(10);
+		config.setCooldownWindows(0);
+		config.setHistorySize(3);
+		AdaptivePoolSizer sizer = new AdaptivePoolSizer(pool, new InstrumentedDataSource(pool, "adaptivePoolSizer"), config);
+
+		for (int i = 0; i < 6; i++) {
+			sizer.decide(starving(100.0 * sizer.getPoolSize(), 100));
+		}
+
+		assertThat(sizer.getSizeHistory()).containsExactly(6, 7, 8);
+	}
+
+	@Test
+	void evictOnlySurplusIdleConnections() throws SQLException {
+		pool = MemoryDb.dataSource("adaptivePoolSizerEvict", 4);
+		List<Connection> connections = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			connections.add(pool.getConnection());
+		}
+		Connection inUse = connections.remove(0);
+		for (Connection connection : connections) {
+			connection.close();
+		}
+
+		AdaptivePoolSizerConfig config = new AdaptivePoolSizerConfig();
+		config.setMaximumPoolSize(2);
+		AdaptivePoolSizer sizer = new AdaptivePoolSizer(pool, new InstrumentedDataSource(pool, "adaptivePoolSizerEvict"), config);
+		sizer.evictSurplus();
+
+		// 크기(2)를 넘는 2개만 닫고, 사용 중인 커넥션은 그대로 둔다.
+		HikariPoolMXBean hikariPool = pool.getHikariPoolMXBean();
+		assertThat(hikariPool.getTotalConnections()).isEqualTo(2);
+		assertThat(hikariPool.getActiveConnections()).isEqualTo(1);
+		assertThat(inUse.isValid(1)).isTrue();
+		inUse.close();
+		assertThat(hikariPool.getIdleConnections()).isEqualTo(2);
+	}
+
+	/**
+	 * MemberServiceV4.accountTransferAtomic() 부하를 주면서 1개에서 시작한 커넥션 풀 크기를 조절하고, 크기가 일정한 범위로 수렴하는지 확인한다.
+	 */
+	@Test
+	void convergeOnTransferWorkload() throws Exception {
+		MemberServiceV4 memberService = transferService("adaptivePoolSizerLoad");
+
+		List<Integer> history = converge(memberService);
+		int settled = history.get(history.size() - 1);
+		assertThat(history).hasSizeGreaterThan(SETTLE_WINDOWS).allMatch(size -> size >= 1 && size <= 16);
+		// 1개로는 커넥션이 부족하므로 늘어난다.
+		assertThat(history).anyMatch(size -> size > 1);
+		// 마지막 구간들은 늘려보고 되돌리는 정도(+-1)로만 움직인다.
+		assertThat(history.subList(history.size() - SETTLE_WINDOWS, history.size()))
+			.allMatch(size -> Math.abs(size - settled) <= 1);
+
+		// 실패한 이체는 롤백되므로 전체 잔액은 그대로이다.
+		long total = 0;
+		for (int i = 0; i < MEMBERS; i++) {
+			total += repository.findById("member" + i).getMoney();
+		}
+		assertThat(total).isEqualTo(MEMBERS * 100_000L);
+	}
+
+	/**
+	 * 수렴한 크기의 처리량을 상한/하한으로 고정한 처리량과 비교한다.
+	 * 실행 시간에 따라 결과가 달라지므로 기본 테스트에서 제외되고 ./gradlew benchmark로 실행한다, 결과는 로그로만 남긴다.
+	 */
+	@Test
+	@Tag("benchmark")
+	void settledSizeThroughput() throws Exception {
+		MemberServiceV4 memberService = transferService("adaptivePoolSizerBenchmark");
+
+		List<Integer> history = converge(memberService);
+		int settled = history.get(history.size() - 1);
+
+		double atMinimum = throughputAt(memberService, 1);
+		double atMaximum = throughputAt(memberService, 16);
+		double atSettled = throughputAt(memberService, settled);
+		log.info("transfers/s, size 1={}, size 16={}, settled size {}={}", atMinimum, atMaximum, settled, atSettled);
+	}
+
+	/**
+	 * 커넥션 1개로 시작하는 풀에 MEMBERS 명의 회원을 저장하고, 트랜잭션을 적용한 MemberServiceV4를 만든다.
+	 */
+	private MemberServiceV4 transferService(String name) {
+		pool = MemoryDb.dataSource(name, 1);
+		dataSource = new InstrumentedDataSource(pool, name);
+		repository = new MemberRepositoryV5(dataSource);
+		for (int i = 0; i < MEMBERS; i++) {
+			repository.save(new Member("member" + i, 100_000));
+		}
+		return TransactionalProxy.of(new MemberServiceV4(repository), new DataSourceTransactionManager(dataSource));
+	}
+
+	/**
+	 * 이체 부하를 주면서 AdaptivePoolSizer로 크기를 조절한다.
+	 * @return 구간마다 결정한 크기
+	 */
+	private List<Integer> converge(MemberServiceV4 memberService) throws Exception {
+		AdaptivePoolSizerConfig config = new AdaptivePoolSizerConfig();
+		config.setMinimumPoolSize(1);
+		config.setMaximumPoolSize(16);
+		config.setIntervalMillis(100);
+
+		try (AdaptivePoolSizer sizer = new AdaptivePoolSizer(pool, dataSource, config)) {
+			sizer.start();
+			long transfers = runTransfers(memberService, 4_000);
+			sizer.close();
+
+			List<Integer> history = sizer.getSizeHistory();
+			log.info("transfers={}, history={}", transfers, history);
+			return history;
+		}
+	}
+
+	/**
+	 * 커넥션 풀 크기를 size로 고정하고 초당 이체 수를 측정한다.
+	 */
+	private double throughputAt(MemberServiceV4 memberService, int size) throws Exception {
+		HikariConfigMXBean hikariConfig = pool.getHikariConfigMXBean();
+		if (size < hikariConfig.getMaximumPoolSize()) {
+			hikariConfig.setMinimumIdle(size);
+			hikariConfig.setMaximumPoolSize(size);
+			pool.getHikariPoolMXBean().softEvictConnections();
+		} else {
+			hikariConfig.setMaximumPoolSize(size);
+			hikariConfig.setMinimumIdle(size);
+		}
+
+		runTransfers(memberService, 300); // 커넥션 생성 등이 측정에 섞이지 않도록 먼저 실행해둔다.
+		return runTransfers(memberService, MEASURE_MILLIS) * 1000.0 / MEASURE_MILLIS;
+	}
+
+	/**
+	 * THREADS 개의 스레드로 millis 동안 임의의 두 회원 사이에 이체한다.
+	 * @return 성공한 이체 수
+	 */
+	private long runTransfers(MemberServiceV4 memberService, long millis) throws Exception {
+		LongAdder transfers = new LongAdder();
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < THREADS; i++) {
+				futures.add(executor.submit(() -> {
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					while (System.nanoTime() < deadline) {
+						int from = random.nextInt(MEMBERS);
+						int to = (from + 1 + random.nextInt(MEMBERS - 1)) % MEMBERS;
+						try {
+							memberService.accountTransferAtomic("member" + from, "member" + to, 1);
+							transfers.increment();
+						} catch (RuntimeException e) {
+							// 락 타임아웃 등, 트랜잭션은 롤백된다.
+						}
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		return transfers.sum();
+	}
+
+	private AdaptivePoolSizer sizer(int initialSize, int maximumSize) {
+		pool = MemoryDb.dataSource("adaptivePoolSizer", initialSize);
+		AdaptivePoolSizerConfig config = new AdaptivePoolSizerConfig();
+		config.setMinimumPoolSize(1);
+		config.setMaximumPoolSize(maximumSize);
+		config.setCooldownWindows(0);
+		config.setProbeHoldWindows(2);
+		return new AdaptivePoolSizer(pool, new InstrumentedDataSource(pool, "adaptivePoolSizer"), config);
+	}
+
+	private Window starving(double throughput, double holdMicros) {
+		return new Window(100, 5_000, holdMicros, throughput, 1);
+	}
+}
@@ -0,0 +1,139 @@
+package hello.jdbc.connection;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV4_2;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class ConnectionSessionTest {
+	HikariDataSource pool;
+	CountingDataSource dataSource;
+	MemberRepositoryV4_2 repository;
+	ConnectionSession session;
+
+	@BeforeEach
+	void beforeEach() {
+		pool = MemoryDb.dataSource("connectionSession");
+		dataSource = new CountingDataSource(pool);
+		repository = new MemberRepositoryV4_2(dataSource);
+		session = new ConnectionSession(dataSource);
+		repository.save(new Member("memberA", 10000));
+		dataSource.checkouts.set(0);
+	}
+
+	@AfterEach
+	void afterEach() {
+		pool.close();
+	}
+
+	@Test
+	void withoutSession() {
+		Member member = repository.findById("memberA");
+		repository.update("memberA", member.getMoney() + 1000);
+
+		assertThat(dataSource.checkouts.get()).isEqualTo(2);
+	}
+
+	@Test
+	void pinOneConnection() {
+		session.execute(() -> {
+			Member member = repository.findById("memberA");
+			repository.update("memberA", member.getMoney() + 1000);
+			return null;
+		});
+
+		assertThat(dataSource.checkouts.get()).isEqualTo(1);
+		assertThat(session.getRequestCount()).isEqualTo(2);
+		assertThat(session.getSavedCheckoutCount()).isEqualTo(1);
+		assertThat(repository.findById("memberA").getMoney()).isEqualTo(11000);
+		assertThat(pool.getHikariPoolMXBean().getActiveConnections()).isZero();
+	}
+
+	@Test
+	void releaseOnException() {
+		assertThatThrownBy(() -> session.execute(() -> {
+			repository.update("memberA", 20000);
+			throw new IllegalStateException("예외 발생");
+		})).isInstanceOf(IllegalStateException.class);
+
+		// 자동 커밋 모드이므로 예외가 발생해도 이미 실행한 쿼리는 반영되어 있다.
+		assertThat(repository.findById("memberA").getMoney()).isEqualTo(20000);
+		assertThat(pool.getHikariPoolMXBean().getActiveConnections()).isZero();
+	}
+
+	@Test
+	void nestedSessionAndTransaction() {
+		TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+		session.execute(() -> {
+			session.execute(() -> repository.findById("memberA"));
+			// 트랜잭션도 고정된 커넥션을 사용하고, 끝나면 자동 커밋 모드로 되돌린다.
+			assertThatThrownBy(() -> txTemplate.executeWithoutResult(status -> {
+				repository.update("memberA", 0);
+				throw new IllegalStateException("rollback");
+			})).isInstanceOf(IllegalStateException.class);
+			repository.update("memberA", 30000);
+			return null;
+		});
+
+		assertThat(dataSource.checkouts.get()).isEqualTo(1);
+		assertThat(session.getSessionCount()).isEqualTo(1);
+		assertThat(repository.findById("memberA").getMoney()).isEqualTo(30000);
+	}
+
+	/**
+	 * findById() + update() 반복에서 커넥션 풀 사용 횟수 비교
+	 */
+	@Test
+	void poolTraffic() {
+		int rounds = 1000;
+		for (int i = 0; i < rounds; i++) {
+			Member member = repository.findById("memberA");
+			repository.update("memberA", member.getMoney() + 1);
+		}
+		int withoutSession = dataSource.checkouts.getAndSet(0);
+
+		for (int i = 0; i < rounds; i++) {
+			session.execute(() -> {
+				Member member = repository.findById("memberA");
+				repository.update("memberA", member.getMoney() + 1);
+				return null;
+			});
+		}
+		int withSession = dataSource.checkouts.get();
+
+		log.info("pool checkouts, without session={}, with session={}, saved={}", withoutSession, withSession, session.getSavedCheckoutCount());
+		assertThat(withSession).isEqualTo(withoutSession / 2);
+	}
+
+	static class CountingDataSource extends DelegatingDataSource {
+		final AtomicInteger checkouts = new AtomicInteger();
+
+		CountingDataSource(DataSource targetDataSource) {
+			super(targetDataSource);
+		}
+
+		@Override
+		public Connection getConnection() throws SQLException {
+			checkouts.incrementAndGet();
+			return super.getConnection();
+		}
+	}
+}
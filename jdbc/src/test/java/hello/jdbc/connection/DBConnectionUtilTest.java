@@ -3,6 +3,7 @@ package hello.jdbc.connection;
 import static org.assertj.core.api.Assertions.*;
 
 import java.sql.Connection;
+import java.sql.SQLException;
 
 import org.junit.jupiter.api.Test;
 
@@ -17,4 +18,21 @@ class DBConnectionUtilTest {
 		assertThat(connection).isNotNull();
 	}
 
+	@Test
+	void pooledConnection() throws SQLException {
+		DBConnectionUtil.enablePooling();
+		try {
+			Connection conn1 = DBConnectionUtil.getConnection();
+			Connection physical = conn1.unwrap(Connection.class);
+			conn1.close();
+
+			// 풀링 모드에서는 반납한 커넥션을 다시 사용한다.
+			Connection conn2 = DBConnectionUtil.getConnection();
+			assertThat(conn2.unwrap(Connection.class)).isSameAs(physical);
+			conn2.close();
+		} finally {
+			DBConnectionUtil.disablePooling();
+		}
+	}
+
 }
\ No newline at end of file
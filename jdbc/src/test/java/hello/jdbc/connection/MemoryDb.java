@@ -0,0 +1,34 @@
+package hello.jdbc.connection;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * H2 TCP 서버 없이 테스트할 수 있도록 member 테이블을 가진 메모리 DB를 만든다.
+ */
+public abstract class MemoryDb {
+
+	public static HikariDataSource dataSource(String name) {
+		return dataSource(name, 10);
+	}
+
+	public static HikariDataSource dataSource(String name, int maximumPoolSize) {
+		HikariDataSource dataSource = new HikariDataSource();
+		// DB_CLOSE_DELAY=-1 : 마지막 커넥션이 닫혀도 JVM이 종료될 때까지 메모리 DB를 유지한다.
+		// LOCK_TIMEOUT=1000 : 락 대기(교착 상태 포함)가 1초를 넘으면 예외가 발생한다.
+		dataSource.setJdbcUrl("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=1000");
+		dataSource.setUsername(USERNAME);
+		dataSource.setPassword(PASSWORD);
+		dataSource.setMaximumPoolSize(maximumPoolSize);
+		dataSource.setPoolName(name);
+
+		ResourceDatabasePopulator populator = new ResourceDatabasePopulator(new ClassPathResource("sql/member.sql"));
+		DatabasePopulatorUtils.execute(populator, dataSource);
+		return dataSource;
+	}
+}
@@ -0,0 +1,107 @@
+package hello.jdbc.connection;
+
+import static org.assertj.core.api.Assertions.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.service.MemberServiceV4;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class MeteredLazyConnectionDataSourceTest {
+	HikariDataSource pool;
+	MeteredLazyConnectionDataSource dataSource;
+	DataSourceTransactionManager transactionManager;
+	MemberRepositoryV5 repository;
+
+	@BeforeEach
+	void beforeEach() {
+		pool = MemoryDb.dataSource("lazyConnection");
+		dataSource = new MeteredLazyConnectionDataSource(pool);
+		transactionManager = new DataSourceTransactionManager(dataSource);
+		repository = new MemberRepositoryV5(dataSource);
+	}
+
+	@AfterEach
+	void afterEach() {
+		pool.close();
+	}
+
+	@Test
+	void transactionWithoutQueryDoesNotUsePool() {
+		TransactionTemplate txTemplate = new TransactionTemplate(transactionManager);
+
+		assertThatThrownBy(() -> txTemplate.executeWithoutResult(status -> {
+			throw new IllegalArgumentException("검증 실패");
+		})).isInstanceOf(IllegalArgumentException.class);
+		txTemplate.executeWithoutResult(status -> {
+		});
+
+		assertThat(dataSource.getLogicalConnectionCount()).isEqualTo(2);
+		assertThat(dataSource.getPhysicalConnectionCount()).isZero();
+		assertThat(dataSource.getSkippedConnectionCount()).isEqualTo(2);
+		assertThat(pool.getHikariPoolMXBean().getActiveConnections()).isZero();
+	}
+
+	@Test
+	void fetchOnFirstStatement() {
+		repository.save(new Member("memberA", 10000));
+		TransactionTemplate txTemplate = new TransactionTemplate(transactionManager);
+
+		txTemplate.executeWithoutResult(status -> {
+			sleep(50); // 쿼리 전의 작업
+			repository.update("memberA", 20000);
+		});
+
+		assertThat(repository.findById("memberA").getMoney()).isEqualTo(20000);
+		assertThat(dataSource.getTotalSavedMillis()).isGreaterThanOrEqualTo(50);
+		log.info("saved={}ms, average hold={}ms", dataSource.getTotalSavedMillis(), dataSource.getAverageHoldMillis());
+	}
+
+	@Test
+	void rollbackAppliesToPhysicalConnection() {
+		repository.save(new Member("memberA", 10000));
+		TransactionTemplate txTemplate = new TransactionTemplate(transactionManager);
+
+		assertThatThrownBy(() -> txTemplate.executeWithoutResult(status -> {
+			repository.update("memberA", 20000);
+			throw new IllegalStateException("rollback");
+		})).isInstanceOf(IllegalStateException.class);
+
+		assertThat(repository.findById("memberA").getMoney()).isEqualTo(10000);
+	}
+
+	/**
+	 * @Transactional 서비스, 출금에 실패하면 입금 쿼리 없이 롤백된다.
+	 */
+	@Test
+	void transactionalService() {
+		repository.save(new Member("memberA", 10000));
+		repository.save(new Member("memberB", 10000));
+		MemberServiceV4 memberService = TransactionalProxy.of(new MemberServiceV4(repository), transactionManager);
+
+		memberService.accountTransferAtomic("memberA", "memberB", 2000);
+		assertThatThrownBy(() -> memberService.accountTransferAtomic("memberA", "memberB", 100000))
+			.isInstanceOf(IllegalStateException.class);
+
+		assertThat(repository.findById("memberA").getMoney()).isEqualTo(8000);
+		assertThat(repository.findById("memberB").getMoney()).isEqualTo(12000);
+		assertThat(pool.getHikariPoolMXBean().getActiveConnections()).isZero();
+	}
+
+	private void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package hello.jdbc.connection;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV3;
+import hello.jdbc.repository.MemberRepositoryV4_2;
+import hello.jdbc.repository.MemberRepositoryV5;
+
+/**
+ * 복제본은 원본과 다른 잔액을 가지도록 직접 저장해서 어느 DB에서 읽었는지 구분한다.
+ */
+class ReadWriteRoutingDataSourceTest {
+	HikariDataSource primary;
+	HikariDataSource replica;
+	AtomicLong now = new AtomicLong();
+	ReadWriteRoutingDataSource routing;
+	DataSource dataSource;
+	MemberRepositoryV5 repository;
+
+	@BeforeEach
+	void beforeEach() {
+		primary = MemoryDb.dataSource("routingPrimary");
+		replica = MemoryDb.dataSource("routingReplica");
+		new MemberRepositoryV5(primary).save(new Member("memberA", 10000));
+		new MemberRepositoryV5(replica).save(new Member("memberA", 9000)); // 아직 복제되지 않은 값
+
+		routing = new ReadWriteRoutingDataSource(primary, replica, Duration.ofMillis(100), now::get);
+		dataSource = routing.lazyProxy();
+		repository = new MemberRepositoryV5(dataSource);
+	}
+
+	@AfterEach
+	void afterEach() {
+		primary.close();
+		replica.close();
+	}
+
+	@Test
+	void findByIdOutsideTransactionReadsReplica() throws SQLException {
+		assertThat(repository.findById("memberA").getMoney()).isEqualTo(9000);
+		assertThat(new MemberRepositoryV4_2(dataSource).findById("memberA").getMoney()).isEqualTo(9000);
+		assertThat(new MemberRepositoryV3(dataSource).findById("memberA").getMoney()).isEqualTo(9000);
+		assertThat(routing.getReplicaCount()).isEqualTo(3);
+		assertThat(routing.getPrimaryCount()).isZero();
+	}
+
+	@Test
+	void writesGoToPrimary() {
+		repository.update("memberA", 20000);
+
+		assertThat(new MemberRepositoryV5(primary).findById("memberA").getMoney()).isEqualTo(20000);
+		assertThat(new MemberRepositoryV5(replica).findById("memberA").getMoney()).isEqualTo(9000);
+	}
+
+	@Test
+	void readOnlyTransactionReadsReplica() {
+		TransactionTemplate readOnly = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		readOnly.setReadOnly(true);
+		TransactionTemplate readWrite = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+		assertThat(readOnly.execute(status -> repository.findById("memberA").getMoney())).isEqualTo(9000);
+		assertThat(readWrite.execute(status -> repository.findById("memberA").getMoney())).isEqualTo(10000);
+	}
+
+	@Test
+	void findByIdKeepsTransactionReadOnlyFlag() {
+		TransactionTemplate readOnly = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		readOnly.setReadOnly(true);
+
+		// findById()가 바깥 트랜잭션의 readOnly 표시를 지우지 않는다.
+		assertThat(readOnly.execute(status -> {
+			repository.findById("memberA");
+			return TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+		})).isTrue();
+
+		repository.findById("memberA");
+		assertThat(TransactionSynchronizationManager.isCurrentTransactionReadOnly()).isFalse();
+	}
+
+	@Test
+	void readYourWrites() {
+		repository.update("memberA", 20000);
+
+		// 쓴 직후에는 원본에서 읽는다.
+		now.addAndGet(Duration.ofMillis(50).toNanos());
+		assertThat(repository.findById("memberA").getMoney()).isEqualTo(20000);
+		assertThat(routing.getReadYourWritesCount()).isEqualTo(1);
+
+		// 시간이 지나면 복제본에서 읽는다.
+		now.addAndGet(Duration.ofMillis(100).toNanos());
+		assertThat(repository.findById("memberA").getMoney()).isEqualTo(9000);
+	}
+
+	@Test
+	void readYourWritesAfterCommit() {
+		TransactionTemplate readWrite = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		readWrite.executeWithoutResult(status -> {
+			repository.update("memberA", 20000);
+			now.addAndGet(Duration.ofMillis(500).toNanos()); // 긴 트랜잭션
+		});
+
+		// 커밋 시점부터 시간을 재므로 원본에서 읽는다.
+		assertThat(repository.findById("memberA").getMoney()).isEqualTo(20000);
+	}
+
+	@Test
+	void readYourWritesIgnoresRolledBackTransaction() {
+		TransactionTemplate readWrite = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		readWrite.executeWithoutResult(status -> {
+			repository.update("memberA", 20000);
+			status.setRollbackOnly();
+		});
+
+		// 롤백되어 원본에 쓴 내용이 없으므로 복제본에서 읽는다.
+		assertThat(repository.findById("memberA").getMoney()).isEqualTo(9000);
+		assertThat(routing.getReadYourWritesCount()).isZero();
+	}
+
+	@Test
+	void readsOnPrimaryDoNotExtendReadYourWrites() {
+		repository.update("memberA", 20000);
+
+		// 원본에서 읽더라도 쓴 시점부터 잰 기간은 늘어나지 않는다.
+		for (int i = 0; i < 3; i++) {
+			now.addAndGet(Duration.ofMillis(30).toNanos());
+			assertThat(repository.findById("memberA").getMoney()).isEqualTo(20000);
+		}
+		now.addAndGet(Duration.ofMillis(30).toNanos());
+		assertThat(repository.findById("memberA").getMoney()).isEqualTo(9000);
+		assertThat(routing.getReadYourWritesCount()).isEqualTo(3);
+	}
+
+	@Test
+	void replicaLagFallsBackToPrimary() {
+		AtomicLong lagMillis = new AtomicLong(5000);
+		routing.setReplicaLag(lagMillis::get, Duration.ofSeconds(1));
+
+		assertThat(repository.findById("memberA").getMoney()).isEqualTo(10000);
+		assertThat(routing.getReplicaLagFallbackCount()).isEqualTo(1);
+
+		lagMillis.set(10);
+		assertThat(repository.findById("memberA").getMoney()).isEqualTo(9000);
+	}
+
+	@Test
+	void readYourWritesIsPerThread() throws Exception {
+		repository.update("memberA", 20000);
+
+		// 다른 스레드는 쓰지 않았으므로 복제본에서 읽는다.
+		AtomicLong money = new AtomicLong();
+		Thread reader = new Thread(() -> money.set(repository.findById("memberA").getMoney()));
+		reader.start();
+		reader.join();
+		assertThat(money.get()).isEqualTo(9000);
+	}
+}
@@ -0,0 +1,97 @@
+package hello.jdbc.connection;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class SimpleConnectionPoolTest {
+	SimpleConnectionPool pool;
+
+	@BeforeEach
+	void beforeEach() {
+		// H2 TCP 서버 없이 테스트할 수 있도록 메모리 DB를 사용한다.
+		ConnectionPoolConfig config = new ConnectionPoolConfig();
+		config.setUrl("jdbc:h2:mem:pool;DB_CLOSE_DELAY=-1");
+		config.setMaximumPoolSize(2);
+		config.setConnectionTimeout(200);
+		pool = new SimpleConnectionPool(config);
+	}
+
+	@AfterEach
+	void afterEach() {
+		pool.close();
+	}
+
+	@Test
+	void reuse() throws SQLException {
+		Connection conn1 = pool.getConnection();
+		Connection physical1 = conn1.unwrap(Connection.class);
+		conn1.close();
+
+		// 반납한 물리 커넥션을 다시 대여한다.
+		Connection conn2 = pool.getConnection();
+		assertThat(conn2.unwrap(Connection.class)).isSameAs(physical1);
+		assertThat(conn1.isClosed()).isTrue();
+		assertThatThrownBy(conn1::createStatement).isInstanceOf(SQLException.class);
+		conn2.close();
+
+		assertThat(pool.getTotalConnections()).isEqualTo(1);
+		assertThat(pool.getIdleConnections()).isEqualTo(1);
+	}
+
+	@Test
+	void maximumPoolSize() throws SQLException {
+		Connection conn1 = pool.getConnection();
+		Connection conn2 = pool.getConnection();
+
+		// 최대 커넥션 수를 넘으면 connectionTimeout 이후 예외가 발생한다.
+		assertThatThrownBy(() -> pool.getConnection()).isInstanceOf(SQLTransientConnectionException.class);
+
+		conn1.close();
+		Connection conn3 = pool.getConnection();
+		assertThat(pool.getTotalConnections()).isEqualTo(2);
+
+		conn2.close();
+		conn3.close();
+	}
+
+	@Test
+	void resetChangedStateOnly() throws SQLException {
+		Connection conn1 = pool.getConnection();
+		conn1.setAutoCommit(false);
+		conn1.setReadOnly(true);
+		conn1.close();
+
+		// 반납시 변경된 상태를 기본값으로 되돌린다.
+		Connection conn2 = pool.getConnection();
+		Connection physical = conn2.unwrap(Connection.class);
+		assertThat(physical.getAutoCommit()).isTrue();
+		assertThat(physical.isReadOnly()).isFalse();
+		conn2.close();
+	}
+
+	@Test
+	void evictIdleConnection() throws SQLException, InterruptedException {
+		ConnectionPoolConfig config = new ConnectionPoolConfig();
+		config.setUrl("jdbc:h2:mem:pool;DB_CLOSE_DELAY=-1");
+		config.setIdleTimeout(100);
+		config.setHousekeepingPeriod(50);
+
+		try (SimpleConnectionPool shortIdlePool = new SimpleConnectionPool(config)) {
+			shortIdlePool.getConnection().close();
+			assertThat(shortIdlePool.getTotalConnections()).isEqualTo(1);
+
+			Thread.sleep(500);
+			assertThat(shortIdlePool.getTotalConnections()).isZero();
+		}
+	}
+}
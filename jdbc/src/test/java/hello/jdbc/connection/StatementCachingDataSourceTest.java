@@ -0,0 +1,102 @@
+package hello.jdbc.connection;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV4_2;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class StatementCachingDataSourceTest {
+	HikariDataSource targetDataSource;
+	StatementCachingDataSource dataSource;
+
+	@BeforeEach
+	void beforeEach() {
+		// 물리 커넥션을 1개로 제한해서 항상 같은 캐시를 사용하도록 한다.
+		targetDataSource = MemoryDb.dataSource("statementCache", 1);
+		dataSource = new StatementCachingDataSource(targetDataSource, 2);
+	}
+
+	@AfterEach
+	void afterEach() {
+		targetDataSource.close();
+	}
+
+	@Test
+	void reuseStatement() throws SQLException {
+		String sql = "select * from member where member_id = ?";
+
+		try (Connection conn = dataSource.getConnection()) {
+			PreparedStatement pstmt1 = conn.prepareStatement(sql);
+			PreparedStatement target1 = pstmt1.unwrap(PreparedStatement.class);
+			pstmt1.close();
+
+			PreparedStatement pstmt2 = conn.prepareStatement(sql);
+			assertThat(pstmt2.unwrap(PreparedStatement.class)).isSameAs(target1);
+			pstmt2.close();
+		}
+
+		// 커넥션을 반납한 이후에도 같은 물리 커넥션이라면 캐시가 유지된다.
+		try (Connection conn = dataSource.getConnection()) {
+			conn.prepareStatement(sql).close();
+		}
+
+		assertThat(dataSource.getMissCount()).isEqualTo(1);
+		assertThat(dataSource.getHitCount()).isEqualTo(2);
+	}
+
+	@Test
+	void evictLeastRecentlyUsed() throws SQLException {
+		try (Connection conn = dataSource.getConnection()) {
+			conn.prepareStatement("select 1").close();
+			conn.prepareStatement("select 2").close();
+			conn.prepareStatement("select 3").close(); // cacheSize = 2, "select 1"이 제거된다.
+			conn.prepareStatement("select 1").close();
+		}
+
+		assertThat(dataSource.getEvictionCount()).isEqualTo(2);
+		assertThat(dataSource.getMissCount()).isEqualTo(4);
+	}
+
+	@Test
+	void repositoryV4_2() {
+		crud(new MemberRepositoryV4_2(dataSource));
+		assertThat(dataSource.getHitCount()).isPositive();
+	}
+
+	@Test
+	void repositoryV5WithTransaction() {
+		MemberRepository repository = new MemberRepositoryV5(dataSource);
+		TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+		// 트랜잭션 동기화(DataSourceUtils)를 사용하더라도 동일하게 동작한다.
+		txTemplate.executeWithoutResult(status -> crud(repository));
+		log.info("hit={}, miss={}", dataSource.getHitCount(), dataSource.getMissCount());
+		assertThat(dataSource.getHitCount()).isPositive();
+	}
+
+	private void crud(MemberRepository repository) {
+		Member member = new Member("memberV1", 10000);
+		repository.save(member);
+		repository.update(member.getMemberId(), 20000);
+		assertThat(repository.findById(member.getMemberId()).getMoney()).isEqualTo(20000);
+		repository.update(member.getMemberId(), 30000);
+		assertThat(repository.findById(member.getMemberId()).getMoney()).isEqualTo(30000);
+		repository.delete(member.getMemberId());
+	}
+}
@@ -0,0 +1,215 @@
+package hello.jdbc.connection;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.repository.async.VirtualThreads;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class StickyConnectionDataSourceTest {
+	HikariDataSource pool;
+
+	@BeforeEach
+	void beforeEach() {
+		pool = MemoryDb.dataSource("stickyConnection");
+	}
+
+	@AfterEach
+	void afterEach() {
+		pool.close();
+	}
+
+	@Test
+	void reuseOnSameThread() throws SQLException {
+		try (StickyConnectionDataSource dataSource = new StickyConnectionDataSource(pool, Duration.ofSeconds(10), 4)) {
+			Connection first = dataSource.getConnection();
+			Connection physical = first.unwrap(Connection.class);
+			first.close();
+
+			assertThat(first.isClosed()).isTrue();
+			assertThat(dataSource.getParkedCount()).isEqualTo(1);
+
+			Connection second = dataSource.getConnection();
+			assertThat(second.unwrap(Connection.class)).isSameAs(physical);
+			second.close();
+
+			assertThat(dataSource.getHitCount()).isEqualTo(1);
+			assertThat(dataSource.getMissCount()).isEqualTo(1);
+		}
+		assertThat(pool.getHikariPoolMXBean().getActiveConnections()).isZero();
+	}
+
+	@Test
+	void reaperReleasesExpiredConnection() throws SQLException, InterruptedException {
+		try (StickyConnectionDataSource dataSource = new StickyConnectionDataSource(pool, Duration.ofMillis(20), 4)) {
+			dataSource.getConnection().close();
+			assertThat(pool.getHikariPoolMXBean().getActiveConnections()).isEqualTo(1);
+
+			awaitNoActiveConnections();
+			assertThat(dataSource.getParkedCount()).isZero();
+			assertThat(dataSource.getExpiredCount()).isEqualTo(1);
+		}
+	}
+
+	@Test
+	void doNotParkManualCommitConnection() throws SQLException {
+		try (StickyConnectionDataSource dataSource = new StickyConnectionDataSource(pool, Duration.ofSeconds(10), 4)) {
+			Connection connection = dataSource.getConnection();
+			connection.setAutoCommit(false);
+			connection.close();
+
+			// 커넥션 풀이 롤백하고 자동 커밋 모드로 되돌린다.
+			assertThat(dataSource.getParkedCount()).isZero();
+			assertThat(pool.getHikariPoolMXBean().getActiveConnections()).isZero();
+		}
+	}
+
+	@Test
+	void parkAtMostMaxParked() throws Exception {
+		int threads = 4;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try (StickyConnectionDataSource dataSource = new StickyConnectionDataSource(pool, Duration.ofSeconds(10), 2)) {
+			CountDownLatch latch = new CountDownLatch(threads);
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < threads; i++) {
+				futures.add(executor.submit(() -> {
+					Connection connection = dataSource.getConnection();
+					latch.countDown();
+					latch.await();
+					connection.close();
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+
+			assertThat(dataSource.getParkedCount()).isEqualTo(2);
+			assertThat(pool.getHikariPoolMXBean().getActiveConnections()).isEqualTo(2);
+		} finally {
+			executor.shutdown();
+		}
+		assertThat(pool.getHikariPoolMXBean().getActiveConnections()).isZero();
+	}
+
+	/**
+	 * 가상 스레드는 공유 슬롯을 사용한다. (Java 21 미만이라면 플랫폼 스레드로 실행된다)
+	 */
+	@Test
+	void virtualThreads() throws Exception {
+		MemberRepositoryV5 setup = new MemberRepositoryV5(pool);
+		setup.save(new Member("memberA", 10000));
+
+		ExecutorService executor = VirtualThreads.newExecutor("stickyConnectionTest");
+		try (StickyConnectionDataSource dataSource = new StickyConnectionDataSource(pool, Duration.ofMillis(50), 4)) {
+			MemberRepositoryV5 repository = new MemberRepositoryV5(dataSource);
+			List<Future<Member>> futures = new ArrayList<>();
+			for (int i = 0; i < 200; i++) {
+				futures.add(executor.submit(() -> repository.findById("memberA")));
+			}
+			for (Future<Member> future : futures) {
+				assertThat(future.get().getMoney()).isEqualTo(10000);
+			}
+			log.info("virtual={}, hit ratio={}", VirtualThreads.isSupported(), dataSource.getHitRatio());
+			assertThat(dataSource.getParkedCount()).isLessThanOrEqualTo(4);
+		} finally {
+			executor.shutdown();
+		}
+		assertThat(pool.getHikariPoolMXBean().getActiveConnections()).isZero();
+	}
+
+	/**
+	 * 여러 스레드가 MemberRepositoryV5.findById()를 반복할 때 커넥션 획득 시간 비교
+	 */
+	@Test
+	void acquireLatencyBenchmark() throws Exception {
+		new MemberRepositoryV5(pool).save(new Member("memberA", 10000));
+		int threads = 8;
+		int iterations = 2000;
+
+		AcquireTimer poolTimer = new AcquireTimer(pool);
+		run(new MemberRepositoryV5(poolTimer), threads, iterations);
+
+		try (StickyConnectionDataSource sticky = new StickyConnectionDataSource(pool, Duration.ofMillis(5), 8)) {
+			AcquireTimer stickyTimer = new AcquireTimer(sticky);
+			run(new MemberRepositoryV5(stickyTimer), threads, iterations);
+
+			log.info("average acquire, pool={}us, sticky={}us, hit ratio={}",
+				poolTimer.averageMicros(), stickyTimer.averageMicros(), sticky.getHitRatio());
+			assertThat(sticky.getHitRatio()).isGreaterThan(0.5);
+		}
+		assertThat(pool.getHikariPoolMXBean().getActiveConnections()).isZero();
+	}
+
+	private void run(MemberRepositoryV5 repository, int threads, int iterations) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < threads; i++) {
+				futures.add(executor.submit(() -> {
+					for (int j = 0; j < iterations; j++) {
+						repository.findById("memberA");
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private void awaitNoActiveConnections() throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+		while (pool.getHikariPoolMXBean().getActiveConnections() > 0 && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		assertThat(pool.getHikariPoolMXBean().getActiveConnections()).isZero();
+	}
+
+	static class AcquireTimer extends DelegatingDataSource {
+		final LongAdder count = new LongAdder();
+		final LongAdder nanos = new LongAdder();
+
+		AcquireTimer(DataSource targetDataSource) {
+			super(targetDataSource);
+		}
+
+		@Override
+		public Connection getConnection() throws SQLException {
+			long start = System.nanoTime();
+			Connection connection = super.getConnection();
+			nanos.add(System.nanoTime() - start);
+			count.increment();
+			return connection;
+		}
+
+		double averageMicros() {
+			return count.sum() == 0 ? 0.0 : nanos.sum() / 1000.0 / count.sum();
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package hello.jdbc.connection;
+
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+
+/**
+ * 스프링 컨테이너 없이 @Transactional을 적용한 프록시를 만든다.
+ */
+public abstract class TransactionalProxy {
+
+	@SuppressWarnings("unchecked")
+	public static <T> T of(T target, PlatformTransactionManager transactionManager) {
+		ProxyFactory proxyFactory = new ProxyFactory(target);
+		proxyFactory.setProxyTargetClass(true); // 인터페이스가 없는 서비스도 프록시를 만든다. (CGLIB)
+		proxyFactory.addAdvice(new TransactionInterceptor(transactionManager, new AnnotationTransactionAttributeSource()));
+		return (T) proxyFactory.getProxy();
+	}
+}
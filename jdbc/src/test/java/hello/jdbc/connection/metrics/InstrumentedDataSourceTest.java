@@ -0,0 +1,121 @@
+package hello.jdbc.connection.metrics;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import hello.jdbc.connection.MemoryDb;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV4_2;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class InstrumentedDataSourceTest {
+	HikariDataSource pool;
+	InstrumentedDataSource dataSource;
+
+	@BeforeEach
+	void beforeEach() {
+		// ConnectionTest.dataSourceConnectionPool()과 같은 이름의 풀
+		pool = MemoryDb.dataSource("MyPool", 2);
+		pool.setConnectionTimeout(250); // HikariCP 최솟값
+		dataSource = new InstrumentedDataSource(pool, "MyPool");
+	}
+
+	@AfterEach
+	void afterEach() {
+		dataSource.close();
+		pool.close();
+	}
+
+	@Test
+	void holdTimeByRepositoryMethod() {
+		MemberRepositoryV4_2 repository = new MemberRepositoryV4_2(dataSource);
+		repository.save(new Member("memberA", 10000));
+		for (int i = 0; i < 100; i++) {
+			repository.findById("memberA");
+		}
+		repository.update("memberA", 20000);
+
+		PoolMetrics metrics = dataSource.snapshot();
+		log.info("metrics={}", metrics);
+		assertThat(metrics.getAcquireCount()).isEqualTo(102);
+		assertThat(metrics.getHold().getCount()).isEqualTo(102);
+		assertThat(metrics.getHoldByCaller()).containsOnlyKeys(
+			"MemberRepositoryV4_2.save", "MemberRepositoryV4_2.findById", "MemberRepositoryV4_2.update");
+		assertThat(metrics.getHoldByCaller().get("MemberRepositoryV4_2.findById").getCount()).isEqualTo(100);
+		assertThat(metrics.getActiveConnections()).isZero();
+		assertThat(metrics.getTotalConnections()).isEqualTo(metrics.getIdleConnections());
+	}
+
+	@Test
+	void holdTimeInTransactionByFirstRepositoryMethod() {
+		MemberRepositoryV4_2 repository = new MemberRepositoryV4_2(dataSource);
+		repository.save(new Member("memberA", 10000));
+		TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+		// 트랜잭션 매니저가 리포지토리보다 먼저 커넥션을 얻는다.
+		transactionTemplate.executeWithoutResult(status -> {
+			Member member = repository.findById("memberA");
+			repository.update("memberA", member.getMoney() + 1000);
+		});
+
+		PoolMetrics metrics = dataSource.snapshot();
+		assertThat(metrics.getHoldByCaller()).containsOnlyKeys(
+			"MemberRepositoryV4_2.save", "MemberRepositoryV4_2.findById");
+		assertThat(metrics.getHoldByCaller().get("MemberRepositoryV4_2.findById").getCount()).isEqualTo(1);
+	}
+
+	@Test
+	void timeoutAndPendingThreads() throws Exception {
+		Connection conn1 = dataSource.getConnection();
+		Connection conn2 = dataSource.getConnection();
+		assertThat(dataSource.getActiveConnections()).isEqualTo(2);
+
+		CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> assertThatThrownBy(dataSource::getConnection)
+			.isInstanceOf(SQLTransientConnectionException.class));
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+		while (dataSource.getPendingThreads() == 0 && System.nanoTime() < deadline) {
+			Thread.onSpinWait();
+		}
+		assertThat(dataSource.getPendingThreads()).isEqualTo(1);
+		waiting.get();
+
+		conn1.close();
+		conn2.close();
+		assertThat(dataSource.getTimeoutCount()).isEqualTo(1);
+		assertThat(dataSource.getAcquireCount()).isEqualTo(2);
+		// 리포지토리를 거치지 않은 커넥션
+		assertThat(dataSource.getHoldP99MicrosByCaller()).containsOnlyKeys(InstrumentedDataSource.UNKNOWN_CALLER);
+	}
+
+	@Test
+	void publishThroughJmx() throws Exception {
+		dataSource.registerMBean();
+		new MemberRepositoryV4_2(dataSource).save(new Member("memberA", 10000));
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = dataSource.getObjectName();
+		assertThat(server.getAttribute(name, "PoolName")).isEqualTo("MyPool");
+		assertThat(server.getAttribute(name, "AcquireCount")).isEqualTo(1L);
+		assertThat(server.getAttribute(name, "ActiveConnections")).isEqualTo(0);
+
+		dataSource.close();
+		assertThat(server.isRegistered(name)).isFalse();
+	}
+}
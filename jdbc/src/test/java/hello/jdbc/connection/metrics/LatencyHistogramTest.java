@@ -0,0 +1,51 @@
+package hello.jdbc.connection.metrics;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+	@Test
+	void bucket() {
+		assertThat(LatencyHistogram.bucket(0)).isEqualTo(0);
+		assertThat(LatencyHistogram.bucket(1)).isEqualTo(1);
+		assertThat(LatencyHistogram.bucket(3)).isEqualTo(2);
+		assertThat(LatencyHistogram.bucket(1024)).isEqualTo(11);
+		assertThat(LatencyHistogram.upperBoundMicros(11)).isEqualTo(2047);
+	}
+
+	@Test
+	void percentile() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 99; i++) {
+			histogram.record(10_000); // 10us
+		}
+		histogram.record(5_000_000); // 5ms
+
+		LatencySnapshot snapshot = histogram.snapshot();
+		assertThat(snapshot.getCount()).isEqualTo(100);
+		assertThat(snapshot.getP50Micros()).isBetween(10L, 15L);
+		assertThat(snapshot.getP99Micros()).isBetween(10L, 15L);
+		assertThat(snapshot.getPercentileMicros(1.0)).isEqualTo(5000);
+		assertThat(snapshot.getMaxMicros()).isEqualTo(5000);
+	}
+
+	@Test
+	void concurrentRecord() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		CompletableFuture<?>[] futures = IntStream.range(0, 8)
+			.mapToObj(i -> CompletableFuture.runAsync(() -> {
+				for (int j = 0; j < 10_000; j++) {
+					histogram.record(j * 1000L);
+				}
+			}))
+			.toArray(CompletableFuture[]::new);
+		CompletableFuture.allOf(futures).join();
+
+		assertThat(histogram.snapshot().getCount()).isEqualTo(80_000);
+	}
+}
@@ -0,0 +1,126 @@
+package hello.jdbc.repository;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.Test;
+
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 인기 있는 회원을 여러 스레드가 동시에 조회하는 경우 실행되는 쿼리 수를 비교한다.
+ * 쿼리 한 번에 QUERY_MILLIS 가 걸리는 delegate를 사용한다.
+ */
+@Slf4j
+class CoalescingMemberRepositoryTest {
+	static final int THREADS = 32;
+	static final int ROUNDS = 20;
+	static final long QUERY_MILLIS = 20;
+
+	LongAdder queries = new LongAdder();
+	MemberRepository delegate = mock(MemberRepository.class);
+
+	@Test
+	void coalesceConcurrentLookups() throws Exception {
+		when(delegate.findById(anyString())).thenAnswer(invocation -> {
+			queries.increment();
+			Thread.sleep(QUERY_MILLIS);
+			return new Member(invocation.getArgument(0), 10000);
+		});
+
+		runConcurrently(delegate);
+		long directQueries = queries.sumThenReset();
+
+		CoalescingMemberRepository repository = new CoalescingMemberRepository(delegate);
+		List<Member> results = runConcurrently(repository);
+		long coalescedQueries = queries.sum();
+
+		log.info("direct queries={}, coalesced queries={}, coalesced calls={}",
+			directQueries, coalescedQueries, repository.getCoalescedCount());
+		assertThat(directQueries).isEqualTo(THREADS * ROUNDS);
+		assertThat(coalescedQueries).isLessThan(directQueries / 4);
+		assertThat(repository.getQueryCount() + repository.getCoalescedCount()).isEqualTo(THREADS * ROUNDS);
+		assertThat(results).hasSize(THREADS * ROUNDS).allMatch(member -> member.getMoney() == 10000);
+	}
+
+	@Test
+	void shareFailure() throws Exception {
+		when(delegate.findById(anyString())).thenAnswer(invocation -> {
+			queries.increment();
+			Thread.sleep(QUERY_MILLIS);
+			throw new NoSuchElementException("member not found memberId=" + invocation.getArgument(0));
+		});
+		CoalescingMemberRepository repository = new CoalescingMemberRepository(delegate);
+
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<Member>> results = new ArrayList<>();
+			for (int i = 0; i < THREADS; i++) {
+				results.add(executor.submit(() -> {
+					start.await();
+					return repository.findById("none");
+				}));
+			}
+			start.countDown();
+
+			for (Future<Member> result : results) {
+				assertThatThrownBy(result::get).hasCauseInstanceOf(NoSuchElementException.class);
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertThat(queries.sum()).isLessThan(THREADS);
+	}
+
+	@Test
+	void updateStartsNewLookup() {
+		when(delegate.findById(anyString())).thenReturn(new Member("memberA", 10000));
+		CoalescingMemberRepository repository = new CoalescingMemberRepository(delegate);
+
+		repository.findById("memberA");
+		repository.update("memberA", 9000);
+		repository.findById("memberA");
+
+		verify(delegate, times(2)).findById("memberA");
+	}
+
+	/**
+	 * ROUNDS 번 동안 THREADS 개의 스레드가 동시에 같은 회원을 조회한다.
+	 */
+	private List<Member> runConcurrently(MemberRepository repository) throws Exception {
+		List<Member> members = new ArrayList<>();
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			for (int round = 0; round < ROUNDS; round++) {
+				CountDownLatch start = new CountDownLatch(1);
+				List<Future<Member>> results = new ArrayList<>();
+				for (int i = 0; i < THREADS; i++) {
+					results.add(executor.submit(() -> {
+						start.await();
+						return repository.findById("hot");
+					}));
+				}
+				start.countDown();
+
+				for (Future<Member> result : results) {
+					members.add(result.get());
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+		return members;
+	}
+}
@@ -0,0 +1,241 @@
+package hello.jdbc.repository;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import hello.jdbc.connection.MemoryDb;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.JournalConfig.FsyncMode;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class JournalMemberRepositoryTest {
+	@TempDir
+	Path directory;
+
+	List<JournalMemberRepository> opened = new ArrayList<>();
+
+	@AfterEach
+	void afterEach() {
+		opened.forEach(JournalMemberRepository::close);
+	}
+
+	@Test
+	void crud() {
+		JournalMemberRepository repository = open(FsyncMode.NONE);
+		repository.save(new Member("memberA", 10000));
+		assertThatThrownBy(() -> repository.save(new Member("memberA", 0))).isInstanceOf(DuplicateKeyException.class);
+
+		repository.update("memberA", 20000);
+		Member member = repository.findById("memberA");
+		assertThat(member.getMoney()).isEqualTo(20000);
+		assertThat(member.getVersion()).isEqualTo(1);
+
+		repository.delete("memberA");
+		assertThatThrownBy(() -> repository.findById("memberA")).isInstanceOf(EmptyResultDataAccessException.class);
+	}
+
+	@Test
+	void recoverOnRestart() {
+		JournalMemberRepository repository = open(FsyncMode.NONE);
+		repository.save(new Member("memberA", 10000));
+		repository.save(new Member("memberB", 10000));
+		repository.addMoney("memberA", -1000);
+		repository.delete("memberB");
+		repository.close();
+		opened.remove(repository);
+
+		JournalMemberRepository recovered = open(FsyncMode.NONE);
+		assertThat(recovered.findById("memberA").getMoney()).isEqualTo(9000);
+		assertThat(recovered.findById("memberA").getVersion()).isEqualTo(1);
+		assertThat(recovered.size()).isEqualTo(1);
+		assertThat(recovered.getDeadRecordCount()).isEqualTo(3);
+	}
+
+	@Test
+	void discardTornRecord() throws Exception {
+		JournalMemberRepository repository = open(FsyncMode.NONE);
+		repository.save(new Member("memberA", 10000));
+		repository.close();
+		opened.remove(repository);
+
+		// 두 번째 레코드를 쓰다가 중단된 상황
+		try (RandomAccessFile file = new RandomAccessFile(journalPath().toFile(), "rw")) {
+			file.seek(JournalMemberRepository.RECORD_SIZE);
+			file.write(new byte[] {1, 7, 0, 'm'});
+		}
+
+		JournalMemberRepository recovered = open(FsyncMode.NONE);
+		assertThat(recovered.size()).isEqualTo(1);
+		recovered.save(new Member("memberB", 500));
+		recovered.close();
+		opened.remove(recovered);
+
+		assertThat(open(FsyncMode.NONE).findById("memberB").getMoney()).isEqualTo(500);
+	}
+
+	@Test
+	void compact() {
+		JournalMemberRepository repository = open(FsyncMode.NONE);
+		repository.save(new Member("memberA", 0));
+		repository.save(new Member("memberB", 0));
+		for (int i = 1; i <= 1000; i++) {
+			repository.update("memberA", i);
+		}
+		repository.delete("memberB");
+
+		repository.compact();
+
+		assertThat(repository.getDeadRecordCount()).isZero();
+		assertThat(repository.getCompactionCount()).isEqualTo(1);
+		assertThat(repository.findById("memberA").getMoney()).isEqualTo(1000);
+
+		repository.close();
+		opened.remove(repository);
+		JournalMemberRepository recovered = open(FsyncMode.NONE);
+		assertThat(recovered.findById("memberA").getVersion()).isEqualTo(1000);
+		assertThat(recovered.size()).isEqualTo(1);
+	}
+
+	@Test
+	void growBeyondInitialSize() {
+		JournalConfig config = new JournalConfig(journalPath());
+		config.setInitialSize(JournalMemberRepository.RECORD_SIZE * 10);
+		config.setCompactionPeriod(0);
+		JournalMemberRepository repository = new JournalMemberRepository(config);
+		opened.add(repository);
+
+		for (int i = 0; i < 100; i++) {
+			repository.save(new Member("m" + i, i));
+		}
+		assertThat(repository.findById("m99").getMoney()).isEqualTo(99);
+	}
+
+	@Test
+	void stopGrowingAtMaxSize() {
+		JournalConfig config = new JournalConfig(journalPath());
+		config.setInitialSize(JournalMemberRepository.RECORD_SIZE * 10);
+		config.setMaxSize(JournalMemberRepository.RECORD_SIZE * 25 + 1);
+		config.setCompactionPeriod(0);
+		JournalMemberRepository repository = new JournalMemberRepository(config);
+		opened.add(repository);
+
+		// 10개 -> 20개 -> 25개(maxSize 이하인 RECORD_SIZE의 배수)까지만 늘어난다.
+		for (int i = 0; i < 25; i++) {
+			repository.save(new Member("m" + i, i));
+		}
+		assertThatThrownBy(() -> repository.save(new Member("m25", 25)))
+			.isInstanceOf(DataAccessResourceFailureException.class);
+		assertThat(repository.size()).isEqualTo(25);
+		assertThat(repository.findById("m24").getMoney()).isEqualTo(24);
+	}
+
+	@Test
+	void groupFsync() throws Exception {
+		JournalMemberRepository repository = open(FsyncMode.GROUP);
+		int threads = 8;
+		int writesPerThread = 200;
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> results = new ArrayList<>();
+			for (int i = 0; i < threads; i++) {
+				String memberId = "member" + i;
+				results.add(executor.submit(() -> {
+					repository.save(new Member(memberId, 0));
+					for (int j = 0; j < writesPerThread; j++) {
+						repository.addMoney(memberId, 1);
+					}
+				}));
+			}
+			for (Future<?> result : results) {
+				result.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		log.info("writes={}, fsyncs={}", threads * (writesPerThread + 1), repository.getSyncCount());
+		assertThat(repository.getSyncCount()).isLessThanOrEqualTo(threads * (writesPerThread + 1));
+		assertThat(repository.findById("member0").getMoney()).isEqualTo(writesPerThread);
+	}
+
+	/**
+	 * MemberRepositoryV4_2 + H2(메모리 DB)와 update() 한 번의 평균 시간을 비교한다.
+	 * 실행 시간에 따라 결과가 달라지므로 기본 테스트에서 제외되고 ./gradlew benchmark로 실행한다.
+	 */
+	@Test
+	@Tag("benchmark")
+	void writeLatency() {
+		int writes = 10_000;
+		HikariDataSource dataSource = MemoryDb.dataSource("journalLatency");
+		try {
+			MemberRepositoryV4_2 jdbcRepository = new MemberRepositoryV4_2(dataSource);
+			jdbcRepository.save(new Member("memberA", 0));
+			JournalMemberRepository noneRepository = open(FsyncMode.NONE, "none.journal");
+			noneRepository.save(new Member("memberA", 0));
+			JournalMemberRepository groupRepository = open(FsyncMode.GROUP, "group.journal");
+			groupRepository.save(new Member("memberA", 0));
+
+			// JIT 컴파일 등 첫 실행 비용이 측정에 섞이지 않도록 먼저 실행해둔다.
+			updateLatencyMicros(jdbcRepository, 1_000);
+			updateLatencyMicros(noneRepository, 1_000);
+			updateLatencyMicros(groupRepository, 100);
+
+			double jdbcMicros = updateLatencyMicros(jdbcRepository, writes);
+			double noneMicros = updateLatencyMicros(noneRepository, writes);
+			double groupMicros = updateLatencyMicros(groupRepository, 1_000);
+
+			log.info("update latency(us), MemberRepositoryV4_2={}, journal(NONE)={}, journal(GROUP)={}",
+				jdbcMicros, noneMicros, groupMicros);
+			// fsync 없이 매핑된 메모리에만 쓰는 NONE이 가장 빠르다.
+			// 스레드가 하나라면 GROUP도 함께 기록할 쓰기가 없으므로 쓸 때마다 fsync를 기다린다.
+			assertThat(noneMicros).isLessThan(groupMicros);
+			assertThat(noneMicros).isLessThan(jdbcMicros);
+		} finally {
+			dataSource.close();
+		}
+	}
+
+	private double updateLatencyMicros(MemberRepository repository, int writes) {
+		long start = System.nanoTime();
+		for (int i = 0; i < writes; i++) {
+			repository.update("memberA", i);
+		}
+		return (System.nanoTime() - start) / 1000.0 / writes;
+	}
+
+	private JournalMemberRepository open(FsyncMode fsyncMode) {
+		return open(fsyncMode, "member.journal");
+	}
+
+	private JournalMemberRepository open(FsyncMode fsyncMode, String fileName) {
+		JournalConfig config = new JournalConfig(directory.resolve(fileName));
+		config.setFsyncMode(fsyncMode);
+		config.setCompactionPeriod(0);
+		JournalMemberRepository repository = new JournalMemberRepository(config);
+		opened.add(repository);
+		return repository;
+	}
+
+	private Path journalPath() {
+		return directory.resolve("member.journal");
+	}
+}
@@ -0,0 +1,126 @@
+package hello.jdbc.repository;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import hello.jdbc.connection.MemoryDb;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * LIMIT/OFFSET 페이지네이션과 keyset 페이지네이션의 깊은 페이지 조회 비용 비교
+ * OFFSET은 건너뛸 row를 모두 읽어야 하므로 깊이에 비례해서 느려지고, keyset은 PK 인덱스로 시작 위치를 바로 찾으므로 일정하다.
+ * 워밍업 후 깊이마다 여러 번 실행한 중앙값으로 비교한다.
+ * 시간을 비교하는 deepPage()는 기본 테스트에서 제외되고 ./gradlew benchmark로 실행한다, 접근 방식(인덱스 사용)은 실행 계획으로 확인한다.
+ */
+@Slf4j
+class MemberPageBenchmarkTest {
+	static final int TOTAL = 50_000;
+	static final int PAGE_SIZE = 20;
+	static final int WARM_UP = 20;
+	static final int REPEAT = 51;
+
+	static HikariDataSource dataSource;
+	static MemberRepositoryV5 repository;
+	static JdbcTemplate jdbcTemplate;
+
+	@BeforeAll
+	static void beforeAll() {
+		dataSource = MemoryDb.dataSource("memberPageBenchmark");
+		repository = new MemberRepositoryV5(dataSource);
+		jdbcTemplate = new JdbcTemplate(dataSource);
+
+		List<Member> members = new ArrayList<>(TOTAL);
+		for (int i = 0; i < TOTAL; i++) {
+			members.add(new Member(String.format("m%06d", i), i));
+		}
+		repository.saveAll(members);
+	}
+
+	@AfterAll
+	static void afterAll() {
+		dataSource.close();
+	}
+
+	@Test
+	void keysetQueryUsesPrimaryKeyIndex() {
+		String plan = jdbcTemplate.queryForObject(
+			"explain select * from member where member_id > ? order by member_id limit ?", String.class, "m000000", 21);
+		log.info("plan={}", plan);
+
+		// 인덱스로 시작 위치를 찾고, 인덱스 순서 그대로 정렬 없이 읽는다.
+		assertThat(plan).containsIgnoringCase("PRIMARY_KEY").containsIgnoringCase("index sorted");
+	}
+
+	@Test
+	@Tag("benchmark")
+	void deepPage() {
+		int[] depths = {0, 10_000, 25_000, 49_000};
+
+		// JIT 컴파일, PreparedStatement 준비 등 첫 실행 비용이 측정에 섞이지 않도록 먼저 실행해둔다.
+		for (int i = 0; i < WARM_UP; i++) {
+			for (int depth : depths) {
+				findPageByOffset(depth, PAGE_SIZE);
+				repository.findPage(afterMemberId(depth), PAGE_SIZE);
+			}
+		}
+
+		long[] offsetMedians = new long[depths.length];
+		long[] keysetMedians = new long[depths.length];
+		for (int d = 0; d < depths.length; d++) {
+			int depth = depths[d];
+			long[] offsetNanos = new long[REPEAT];
+			long[] keysetNanos = new long[REPEAT];
+			List<Member> offsetPage = null;
+			MemberPage keysetPage = null;
+			for (int i = 0; i < REPEAT; i++) {
+				long start = System.nanoTime();
+				offsetPage = findPageByOffset(depth, PAGE_SIZE);
+				offsetNanos[i] = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				keysetPage = repository.findPage(afterMemberId(depth), PAGE_SIZE);
+				keysetNanos[i] = System.nanoTime() - start;
+			}
+			assertThat(keysetPage.getMembers()).isEqualTo(offsetPage);
+
+			// GC 등으로 튀는 값에 흔들리지 않도록 중앙값으로 비교한다.
+			offsetMedians[d] = median(offsetNanos);
+			keysetMedians[d] = median(keysetNanos);
+			log.info("depth={}, offset median={}us, keyset median={}us",
+				depth, offsetMedians[d] / 1000, keysetMedians[d] / 1000);
+		}
+
+		int deepest = depths.length - 1;
+		// keyset은 깊이와 상관없이 일정하다. (아주 작은 값의 측정 오차를 고려해서 100us의 여유를 둔다)
+		assertThat(keysetMedians[deepest]).isLessThanOrEqualTo(keysetMedians[0] * 3 + 100_000);
+		// 가장 깊은 페이지에서는 건너뛸 row를 모두 읽는 OFFSET보다 빠르다.
+		assertThat(keysetMedians[deepest]).isLessThan(offsetMedians[deepest]);
+	}
+
+	private String afterMemberId(int depth) {
+		return depth == 0 ? null : String.format("m%06d", depth - 1);
+	}
+
+	private long median(long[] nanos) {
+		long[] sorted = nanos.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+
+	private List<Member> findPageByOffset(int offset, int limit) {
+		return jdbcTemplate.query("select * from member order by member_id limit ? offset ?",
+			(rs, rowNum) -> new Member(rs.getString("member_id"), rs.getInt("money")), limit, offset);
+	}
+}
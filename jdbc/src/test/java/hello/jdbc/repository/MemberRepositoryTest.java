@@ -0,0 +1,198 @@
+package hello.jdbc.repository;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Named;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import hello.jdbc.connection.MemoryDb;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.exception.MyDuplicateKeyException;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * MemberRepository 인터페이스 구현체들이 동일하게 동작하는지 검증한다.
+ */
+@Slf4j
+class MemberRepositoryTest {
+	static HikariDataSource dataSource;
+
+	@BeforeAll
+	static void beforeAll() {
+		dataSource = MemoryDb.dataSource("memberRepository");
+	}
+
+	@AfterAll
+	static void afterAll() {
+		dataSource.close();
+	}
+
+	@AfterEach
+	void afterEach() {
+		new JdbcTemplate(dataSource).update("delete from member");
+	}
+
+	static Stream<Named<MemberRepository>> repositories() {
+		return Stream.of(
+			Named.of("MemberRepositoryV4_1", new MemberRepositoryV4_1(dataSource)),
+			Named.of("MemberRepositoryV4_2", new MemberRepositoryV4_2(dataSource)),
+			Named.of("MemberRepositoryV5", new MemberRepositoryV5(dataSource)),
+			Named.of("MemoryMemberRepository", new MemoryMemberRepository()));
+	}
+
+	@ParameterizedTest
+	@MethodSource("repositories")
+	void crud(MemberRepository repository) {
+		Member member = new Member("memberV100", 10000);
+		repository.save(member);
+		assertThat(repository.findById(member.getMemberId())).isEqualTo(member);
+
+		repository.update(member.getMemberId(), 20000);
+		assertThat(repository.findById(member.getMemberId()).getMoney()).isEqualTo(20000);
+
+		repository.delete(member.getMemberId());
+		assertThatThrownBy(() -> repository.findById(member.getMemberId()))
+			.isInstanceOfAny(NoSuchElementException.class, EmptyResultDataAccessException.class);
+	}
+
+	@ParameterizedTest
+	@MethodSource("repositories")
+	void saveAll(MemberRepository repository) {
+		List<Member> members = new ArrayList<>();
+		for (int i = 0; i < 2500; i++) {
+			members.add(new Member(String.format("m%04d", i), i));
+		}
+
+		int savedRows = repository.saveAll(members, 1000);
+
+		assertThat(savedRows).isEqualTo(2500);
+		assertThat(repository.findById("m2499").getMoney()).isEqualTo(2499);
+	}
+
+	@ParameterizedTest
+	@MethodSource("repositories")
+	void saveAllDuplicateKey(MemberRepository repository) {
+		repository.save(new Member("dup1", 0));
+		List<Member> members = List.of(new Member("m1", 0), new Member("dup1", 0), new Member("m3", 0));
+
+		// 실패한 청크 번호와 회원 id를 예외 메시지로 확인할 수 있다.
+		assertThatThrownBy(() -> repository.saveAll(members, 2))
+			.isInstanceOfAny(MyDuplicateKeyException.class, DuplicateKeyException.class)
+			.hasMessageContaining("chunk=0")
+			.hasMessageContaining("failedMemberIds=[dup1]");
+	}
+
+	@ParameterizedTest
+	@MethodSource("repositories")
+	void findAllByIds(MemberRepository repository) {
+		List<Member> members = new ArrayList<>();
+		List<String> memberIds = new ArrayList<>();
+		for (int i = 0; i < 300; i++) {
+			members.add(new Member(String.format("m%04d", i), i));
+			memberIds.add(String.format("m%04d", i));
+		}
+		repository.saveAll(members);
+
+		// 300개 = 256 + 64(44개 + 마지막 id 반복), 중복 id와 없는 id는 결과에 영향을 주지 않는다.
+		memberIds.add("m0000");
+		memberIds.add("none1");
+		Map<String, Member> findMembers = repository.findAllByIds(memberIds);
+
+		assertThat(findMembers).hasSize(300);
+		assertThat(findMembers.get("m0299").getMoney()).isEqualTo(299);
+		assertThat(findMembers).doesNotContainKey("none1");
+		// 없는 회원은 결과에서 빠진 id로 확인한다.
+		assertThat(MemberRepository.missingIds(memberIds, findMembers)).containsExactly("none1");
+	}
+
+	@ParameterizedTest
+	@MethodSource("repositories")
+	void findPage(MemberRepository repository) {
+		List<Member> members = new ArrayList<>();
+		for (int i = 0; i < 25; i++) {
+			members.add(new Member(String.format("m%04d", i), i));
+		}
+		repository.saveAll(members);
+
+		// 10개씩 끝까지 조회한다.
+		List<Integer> pageSizes = new ArrayList<>();
+		List<String> readIds = new ArrayList<>();
+		MemberPage page = repository.findPage(null, 10);
+		while (true) {
+			pageSizes.add(page.getMembers().size());
+			page.getMembers().forEach(member -> readIds.add(member.getMemberId()));
+			if (!page.hasNext()) {
+				break;
+			}
+			page = repository.findPage(page.getNextAfterMemberId(), 10);
+		}
+
+		assertThat(pageSizes).containsExactly(10, 10, 5);
+		assertThat(readIds).hasSize(25).isSorted().doesNotHaveDuplicates();
+	}
+
+	@ParameterizedTest
+	@MethodSource("repositories")
+	void addMoney(MemberRepository repository) {
+		repository.save(new Member("memberA", 1000));
+
+		assertThat(repository.addMoney("memberA", 500)).isTrue();
+		assertThat(repository.addMoney("memberA", -1500)).isTrue();
+		assertThat(repository.findById("memberA").getMoney()).isZero();
+
+		// 잔액이 음수가 되거나 회원이 없으면 변경하지 않는다.
+		assertThat(repository.addMoney("memberA", -1)).isFalse();
+		assertThat(repository.addMoney("none1", 100)).isFalse();
+		assertThat(repository.findById("memberA").getMoney()).isZero();
+	}
+
+	@ParameterizedTest
+	@MethodSource("repositories")
+	void findAllByIdsForUpdate(MemberRepository repository) {
+		repository.save(new Member("memberB", 2000));
+		repository.save(new Member("memberA", 1000));
+
+		TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		Map<String, Member> members = txTemplate.execute(
+			status -> repository.findAllByIdsForUpdate(List.of("memberB", "memberA")));
+
+		// member_id 순서로 조회된다.
+		assertThat(members.keySet()).containsExactly("memberA", "memberB");
+	}
+
+	@ParameterizedTest
+	@MethodSource("repositories")
+	void updateWithVersion(MemberRepository repository) {
+		repository.save(new Member("memberA", 1000));
+		Member member = repository.findById("memberA");
+
+		assertThat(repository.updateWithVersion("memberA", 2000, member.getVersion())).isTrue();
+
+		// 조회한 이후 version이 증가했으므로 변경되지 않는다.
+		assertThat(repository.updateWithVersion("memberA", 3000, member.getVersion())).isFalse();
+		Member updatedMember = repository.findById("memberA");
+		assertThat(updatedMember.getMoney()).isEqualTo(2000);
+		assertThat(updatedMember.getVersion()).isEqualTo(member.getVersion() + 1);
+
+		// 다른 변경도 version을 증가시킨다.
+		repository.addMoney("memberA", 100);
+		assertThat(repository.findById("memberA").getVersion()).isEqualTo(member.getVersion() + 2);
+	}
+}
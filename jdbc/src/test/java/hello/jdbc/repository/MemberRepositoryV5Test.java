@@ -0,0 +1,100 @@
+package hello.jdbc.repository;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import hello.jdbc.connection.MemoryDb;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class MemberRepositoryV5Test {
+	HikariDataSource dataSource;
+	MemberRepositoryV5 repository;
+
+	@BeforeEach
+	void beforeEach() {
+		dataSource = MemoryDb.dataSource("memberRepositoryV5");
+		repository = new MemberRepositoryV5(dataSource);
+
+		List<Member> members = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			members.add(new Member(String.format("m%04d", i), 1));
+		}
+		repository.saveAll(members);
+	}
+
+	@AfterEach
+	void afterEach() {
+		dataSource.close();
+	}
+
+	@Test
+	void streamAll() {
+		long total;
+		try (Stream<Member> members = repository.streamAll(100)) {
+			assertThat(dataSource.getHikariPoolMXBean().getActiveConnections()).isEqualTo(1);
+			total = members.mapToLong(Member::getMoney).sum();
+		}
+
+		assertThat(total).isEqualTo(1000);
+		// Stream을 닫으면 커넥션이 반납된다.
+		assertThat(dataSource.getHikariPoolMXBean().getActiveConnections()).isZero();
+	}
+
+	@Test
+	void forEachMember() {
+		AtomicInteger count = new AtomicInteger();
+		repository.forEachMember(100, member -> count.incrementAndGet());
+
+		assertThat(count.get()).isEqualTo(1000);
+		assertThat(dataSource.getHikariPoolMXBean().getActiveConnections()).isZero();
+	}
+
+	@Test
+	void migrateMemberWithoutVersion() {
+		// version 컬럼이 추가되기 전의 member 테이블
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("drop table member");
+		jdbcTemplate.execute("create table member (member_id varchar(10), money integer not null default 0, primary key (member_id))");
+		jdbcTemplate.update("insert into member(member_id, money) values ('old', 100)");
+
+		// 애플리케이션이 시작할 때마다 실행되므로 여러 번 실행해도 된다.
+		ResourceDatabasePopulator migration = new ResourceDatabasePopulator(new ClassPathResource("sql/member-migration.sql"));
+		DatabasePopulatorUtils.execute(migration, dataSource);
+		DatabasePopulatorUtils.execute(migration, dataSource);
+
+		// 기존 데이터는 유지되고 version은 0부터 시작한다.
+		Member member = repository.findById("old");
+		assertThat(member.getMoney()).isEqualTo(100);
+		assertThat(member.getVersion()).isZero();
+		assertThat(repository.updateWithVersion("old", 200, 0)).isTrue();
+		assertThat(repository.findById("old").getVersion()).isEqualTo(1);
+	}
+
+	@Test
+	void versionedUpdateDetectsWriteFromOtherRepository() throws SQLException {
+		Member member = repository.findById("m0000");
+
+		// 같은 member 테이블을 쓰는 MemberRepositoryV3의 변경도 version을 올린다.
+		new MemberRepositoryV3(dataSource).addMoney("m0000", 10);
+
+		assertThat(repository.updateWithVersion("m0000", member.getMoney() + 1, member.getVersion())).isFalse();
+		assertThat(repository.findById("m0000").getMoney()).isEqualTo(11);
+	}
+}
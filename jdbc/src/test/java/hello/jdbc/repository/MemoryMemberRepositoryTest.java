@@ -0,0 +1,89 @@
+package hello.jdbc.repository;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.service.MemberServiceV4;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class MemoryMemberRepositoryTest {
+	MemoryMemberRepository repository = new MemoryMemberRepository();
+
+	@Test
+	void insertAndDeleteRepeatedly() {
+		// 삭제 표시가 쌓여도 다시 배치되면서 계속 저장하고 찾을 수 있다.
+		for (int round = 0; round < 10; round++) {
+			for (int i = 0; i < 10_000; i++) {
+				repository.save(new Member("m" + i, i));
+			}
+			assertThat(repository.size()).isEqualTo(10_000);
+			assertThat(repository.findById("m9999").getMoney()).isEqualTo(9999);
+
+			for (int i = 0; i < 10_000; i++) {
+				repository.delete("m" + i);
+			}
+			assertThat(repository.size()).isZero();
+		}
+	}
+
+	@Test
+	void forEachSnapshot() {
+		for (int i = 0; i < 100; i++) {
+			repository.save(new Member("m" + i, 1));
+		}
+
+		// 순회하는 도중 삭제하더라도 복사한 시점의 회원이 모두 전달된다.
+		AtomicInteger count = new AtomicInteger();
+		repository.forEachSnapshot(member -> {
+			repository.delete(member.getMemberId());
+			count.incrementAndGet();
+		});
+
+		assertThat(count.get()).isEqualTo(100);
+		assertThat(repository.size()).isZero();
+	}
+
+	@Test
+	void concurrentTransfers() throws Exception {
+		int threads = 16;
+		int transfersPerThread = 10_000;
+		repository.save(new Member("memberA", threads * transfersPerThread));
+		repository.save(new Member("memberB", 0));
+
+		// 트랜잭션 프록시 없이 MemberServiceV4를 사용한다.
+		MemberServiceV4 memberService = new MemberServiceV4(repository);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		long start = System.nanoTime();
+		try {
+			List<Future<?>> results = new ArrayList<>();
+			for (int i = 0; i < threads; i++) {
+				results.add(executor.submit(() -> {
+					for (int j = 0; j < transfersPerThread; j++) {
+						memberService.accountTransferAtomic("memberA", "memberB", 1);
+					}
+				}));
+			}
+			for (Future<?> result : results) {
+				result.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+		log.info("in-memory transfers={}, {} transfers/s",
+			threads * transfersPerThread, threads * transfersPerThread * 1000L / elapsedMillis);
+		assertThat(repository.findById("memberA").getMoney()).isZero();
+		assertThat(repository.findById("memberB").getMoney()).isEqualTo(threads * transfersPerThread);
+	}
+}
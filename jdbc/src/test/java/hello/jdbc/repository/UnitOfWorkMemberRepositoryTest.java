@@ -0,0 +1,135 @@
+package hello.jdbc.repository;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import hello.jdbc.connection.MemoryDb;
+import hello.jdbc.domain.Member;
+import hello.jdbc.service.MemberServiceV4;
+
+class UnitOfWorkMemberRepositoryTest {
+	public static final String MEMBER_A = "memberA";
+	public static final String MEMBER_B = "memberB";
+
+	static final HikariDataSource dataSource = MemoryDb.dataSource("unitOfWork");
+
+	MemberRepositoryV5 jdbcRepository = new MemberRepositoryV5(dataSource);
+	MemberRepository delegate;
+	UnitOfWorkMemberRepository repository;
+	TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+	@BeforeEach
+	void beforeEach() {
+		jdbcRepository.saveAll(List.of(new Member(MEMBER_A, 10000), new Member(MEMBER_B, 10000)));
+		delegate = spy(jdbcRepository);
+		repository = new UnitOfWorkMemberRepository(delegate);
+	}
+
+	@AfterEach
+	void afterEach() {
+		jdbcRepository.delete(MEMBER_A);
+		jdbcRepository.delete(MEMBER_B);
+	}
+
+	@AfterAll
+	static void afterAll() {
+		dataSource.close();
+	}
+
+	@Test
+	void identityMap() {
+		txTemplate.executeWithoutResult(status -> {
+			Member first = repository.findById(MEMBER_A);
+			Member second = repository.findById(MEMBER_A);
+			assertThat(second).isSameAs(first);
+		});
+
+		verify(delegate, times(1)).findById(MEMBER_A);
+		assertThat(repository.getIdentityMapHitCount()).isEqualTo(1);
+	}
+
+	@Test
+	void deferredUpdateFlushedOnCommit() {
+		txTemplate.executeWithoutResult(status -> {
+			repository.update(MEMBER_A, 9000);
+			repository.update(MEMBER_A, 8000);
+			repository.update(MEMBER_B, 12000);
+
+			// 아직 DB에는 반영되지 않았지만 트랜잭션 안에서는 변경된 값이 보인다.
+			assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+			verify(delegate, never()).updateAll(any());
+		});
+
+		// 회원당 마지막 변경만 배치 한 번으로 반영한다.
+		verify(delegate, times(1)).updateAll(any());
+		verify(delegate, never()).update(anyString(), anyInt());
+		assertThat(repository.getFlushCount()).isEqualTo(1);
+		assertThat(repository.getFlushedRowCount()).isEqualTo(2);
+
+		Member memberA = jdbcRepository.findById(MEMBER_A);
+		assertThat(memberA.getMoney()).isEqualTo(8000);
+		assertThat(memberA.getVersion()).isEqualTo(1);
+		assertThat(jdbcRepository.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+	}
+
+	@Test
+	void deferredUpdateDiscardedOnRollback() {
+		txTemplate.executeWithoutResult(status -> {
+			repository.update(MEMBER_A, 0);
+			status.setRollbackOnly();
+		});
+
+		verify(delegate, never()).updateAll(any());
+		assertThat(jdbcRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+	}
+
+	@Test
+	void flushBeforeBypassingQuery() {
+		txTemplate.executeWithoutResult(status -> {
+			repository.update(MEMBER_A, 9000);
+			// addMoney()는 DB 값을 기준으로 변경하므로 모아둔 변경을 먼저 반영해야 한다.
+			assertThat(repository.addMoney(MEMBER_A, -1000)).isTrue();
+			assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+		});
+
+		assertThat(jdbcRepository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+	}
+
+	@Test
+	void outsideTransaction() {
+		repository.update(MEMBER_A, 9000);
+		repository.findById(MEMBER_A);
+		repository.findById(MEMBER_A);
+
+		// 트랜잭션 밖에서는 바로 실행한다.
+		verify(delegate, times(1)).update(MEMBER_A, 9000);
+		verify(delegate, times(2)).findById(MEMBER_A);
+		assertThat(jdbcRepository.findById(MEMBER_A).getMoney()).isEqualTo(9000);
+	}
+
+	@Test
+	void accountTransfer() {
+		MemberServiceV4 memberService = new MemberServiceV4(repository);
+
+		txTemplate.executeWithoutResult(status -> memberService.accountTransfer(MEMBER_A, MEMBER_B, 2000));
+
+		// 조회 2번 + 변경 배치 1번
+		verify(delegate, times(2)).findById(anyString());
+		verify(delegate, times(1)).updateAll(any());
+		verify(delegate, never()).update(anyString(), anyInt());
+		assertThat(jdbcRepository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+		assertThat(jdbcRepository.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+	}
+}
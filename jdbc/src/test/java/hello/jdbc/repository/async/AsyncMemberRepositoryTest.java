@@ -0,0 +1,144 @@
+package hello.jdbc.repository.async;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.dao.EmptyResultDataAccessException;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import hello.jdbc.connection.MemoryDb;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 동시 호출자 수에 따른 처리량 비교
+ * - 블로킹 : 커넥션 풀 크기만큼의 플랫폼 스레드 풀에서 MemberRepositoryV5를 호출한다.
+ * - 비동기 : 호출마다 가상 스레드를 만들고, 커넥션 풀 크기의 세마포어로 동시 실행 수를 제한한다.
+ */
+@Slf4j
+class AsyncMemberRepositoryTest {
+	static final int POOL_SIZE = 10;
+	static final String MEMBER_A = "memberA";
+
+	static HikariDataSource dataSource;
+	static MemberRepositoryV5 repository;
+
+	@BeforeAll
+	static void beforeAll() {
+		dataSource = MemoryDb.dataSource("asyncMemberRepository", POOL_SIZE);
+		repository = new MemberRepositoryV5(dataSource);
+		repository.save(new Member(MEMBER_A, 10000));
+	}
+
+	@AfterAll
+	static void afterAll() {
+		dataSource.close();
+	}
+
+	@Test
+	void crud() {
+		try (AsyncMemberRepository asyncRepository = new AsyncMemberRepository(repository, dataSource)) {
+			asyncRepository.save(new Member("memberB", 10000)).join();
+			asyncRepository.update("memberB", 20000).join();
+			assertThat(asyncRepository.findById("memberB").join().getMoney()).isEqualTo(20000);
+
+			asyncRepository.delete("memberB").join();
+			assertThatThrownBy(() -> asyncRepository.findById("memberB").join())
+				.hasCauseInstanceOf(EmptyResultDataAccessException.class);
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {1_000, 10_000})
+	void throughput(int callers) throws Exception {
+		long blockingOpsPerSecond = blocking(callers);
+		long asyncOpsPerSecond = async(callers);
+
+		log.info("callers={}, blocking={} ops/s, async={} ops/s, virtual threads={}",
+			callers, blockingOpsPerSecond, asyncOpsPerSecond, VirtualThreads.isSupported());
+		assertThat(dataSource.getHikariPoolMXBean().getActiveConnections()).isZero();
+	}
+
+	/**
+	 * 가상 스레드를 지원하지 않는 JVM의 대체 executor(cached thread pool)를 사용하더라도,
+	 * permit을 얻은 작업만 executor에 넘기므로 호출자 수만큼 스레드가 만들어지지 않는다.
+	 */
+	@Test
+	void boundThreadsWithPlatformThreads() {
+		AtomicInteger createdThreads = new AtomicInteger();
+		ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+			createdThreads.incrementAndGet();
+			Thread thread = new Thread(runnable);
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		int callers = 10_000;
+		try (AsyncMemberRepository asyncRepository = new AsyncMemberRepository(repository, POOL_SIZE, executor)) {
+			List<CompletableFuture<Member>> results = new ArrayList<>();
+			for (int i = 0; i < callers; i++) {
+				results.add(asyncRepository.findById(MEMBER_A));
+			}
+			assertThat(asyncRepository.getActiveCount()).isLessThanOrEqualTo(POOL_SIZE);
+			for (CompletableFuture<Member> result : results) {
+				assertThat(result.join().getMoney()).isEqualTo(10000);
+			}
+			assertThat(asyncRepository.getWaitingCount()).isZero();
+		}
+
+		log.info("callers={}, created threads={}", callers, createdThreads);
+		// 작업을 마친 스레드가 유휴 상태로 돌아가기 전에 다음 작업을 넘기는 경우가 있으므로 최대 2배까지 허용한다.
+		assertThat(createdThreads.get()).isLessThanOrEqualTo(POOL_SIZE * 2);
+		assertThat(dataSource.getHikariPoolMXBean().getActiveConnections()).isZero();
+	}
+
+	private long blocking(int callers) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(POOL_SIZE);
+		long start = System.nanoTime();
+		try {
+			List<Future<Member>> results = new ArrayList<>();
+			for (int i = 0; i < callers; i++) {
+				results.add(executor.submit(() -> repository.findById(MEMBER_A)));
+			}
+			for (Future<Member> result : results) {
+				assertThat(result.get().getMoney()).isEqualTo(10000);
+			}
+		} finally {
+			executor.shutdown();
+		}
+		return opsPerSecond(callers, start);
+	}
+
+	private long async(int callers) {
+		try (AsyncMemberRepository asyncRepository = new AsyncMemberRepository(repository, dataSource)) {
+			long start = System.nanoTime();
+			List<CompletableFuture<Member>> results = new ArrayList<>();
+			for (int i = 0; i < callers; i++) {
+				results.add(asyncRepository.findById(MEMBER_A));
+			}
+			for (CompletableFuture<Member> result : results) {
+				assertThat(result.join().getMoney()).isEqualTo(10000);
+			}
+			return opsPerSecond(callers, start);
+		}
+	}
+
+	private static long opsPerSecond(int operations, long startNanos) {
+		long elapsedMillis = Math.max(1, (System.nanoTime() - startNanos) / 1_000_000);
+		return operations * 1000L / elapsedMillis;
+	}
+}
@@ -0,0 +1,119 @@
+package hello.jdbc.repository.async;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import hello.jdbc.connection.MemoryDb;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class BatchingMemberLoaderTest {
+	static final int MEMBERS = 100;
+
+	static HikariDataSource dataSource;
+	static MemberRepositoryV5 jdbcRepository;
+
+	MemberRepository repository = spy(jdbcRepository);
+
+	@BeforeAll
+	static void beforeAll() {
+		dataSource = MemoryDb.dataSource("batchingMemberLoader");
+		jdbcRepository = new MemberRepositoryV5(dataSource);
+
+		List<Member> members = new ArrayList<>();
+		for (int i = 0; i < MEMBERS; i++) {
+			members.add(new Member(String.format("m%04d", i), i));
+		}
+		jdbcRepository.saveAll(members);
+	}
+
+	@AfterAll
+	static void afterAll() {
+		dataSource.close();
+	}
+
+	@Test
+	void mergeConcurrentLookups() throws Exception {
+		ExecutorService callers = VirtualThreads.newExecutor("caller");
+		try (BatchingMemberLoader loader = new BatchingMemberLoader(repository, Duration.ofMillis(50), 1000)) {
+			List<Future<Member>> results = new ArrayList<>();
+			for (int i = 0; i < MEMBERS; i++) {
+				String memberId = String.format("m%04d", i);
+				results.add(callers.submit(() -> loader.findById(memberId)));
+			}
+
+			for (int i = 0; i < MEMBERS; i++) {
+				assertThat(results.get(i).get().getMoney()).isEqualTo(i);
+			}
+			log.info("loads={}, batches={}, average batch size={}",
+				loader.getLoadCount(), loader.getBatchCount(), loader.getAverageBatchSize());
+			assertThat(loader.getBatchCount()).isLessThan(MEMBERS / 10);
+		} finally {
+			callers.shutdown();
+		}
+
+		verify(repository, never()).findById(anyString());
+	}
+
+	@Test
+	void dispatchWhenBatchIsFull() throws Exception {
+		try (BatchingMemberLoader loader = new BatchingMemberLoader(repository, Duration.ofMinutes(1), 10)) {
+			List<CompletableFuture<Member>> futures = new ArrayList<>();
+			for (int i = 0; i < 10; i++) {
+				futures.add(loader.load(String.format("m%04d", i)));
+			}
+
+			// window(1분)를 기다리지 않고 실행된다.
+			CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+			assertThat(loader.getBatchCount()).isEqualTo(1);
+		}
+	}
+
+	@Test
+	void sameMemberAndMissingMember() {
+		try (BatchingMemberLoader loader = new BatchingMemberLoader(repository, Duration.ofMillis(10), 1000)) {
+			CompletableFuture<Member> first = loader.load("m0001");
+			CompletableFuture<Member> second = loader.load("m0001");
+			CompletableFuture<Member> missing = loader.load("none");
+
+			assertThat(first.join()).isEqualTo(second.join()).isNotSameAs(second.join());
+			assertThatThrownBy(missing::join).hasCauseInstanceOf(NoSuchElementException.class);
+			assertThat(loader.getBatchCount()).isEqualTo(1);
+		}
+	}
+
+	@Test
+	void failPendingLoadsWhenExecutorIsShutDown() {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try (BatchingMemberLoader loader = new BatchingMemberLoader(repository, Duration.ofMinutes(1), 1000, executor)) {
+			CompletableFuture<Member> pending = loader.load("m0001");
+			executor.shutdown();
+
+			// 실행할 수 없는 배치의 future는 기다리지 않고 예외로 완료된다.
+			loader.dispatch();
+			assertThat(pending).isCompletedExceptionally();
+			assertThatThrownBy(pending::join).hasCauseInstanceOf(RejectedExecutionException.class);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package hello.jdbc.repository.async;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import hello.jdbc.connection.MemoryDb;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV5;
+
+class MemberScanPublisherTest {
+	static final int MEMBERS = 1000;
+
+	HikariDataSource dataSource;
+	MemberScanPublisher publisher;
+
+	@BeforeEach
+	void beforeEach() {
+		dataSource = MemoryDb.dataSource("memberScanPublisher");
+		publisher = new MemberScanPublisher(dataSource, 100);
+
+		List<Member> members = new ArrayList<>();
+		for (int i = 0; i < MEMBERS; i++) {
+			members.add(new Member(String.format("m%04d", i), 1));
+		}
+		new MemberRepositoryV5(dataSource).saveAll(members);
+	}
+
+	@AfterEach
+	void afterEach() {
+		dataSource.close();
+	}
+
+	@Test
+	void readAll() throws Exception {
+		CollectingSubscriber subscriber = new CollectingSubscriber(10);
+		publisher.subscribe(subscriber);
+
+		assertThat(subscriber.done.await(10, TimeUnit.SECONDS)).isTrue();
+		assertThat(subscriber.members).hasSize(MEMBERS);
+		assertThat(subscriber.completed).isTrue();
+		assertThat(dataSource.getHikariPoolMXBean().getActiveConnections()).isZero();
+	}
+
+	@Test
+	void backpressure() throws Exception {
+		CollectingSubscriber subscriber = new CollectingSubscriber(0);
+		publisher.subscribe(subscriber);
+		subscriber.subscription.request(3);
+
+		awaitSize(subscriber, 3);
+		Thread.sleep(100);
+		// 요청한 만큼만 전달되고, 구독이 끝나지 않았으므로 커넥션을 가지고 있다.
+		assertThat(subscriber.members).hasSize(3);
+		assertThat(dataSource.getHikariPoolMXBean().getActiveConnections()).isEqualTo(1);
+
+		subscriber.subscription.cancel();
+		awaitNoActiveConnection();
+		assertThat(subscriber.completed).isFalse();
+	}
+
+	@Test
+	void translateSqlException() throws Exception {
+		new JdbcTemplate(dataSource).execute("drop table member");
+
+		CollectingSubscriber subscriber = new CollectingSubscriber(10);
+		publisher.subscribe(subscriber);
+
+		assertThat(subscriber.done.await(10, TimeUnit.SECONDS)).isTrue();
+		assertThat(subscriber.error).isInstanceOf(BadSqlGrammarException.class);
+		assertThat(dataSource.getHikariPoolMXBean().getActiveConnections()).isZero();
+	}
+
+	private void awaitSize(CollectingSubscriber subscriber, int size) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (subscriber.members.size() < size && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+	}
+
+	private void awaitNoActiveConnection() throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (dataSource.getHikariPoolMXBean().getActiveConnections() > 0 && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertThat(dataSource.getHikariPoolMXBean().getActiveConnections()).isZero();
+	}
+
+	/**
+	 * batchSize 개씩 요청하고, 받은 만큼 처리하면 다음 batchSize 개를 요청한다. batchSize가 0이라면 직접 요청해야 한다.
+	 */
+	static class CollectingSubscriber implements Flow.Subscriber<Member> {
+		private final int batchSize;
+		private final List<Member> members = Collections.synchronizedList(new ArrayList<>());
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile Flow.Subscription subscription;
+		private volatile boolean completed;
+		private volatile Throwable error;
+		private int received;
+
+		CollectingSubscriber(int batchSize) {
+			this.batchSize = batchSize;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			if (batchSize > 0) {
+				subscription.request(batchSize);
+			}
+		}
+
+		@Override
+		public void onNext(Member item) {
+			members.add(item);
+			if (batchSize > 0 && ++received % batchSize == 0) {
+				subscription.request(batchSize);
+			}
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			error = throwable;
+			done.countDown();
+		}
+
+		@Override
+		public void onComplete() {
+			completed = true;
+			done.countDown();
+		}
+	}
+}
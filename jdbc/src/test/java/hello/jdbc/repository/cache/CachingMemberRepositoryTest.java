@@ -0,0 +1,120 @@
+package hello.jdbc.repository.cache;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import hello.jdbc.connection.MemoryDb;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.service.MemberServiceV4;
+
+class CachingMemberRepositoryTest {
+	public static final String MEMBER_A = "memberA";
+	public static final String MEMBER_EX = "ex";
+
+	static final HikariDataSource dataSource = MemoryDb.dataSource("cachingMemberRepository");
+
+	MemberRepositoryV5 jdbcRepository = new MemberRepositoryV5(dataSource);
+	AtomicLong nanoTime = new AtomicLong();
+	MemberRepository delegate;
+	CachingMemberRepository repository;
+	TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+	@BeforeEach
+	void beforeEach() {
+		jdbcRepository.saveAll(List.of(new Member(MEMBER_A, 10000), new Member(MEMBER_EX, 10000)));
+		delegate = spy(jdbcRepository);
+		repository = new CachingMemberRepository(delegate, 100, Duration.ofSeconds(10), nanoTime::get);
+	}
+
+	@AfterEach
+	void afterEach() {
+		jdbcRepository.delete(MEMBER_A);
+		jdbcRepository.delete(MEMBER_EX);
+	}
+
+	@AfterAll
+	static void afterAll() {
+		dataSource.close();
+	}
+
+	@Test
+	void readThrough() {
+		Member first = repository.findById(MEMBER_A);
+		Member second = repository.findById(MEMBER_A);
+
+		verify(delegate, times(1)).findById(MEMBER_A);
+		assertThat(second).isEqualTo(first).isNotSameAs(first);
+		assertThat(repository.getHitRatio()).isEqualTo(0.5);
+	}
+
+	@Test
+	void cachedMemberIsNotChangedByCaller() {
+		repository.findById(MEMBER_A).setMoney(0);
+
+		assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+	}
+
+	@Test
+	void ttl() {
+		repository.findById(MEMBER_A);
+		nanoTime.addAndGet(Duration.ofSeconds(10).toNanos());
+		repository.findById(MEMBER_A);
+
+		verify(delegate, times(2)).findById(MEMBER_A);
+		assertThat(repository.getExpirationCount()).isEqualTo(1);
+	}
+
+	@Test
+	void invalidateAfterCommit() {
+		repository.findById(MEMBER_A);
+
+		txTemplate.executeWithoutResult(status -> {
+			repository.update(MEMBER_A, 9000);
+			// 아직 커밋되지 않았으므로 다른 스레드에게는 캐시된 값이 보이지만, 변경한 트랜잭션은 DB를 조회한다.
+			assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(9000);
+			assertThat(repository.getSize()).isEqualTo(1);
+		});
+
+		assertThat(repository.getSize()).isZero();
+		assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(9000);
+	}
+
+	@Test
+	void rollbackKeepsCachedValue() {
+		MemberServiceV4 memberService = new MemberServiceV4(repository);
+		repository.findById(MEMBER_A);
+		repository.findById(MEMBER_EX);
+
+		assertThatThrownBy(() -> txTemplate.executeWithoutResult(
+			status -> memberService.accountTransfer(MEMBER_A, MEMBER_EX, 2000)))
+			.isInstanceOf(IllegalStateException.class);
+
+		// 롤백되었으므로 캐시와 DB 모두 변경 전 잔액이다.
+		assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+		assertThat(jdbcRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+	}
+
+	@Test
+	void invalidateOutsideTransaction() {
+		repository.findById(MEMBER_A);
+		repository.addMoney(MEMBER_A, 1000);
+
+		assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(11000);
+		assertThat(repository.getAverageLoadMillis()).isPositive();
+	}
+}
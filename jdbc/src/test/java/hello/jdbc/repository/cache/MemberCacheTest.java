@@ -0,0 +1,38 @@
+package hello.jdbc.repository.cache;
+
+import static org.assertj.core.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import hello.jdbc.domain.Member;
+
+class MemberCacheTest {
+	MemberCache cache = new MemberCache(4, Long.MAX_VALUE, System::nanoTime);
+
+	@Test
+	void frequentMemberSurvivesScan() {
+		cache.put(new Member("hot", 0), cache.generation());
+		for (int i = 0; i < 10; i++) {
+			cache.get("hot");
+		}
+
+		// 한 번만 조회되는 회원이 계속 들어와도 자주 조회되는 회원은 제거되지 않는다.
+		for (int i = 0; i < 100; i++) {
+			cache.put(new Member("cold" + i, 0), cache.generation());
+		}
+
+		assertThat(cache.get("hot")).isNotNull();
+		assertThat(cache.size()).isEqualTo(4);
+		assertThat(cache.getEvictionCount()).isEqualTo(97);
+	}
+
+	@Test
+	void stalePutIsIgnored() {
+		long generation = cache.generation();
+		// 조회하는 도중 다른 트랜잭션이 커밋되어 무효화되었다.
+		cache.invalidate("memberA");
+		cache.put(new Member("memberA", 0), generation);
+
+		assertThat(cache.get("memberA")).isNull();
+	}
+}
@@ -0,0 +1,165 @@
+package hello.jdbc.repository.shard;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import hello.jdbc.connection.MemoryDb;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class ShardRebalancerTest {
+	static final int MEMBERS = 2000;
+
+	List<HikariDataSource> dataSources = new ArrayList<>();
+	ShardedMemberRepository repository;
+	ShardRebalancer rebalancer;
+
+	@BeforeEach
+	void beforeEach() {
+		List<Shard> shards = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			shards.add(shard("rebalance" + i));
+		}
+		repository = new ShardedMemberRepository(shards);
+		rebalancer = new ShardRebalancer(repository, 100, 4);
+
+		List<Member> members = new ArrayList<>();
+		for (int i = 0; i < MEMBERS; i++) {
+			members.add(new Member("m" + i, 1000));
+		}
+		repository.saveAll(members);
+	}
+
+	@AfterEach
+	void afterEach() {
+		rebalancer.close();
+		repository.close();
+		dataSources.forEach(HikariDataSource::close);
+	}
+
+	@Test
+	void addShard() {
+		Shard added = shard("rebalance3");
+
+		RebalanceMetrics metrics = rebalancer.addShard(added);
+
+		log.info("{}", metrics);
+		assertThat(metrics.getProgress()).isEqualTo(1.0);
+		assertThat(metrics.isFinished()).isTrue();
+		assertThat(metrics.getScannedRows()).isEqualTo(MEMBERS);
+		assertThat(metrics.getCopiedRows()).isEqualTo(metrics.getDeletedRows());
+		assertThat(metrics.getCopiedRows()).isBetween(MEMBERS / 4L - MEMBERS / 10, MEMBERS / 4L + MEMBERS / 10);
+		assertThat(repository.getShards()).hasSize(4);
+		assertStoredOnlyOnOwner();
+		assertThat(repository.findAllByIds(memberIds())).hasSize(MEMBERS);
+	}
+
+	@Test
+	void writesDuringRebalance() throws Exception {
+		AtomicIntegerArray deposits = new AtomicIntegerArray(MEMBERS);
+		AtomicBoolean running = new AtomicBoolean(true);
+		int writers = 8;
+
+		ExecutorService executor = Executors.newFixedThreadPool(writers);
+		try {
+			List<Future<?>> results = new ArrayList<>();
+			for (int i = 0; i < writers; i++) {
+				boolean transactional = i % 2 == 0;
+				Shard txShard = repository.getShards().get(i % 3);
+				results.add(executor.submit(() -> {
+					while (running.get()) {
+						int index = ThreadLocalRandom.current().nextInt(MEMBERS);
+						if (transactional) {
+							// 트랜잭션 안의 쓰기는 커밋된 뒤 새 샤드에 반영된다.
+							txShard.getTxTemplate().executeWithoutResult(status -> repository.addMoney("m" + index, 1));
+						} else {
+							repository.addMoney("m" + index, 1);
+						}
+						deposits.incrementAndGet(index);
+					}
+				}));
+			}
+
+			Thread.sleep(50);
+			RebalanceMetrics metrics = rebalancer.addShard(shard("rebalance3"));
+			running.set(false);
+			for (Future<?> result : results) {
+				result.get();
+			}
+			log.info("{}", metrics);
+			assertThat(metrics.getMirroredWrites()).isPositive();
+			assertThat(metrics.getPendingMirrors()).isZero();
+		} finally {
+			executor.shutdown();
+		}
+
+		Map<String, Member> members = repository.findAllByIds(memberIds());
+		for (int i = 0; i < MEMBERS; i++) {
+			assertThat(members.get("m" + i).getMoney()).as("m" + i).isEqualTo(1000 + deposits.get(i));
+		}
+		assertStoredOnlyOnOwner();
+	}
+
+	@Test
+	void saveAndDeleteDuringRebalance() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<RebalanceMetrics> rebalance = executor.submit(() -> rebalancer.addShard(shard("rebalance3")));
+			for (int i = 0; i < MEMBERS; i += 2) {
+				repository.delete("m" + i);
+				repository.save(new Member("n" + i, i));
+			}
+			rebalance.get();
+		} finally {
+			executor.shutdown();
+		}
+
+		assertThat(repository.findAllByIds(memberIds())).hasSize(MEMBERS / 2);
+		assertThat(repository.forEachMember(100, member -> {
+		})).isEqualTo(MEMBERS);
+		assertThat(repository.findById("n10").getMoney()).isEqualTo(10);
+		assertStoredOnlyOnOwner();
+	}
+
+	private void assertStoredOnlyOnOwner() {
+		long stored = 0;
+		for (Shard shard : repository.getShards()) {
+			for (Member member : new MemberRowCopier().page(shard.getDataSource(), null, MEMBERS * 2)) {
+				assertThat(repository.shardFor(member.getMemberId())).as(member.getMemberId()).isSameAs(shard);
+				stored++;
+			}
+		}
+		assertThat(stored).isEqualTo(repository.forEachMember(100, member -> {
+		}));
+	}
+
+	private List<String> memberIds() {
+		List<String> memberIds = new ArrayList<>();
+		for (int i = 0; i < MEMBERS; i++) {
+			memberIds.add("m" + i);
+		}
+		return memberIds;
+	}
+
+	private Shard shard(String name) {
+		HikariDataSource dataSource = MemoryDb.dataSource(name);
+		dataSources.add(dataSource);
+		return new Shard(name, dataSource);
+	}
+}
@@ -0,0 +1,167 @@
+package hello.jdbc.repository.shard;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import hello.jdbc.connection.MemoryDb;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberPage;
+import hello.jdbc.repository.MemberRepository;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class ShardedMemberRepositoryTest {
+	static final int SHARDS = 3;
+
+	List<HikariDataSource> dataSources = new ArrayList<>();
+	ShardedMemberRepository repository;
+
+	@BeforeEach
+	void beforeEach() {
+		List<Shard> shards = new ArrayList<>();
+		for (int i = 0; i < SHARDS; i++) {
+			HikariDataSource dataSource = MemoryDb.dataSource("shard" + i);
+			dataSources.add(dataSource);
+			shards.add(new Shard("shard" + i, dataSource));
+		}
+		repository = new ShardedMemberRepository(shards);
+	}
+
+	@AfterEach
+	void afterEach() {
+		repository.close();
+		dataSources.forEach(HikariDataSource::close);
+	}
+
+	@Test
+	void routeToOneShard() {
+		repository.saveAll(members(300));
+
+		for (int i = 0; i < 300; i++) {
+			String memberId = "m" + i;
+			Shard owner = repository.shardFor(memberId);
+			for (Shard shard : repository.getShards()) {
+				boolean stored = shard.getRepository().findAllByIds(List.of(memberId)).containsKey(memberId);
+				assertThat(stored).isEqualTo(shard == owner);
+			}
+		}
+		for (Shard shard : repository.getShards()) {
+			log.info("{} members={}", shard.getName(), shard.getRepository().findPage(null, 1000).getMembers().size());
+		}
+	}
+
+	@Test
+	void findAllByIdsAcrossShards() {
+		repository.saveAll(members(100));
+
+		List<String> memberIds = IntStream.range(0, 120).mapToObj(i -> "m" + i).toList();
+		Map<String, Member> found = repository.findAllByIds(memberIds);
+
+		assertThat(found).hasSize(100);
+		assertThat(found.get("m42").getMoney()).isEqualTo(42);
+		// 샤드와 상관없이 요청한 순서이다.
+		assertThat(found.keySet()).containsExactlyElementsOf(memberIds.subList(0, 100));
+		assertThat(MemberRepository.missingIds(memberIds, found)).containsExactlyElementsOf(memberIds.subList(100, 120));
+	}
+
+	@Test
+	void findPageMergesShards() {
+		repository.saveAll(members(95));
+
+		List<String> scanned = new ArrayList<>();
+		String after = null;
+		do {
+			MemberPage page = repository.findPage(after, 10);
+			page.getMembers().forEach(member -> scanned.add(member.getMemberId()));
+			after = page.getNextAfterMemberId();
+		} while (after != null);
+
+		assertThat(scanned).hasSize(95).isSorted().doesNotHaveDuplicates();
+	}
+
+	@Test
+	void forEachMemberScansShardsInParallel() {
+		repository.saveAll(members(250));
+
+		Set<String> visited = ConcurrentHashMap.newKeySet();
+		long count = repository.forEachMember(20, member -> visited.add(member.getMemberId()));
+
+		assertThat(count).isEqualTo(250);
+		assertThat(visited).hasSize(250);
+	}
+
+	@Test
+	void updateAllAcrossShards() {
+		repository.saveAll(members(50));
+
+		List<Member> updated = members(50);
+		updated.forEach(member -> member.setMoney(member.getMoney() + 1));
+
+		assertThat(repository.updateAll(updated)).isEqualTo(50);
+		assertThat(repository.findById("m7").getMoney()).isEqualTo(8);
+		assertThat(repository.findById("m7").getVersion()).isEqualTo(1);
+	}
+
+	@Test
+	void lockAcrossShardsFailsFast() {
+		String[] pair = crossShardPair();
+
+		assertThatThrownBy(() -> repository.findAllByIdsForUpdate(List.of(pair[0], pair[1])))
+			.isInstanceOf(CrossShardException.class);
+	}
+
+	@Test
+	void addShardMovesFewKeys() {
+		ConsistentHashRing ring = new ConsistentHashRing(List.of("shard0", "shard1", "shard2"), ShardedMemberRepository.DEFAULT_VIRTUAL_NODES);
+		ConsistentHashRing grown = ring.withShard("shard3");
+
+		int keys = 100_000;
+		int moved = 0;
+		Map<String, Integer> perShard = new HashMap<>();
+		for (int i = 0; i < keys; i++) {
+			String memberId = "m" + i;
+			String before = ring.shardFor(memberId);
+			String after = grown.shardFor(memberId);
+			if (!before.equals(after)) {
+				// 옮겨지는 회원은 모두 새 샤드로 간다.
+				assertThat(after).isEqualTo("shard3");
+				moved++;
+			}
+			perShard.merge(after, 1, Integer::sum);
+		}
+
+		log.info("moved={}, perShard={}", moved, perShard);
+		assertThat(moved).isBetween(keys / 4 - keys / 10, keys / 4 + keys / 10);
+		assertThat(perShard.values()).allSatisfy(count -> assertThat(count).isBetween(keys / 4 - keys / 10, keys / 4 + keys / 10));
+	}
+
+	private String[] crossShardPair() {
+		for (int i = 1; i < 100; i++) {
+			if (!repository.isSameShard("m0", "m" + i)) {
+				return new String[] {"m0", "m" + i};
+			}
+		}
+		throw new IllegalStateException("all members are on the same shard");
+	}
+
+	private List<Member> members(int count) {
+		List<Member> members = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			members.add(new Member("m" + i, i));
+		}
+		return members;
+	}
+}
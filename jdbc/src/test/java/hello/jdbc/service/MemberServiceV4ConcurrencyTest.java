@@ -0,0 +1,270 @@
+package hello.jdbc.service;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import hello.jdbc.connection.MemoryDb;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 동시에 같은 계좌로 이체하는 경우
+ * - accountTransfer() : 조회 후 변경(read-modify-write)하므로 동시에 실행되면 변경 내용을 잃어버린다.
+ * - accountTransferAtomic() : 증감 쿼리 한 번으로 변경하므로 잃어버리는 변경이 없다.
+ * - accountTransferOptimistic() : version이 바뀌었다면 충돌로 보고 재시도하므로 잃어버리는 변경이 없다.
+ * A->B, B->A 이체를 동시에 실행하는 경우
+ * - accountTransfer() : 호출 순서대로 row 락을 획득하므로 교착 상태가 발생할 수 있다.
+ * - accountTransferWithLock() : 항상 member_id 순서로 락을 획득하므로 교착 상태가 발생하지 않는다.
+ */
+@Slf4j
+@SpringBootTest
+class MemberServiceV4ConcurrencyTest {
+	public static final String MEMBER_A = "memberA";
+	public static final String MEMBER_B = "memberB";
+	static final int THREADS = 10;
+	static final int TRANSFERS_PER_THREAD = 50;
+	static final int INITIAL_MONEY = 100_000;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private MemberRepository memberRepository;
+
+	@Autowired
+	private MemberServiceV4 memberService;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@TestConfiguration
+	static class TestConfig {
+		// H2 TCP 서버 대신 메모리 DB를 DataSource로 등록한다, 트랜잭션 매니저는 스프링 부트가 등록해준다.
+		@Bean
+		DataSource dataSource() {
+			return MemoryDb.dataSource("memberServiceV4Concurrency", THREADS);
+		}
+
+		@Bean
+		MemberRepositoryV5 memberRepositoryV5(DataSource dataSource) {
+			return new MemberRepositoryV5(dataSource);
+		}
+
+		@Bean
+		MemberServiceV4 memberServiceV4(MemberRepositoryV5 memberRepositoryV5) {
+			return new MemberServiceV4(memberRepositoryV5);
+		}
+	}
+
+	@BeforeEach
+	void beforeEach() {
+		memberRepository.save(new Member(MEMBER_A, INITIAL_MONEY));
+		memberRepository.save(new Member(MEMBER_B, INITIAL_MONEY));
+	}
+
+	@AfterEach
+	void afterEach() {
+		new JdbcTemplate(dataSource).update("delete from member");
+	}
+
+	@Test
+	void accountTransfer() throws Exception {
+		// 두 트랜잭션이 모두 조회를 마친 뒤에 변경하도록 조회 직후에 서로를 기다린다.
+		CyclicBarrier barrier = new CyclicBarrier(2);
+		MemberServiceV4 service = new MemberServiceV4(awaitAfterFind(memberRepository, MEMBER_B, barrier));
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			List<Future<?>> results = new ArrayList<>();
+			for (int i = 0; i < 2; i++) {
+				results.add(executor.submit(() -> transactionTemplate.executeWithoutResult(
+					status -> service.accountTransfer(MEMBER_A, MEMBER_B, 1))));
+			}
+			for (Future<?> result : results) {
+				result.get(10, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		// 두 이체 모두 성공했지만, 같은 잔액을 조회한 뒤 덮어쓰므로 한 번의 변경을 잃어버린다.
+		assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(INITIAL_MONEY - 1);
+		assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(INITIAL_MONEY + 1);
+	}
+
+	@Test
+	void accountTransferAtomic() throws Exception {
+		int failed = runConcurrently(() -> memberService.accountTransferAtomic(MEMBER_A, MEMBER_B, 1));
+
+		assertThat(failed).isZero();
+		assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(INITIAL_MONEY - THREADS * TRANSFERS_PER_THREAD);
+		assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(INITIAL_MONEY + THREADS * TRANSFERS_PER_THREAD);
+	}
+
+	@Test
+	void accountTransferBothDirections() throws Exception {
+		TransferResult result = runBothDirections(memberService::accountTransfer);
+
+		// 락 획득 순서가 호출 순서에 따라 달라지므로 교착 상태(또는 락 타임아웃)가 발생할 수 있다.
+		log.info("call order lock, {}", result);
+	}
+
+	@Test
+	void accountTransferWithLockBothDirections() throws Exception {
+		TransferResult result = runBothDirections(memberService::accountTransferWithLock);
+		log.info("member_id order lock, {}", result);
+
+		// 양방향으로 같은 횟수만큼 이체했으므로 잔액은 처음과 같다.
+		assertThat(result.deadlocks).isZero();
+		assertThat(result.failed).isZero();
+		assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(INITIAL_MONEY);
+		assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(INITIAL_MONEY);
+	}
+
+	@Test
+	void accountTransferOptimistic() throws Exception {
+		OptimisticLockRetryExecutor retryExecutor = new OptimisticLockRetryExecutor(50, 1, 20);
+		int failed = runConcurrently(
+			() -> retryExecutor.run(() -> memberService.accountTransferOptimistic(MEMBER_A, MEMBER_B, 1)));
+		log.info("optimistic transfer, conflicts={}, retries={}, exhausted={}",
+			retryExecutor.getConflictCount(), retryExecutor.getRetryCount(), retryExecutor.getExhaustedCount());
+
+		// 충돌한 이체는 재시도되므로 잃어버리는 변경이 없다.
+		int succeeded = THREADS * TRANSFERS_PER_THREAD - failed;
+		assertThat(failed).isEqualTo(retryExecutor.getExhaustedCount());
+		assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(INITIAL_MONEY - succeeded);
+		assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(INITIAL_MONEY + succeeded);
+	}
+
+	interface Transfer {
+		void transfer(String fromId, String toId, int money);
+	}
+
+	/**
+	 * 짝수 스레드는 A->B, 홀수 스레드는 B->A로 이체한다.
+	 */
+	private TransferResult runBothDirections(Transfer transfer) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		LongAdder deadlocks = new LongAdder();
+		LongAdder failed = new LongAdder();
+		long start = System.nanoTime();
+		try {
+			List<Future<?>> results = new ArrayList<>();
+			for (int i = 0; i < THREADS; i++) {
+				String fromId = i % 2 == 0 ? MEMBER_A : MEMBER_B;
+				String toId = i % 2 == 0 ? MEMBER_B : MEMBER_A;
+				results.add(executor.submit(() -> {
+					for (int j = 0; j < TRANSFERS_PER_THREAD; j++) {
+						try {
+							transfer.transfer(fromId, toId, 1);
+						} catch (PessimisticLockingFailureException e) {
+							// 교착 상태 감지, 락 타임아웃 (CannotAcquireLockException, DeadlockLoserDataAccessException)
+							deadlocks.increment();
+						} catch (RuntimeException e) {
+							failed.increment();
+						}
+					}
+				}));
+			}
+
+			for (Future<?> result : results) {
+				result.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+		return new TransferResult(deadlocks.intValue(), failed.intValue(),
+			THREADS * TRANSFERS_PER_THREAD * 1000L / elapsedMillis);
+	}
+
+	@ToString
+	@RequiredArgsConstructor
+	static class TransferResult {
+		private final int deadlocks;
+		private final int failed;
+		private final long transfersPerSecond;
+	}
+
+	/**
+	 * @return 실패한 이체 수
+	 */
+	private int runConcurrently(Runnable transfer) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<Integer>> results = new ArrayList<>();
+			for (int i = 0; i < THREADS; i++) {
+				Callable<Integer> task = () -> {
+					int failed = 0;
+					for (int j = 0; j < TRANSFERS_PER_THREAD; j++) {
+						try {
+							transfer.run();
+						} catch (RuntimeException e) {
+							failed++;
+						}
+					}
+					return failed;
+				};
+				results.add(executor.submit(task));
+			}
+
+			int failed = 0;
+			for (Future<Integer> result : results) {
+				failed += result.get();
+			}
+			return failed;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * memberId를 조회한 직후 barrier에서 다른 스레드를 기다리는 MemberRepository
+	 */
+	private MemberRepository awaitAfterFind(MemberRepository target, String memberId, CyclicBarrier barrier) {
+		return (MemberRepository) Proxy.newProxyInstance(MemberRepository.class.getClassLoader(),
+			new Class<?>[] {MemberRepository.class}, (proxy, method, args) -> {
+				Object result;
+				try {
+					result = method.invoke(target, args);
+				} catch (InvocationTargetException e) {
+					throw e.getTargetException();
+				}
+				if (method.getName().equals("findById") && memberId.equals(args[0])) {
+					barrier.await(5, TimeUnit.SECONDS);
+				}
+				return result;
+			});
+	}
+}
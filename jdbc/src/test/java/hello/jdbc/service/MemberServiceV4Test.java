@@ -122,4 +122,61 @@ class MemberServiceV4Test {
 		assertThat(findMemberA.getMoney()).isEqualTo(10000);
 		assertThat(findMemberB.getMoney()).isEqualTo(10000);
 	}
-}
\ No newline at end of file
+
+	@Test
+	@DisplayName("증감 쿼리로 정상 이체")
+	void accountTransferAtomic() {
+		// given
+		memberRepository.save(new Member(MEMBER_A, 10000));
+		memberRepository.save(new Member(MEMBER_B, 10000));
+
+		// when
+		memberService.accountTransferAtomic(MEMBER_A, MEMBER_B, 2000);
+
+		// then
+		assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+		assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+	}
+
+	@Test
+	@DisplayName("증감 쿼리로 이체 중 예외 발생")
+	void accountTransferAtomicEx() {
+		// given
+		memberRepository.save(new Member(MEMBER_A, 10000));
+		memberRepository.save(new Member(MEMBER_EX, 10000));
+
+		// when & then
+		assertThatThrownBy(() -> memberService.accountTransferAtomic(MEMBER_A, MEMBER_EX, 2000))
+			.isInstanceOf(IllegalStateException.class);
+
+		// 출금도 롤백된다.
+		assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+		assertThat(memberRepository.findById(MEMBER_EX).getMoney()).isEqualTo(10000);
+	}
+
+	@Test
+	@DisplayName("잔액 부족")
+	void accountTransferAtomicInsufficientMoney() {
+		// given
+		memberRepository.save(new Member(MEMBER_A, 1000));
+		memberRepository.save(new Member(MEMBER_B, 10000));
+
+		// when & then
+		assertThatThrownBy(() -> memberService.accountTransferAtomic(MEMBER_A, MEMBER_B, 2000))
+			.isInstanceOf(IllegalStateException.class);
+		assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(1000);
+		assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10000);
+	}
+
+	@Test
+	@DisplayName("같은 회원에게 이체")
+	void accountTransferWithLockToSelf() {
+		// given
+		memberRepository.save(new Member(MEMBER_A, 10000));
+
+		// when & then
+		assertThatThrownBy(() -> memberService.accountTransferWithLock(MEMBER_A, MEMBER_A, 2000))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+	}
+}
@@ -0,0 +1,55 @@
+package hello.jdbc.service;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+class OptimisticLockRetryExecutorTest {
+
+	@Test
+	void retryUntilSuccess() {
+		OptimisticLockRetryExecutor retryExecutor = new OptimisticLockRetryExecutor(3, 1, 10);
+		AtomicInteger attempts = new AtomicInteger();
+
+		String result = retryExecutor.execute(() -> {
+			if (attempts.incrementAndGet() < 3) {
+				throw new OptimisticLockingFailureException("conflict");
+			}
+			return "ok";
+		});
+
+		assertThat(result).isEqualTo("ok");
+		assertThat(retryExecutor.getConflictCount()).isEqualTo(2);
+		assertThat(retryExecutor.getRetryCount()).isEqualTo(2);
+		assertThat(retryExecutor.getExhaustedCount()).isZero();
+	}
+
+	@Test
+	void exhausted() {
+		OptimisticLockRetryExecutor retryExecutor = new OptimisticLockRetryExecutor(2, 1, 10);
+
+		assertThatThrownBy(() -> retryExecutor.run(() -> {
+			throw new OptimisticLockingFailureException("conflict");
+		})).isInstanceOf(OptimisticLockingFailureException.class);
+
+		assertThat(retryExecutor.getConflictCount()).isEqualTo(2);
+		assertThat(retryExecutor.getRetryCount()).isEqualTo(1);
+		assertThat(retryExecutor.getExhaustedCount()).isEqualTo(1);
+	}
+
+	@Test
+	void otherExceptionIsNotRetried() {
+		OptimisticLockRetryExecutor retryExecutor = new OptimisticLockRetryExecutor(3, 1, 10);
+		AtomicInteger attempts = new AtomicInteger();
+
+		assertThatThrownBy(() -> retryExecutor.run(() -> {
+			attempts.incrementAndGet();
+			throw new IllegalStateException("이체 중 예외 발생");
+		})).isInstanceOf(IllegalStateException.class);
+
+		assertThat(attempts.get()).isEqualTo(1);
+	}
+}
@@ -0,0 +1,188 @@
+package hello.jdbc.service;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import hello.jdbc.connection.MemoryDb;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.shard.CrossShardException;
+import hello.jdbc.repository.shard.Shard;
+import hello.jdbc.repository.shard.ShardRebalancer;
+import hello.jdbc.repository.shard.ShardedMemberRepository;
+
+class ShardedMemberServiceTest {
+	List<HikariDataSource> dataSources = new ArrayList<>();
+	ShardedMemberRepository repository;
+	ShardedMemberService service;
+
+	@BeforeEach
+	void beforeEach() {
+		List<Shard> shards = new ArrayList<>();
+		for (int i = 0; i < 2; i++) {
+			HikariDataSource dataSource = MemoryDb.dataSource("transferShard" + i);
+			dataSources.add(dataSource);
+			shards.add(new Shard("shard" + i, dataSource));
+		}
+		repository = new ShardedMemberRepository(shards);
+		service = new ShardedMemberService(repository);
+	}
+
+	@AfterEach
+	void afterEach() {
+		repository.close();
+		dataSources.forEach(HikariDataSource::close);
+	}
+
+	@Test
+	void sameShardTransfer() {
+		String fromId = "m0";
+		String toId = memberOnShard(repository.shardFor(fromId), true);
+		repository.save(new Member(fromId, 10000));
+		repository.save(new Member(toId, 10000));
+
+		service.accountTransfer(fromId, toId, 2000);
+
+		assertThat(repository.findById(fromId).getMoney()).isEqualTo(8000);
+		assertThat(repository.findById(toId).getMoney()).isEqualTo(12000);
+	}
+
+	@Test
+	void crossShardTransferFailsFast() {
+		String fromId = "m0";
+		String toId = memberOnShard(repository.shardFor(fromId), false);
+		repository.save(new Member(fromId, 10000));
+		repository.save(new Member(toId, 10000));
+
+		assertThatThrownBy(() -> service.accountTransfer(fromId, toId, 2000)).isInstanceOf(CrossShardException.class);
+
+		assertThat(repository.findById(fromId).getMoney()).isEqualTo(10000);
+		assertThat(repository.findById(toId).getMoney()).isEqualTo(10000);
+	}
+
+	@Test
+	void crossShardTwoStepTransfer() {
+		String fromId = "m0";
+		String toId = memberOnShard(repository.shardFor(fromId), false);
+		repository.save(new Member(fromId, 10000));
+		repository.save(new Member(toId, 10000));
+
+		service.accountTransferTwoStep(fromId, toId, 2000);
+
+		assertThat(repository.findById(fromId).getMoney()).isEqualTo(8000);
+		assertThat(repository.findById(toId).getMoney()).isEqualTo(12000);
+	}
+
+	@Test
+	void crossShardTwoStepCompensates() {
+		// 입금할 회원이 없으면 출금을 되돌린다.
+		String fromId = "m0";
+		String toId = memberOnShard(repository.shardFor(fromId), false);
+		repository.save(new Member(fromId, 10000));
+
+		assertThatThrownBy(() -> service.accountTransferTwoStep(fromId, toId, 2000)).isInstanceOf(RuntimeException.class);
+
+		Member fromMember = repository.findById(fromId);
+		assertThat(fromMember.getMoney()).isEqualTo(10000);
+		assertThat(fromMember.getVersion()).isEqualTo(2); // 출금 + 보상
+	}
+
+	@Test
+	void insufficientMoneyChangesNothing() {
+		String fromId = "m0";
+		String toId = memberOnShard(repository.shardFor(fromId), false);
+		repository.save(new Member(fromId, 1000));
+		repository.save(new Member(toId, 0));
+
+		assertThatThrownBy(() -> service.accountTransferTwoStep(fromId, toId, 2000)).isInstanceOf(IllegalStateException.class);
+
+		assertThat(repository.findById(fromId).getMoney()).isEqualTo(1000);
+		assertThat(repository.findById(toId).getMoney()).isZero();
+	}
+
+	/**
+	 * 리밸런싱 중의 이체도 ShardedMemberRepository를 통해서 쓰므로, 복사가 끝난 구간의 회원이라도 새 샤드에 반영된다.
+	 */
+	@Test
+	void transferDuringRebalance() throws Exception {
+		int members = 300;
+		List<Member> saved = new ArrayList<>();
+		for (int i = 0; i < members; i++) {
+			saved.add(new Member("m" + i, 100_000));
+		}
+		repository.saveAll(saved);
+
+		AtomicIntegerArray deltas = new AtomicIntegerArray(members);
+		AtomicBoolean running = new AtomicBoolean(true);
+		LongAdder transfers = new LongAdder();
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try (ShardRebalancer rebalancer = new ShardRebalancer(repository, 20, 4)) {
+			List<Future<?>> results = new ArrayList<>();
+			for (int i = 0; i < threads; i++) {
+				results.add(executor.submit(() -> {
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					while (running.get()) {
+						int from = random.nextInt(members);
+						int to = (from + 1 + random.nextInt(members - 1)) % members;
+						try {
+							service.accountTransferTwoStep("m" + from, "m" + to, 1);
+						} catch (RuntimeException e) {
+							// 락 타임아웃 등, 실패한 이체는 롤백되거나 보상된다.
+							continue;
+						}
+						deltas.addAndGet(from, -1);
+						deltas.addAndGet(to, 1);
+						transfers.increment();
+					}
+				}));
+			}
+
+			Thread.sleep(50);
+			HikariDataSource added = MemoryDb.dataSource("transferShard2");
+			dataSources.add(added);
+			rebalancer.addShard(new Shard("shard2", added));
+			running.set(false);
+			for (Future<?> result : results) {
+				result.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		assertThat(transfers.sum()).isPositive();
+		for (int i = 0; i < members; i++) {
+			assertThat(repository.findById("m" + i).getMoney()).as("m" + i).isEqualTo(100_000 + deltas.get(i));
+		}
+		// 옮겨진 회원은 새 샤드에만 있다.
+		for (Shard shard : repository.getShards()) {
+			for (Member member : shard.getRepository().findPage(null, members * 2).getMembers()) {
+				assertThat(repository.shardFor(member.getMemberId())).as(member.getMemberId()).isSameAs(shard);
+			}
+		}
+	}
+
+	private String memberOnShard(Shard shard, boolean same) {
+		for (int i = 1; i < 1000; i++) {
+			String memberId = "m" + i;
+			if ((repository.shardFor(memberId) == shard) == same) {
+				return memberId;
+			}
+		}
+		throw new IllegalStateException("member not found for shard=" + shard);
+	}
+}